@@ -0,0 +1,265 @@
+/*
+    Copyright (C) 2016 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This work may be distributed and/or modified under the
+    conditions of the LaTeX Project Public License, either version 1.3
+    of this license or (at your option) any later version.
+    The latest version of this license is in
+    http://www.latex-project.org/lppl.txt
+    and version 1.3 or later is part of all distributions of LaTeX
+    version 2005/12/01 or later.
+*/
+package com.dickimawbooks.texosquery;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.nio.file.Files;
+import java.nio.file.FileSystems;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Set;
+
+/**
+ * Reads the attributes needed by a file walk with a single call
+ * per entry and determines whether an entry may be read without
+ * querying the file system again where possible.
+ *
+ * On file systems that support the "posix" attribute view, the
+ * permissions are fetched with the other attributes. If none of
+ * the owner, group and others have read permission, a process that
+ * isn't run by root can't read the entry, and a process run by
+ * root can read any entry, so no further query is needed.
+ * Otherwise Files.isReadable (which uses access(2)) is used, as
+ * the permission bits don't account for access control list
+ * entries or other access policies, and the file's owner and group
+ * are only available as names (through a lookup per file). Hidden
+ * files are identified by name on these file
+ * systems. On file systems that support the "dos" view, the hidden
+ * flag is read with the other attributes.
+ *
+ * This relies on the java.nio.file library, which was introduced
+ * to Java 7, so this isn't available for the JRE5 version.
+ * @since 1.8
+ */
+public class FileAccessModel
+{
+   private FileAccessModel(int view)
+   {
+      this.view = view;
+   }
+
+   /**
+    * Creates the model for the default file system.
+    * @param invoker used for debugging messages
+    * @return the new model
+    */ 
+   public static FileAccessModel create(TeXOSQuery invoker)
+   {
+      Set<String> views = FileSystems.getDefault().supportedFileAttributeViews();
+
+      // Linux may also support the "dos" view (using extended
+      // attributes) but hidden files are still identified by name.
+
+      if (views.contains("posix"))
+      {
+         FileAccessModel model = new FileAccessModel(VIEW_POSIX);
+         model.loadUserId(invoker);
+         return model;
+      }
+
+      if (views.contains("dos"))
+      {
+         return new FileAccessModel(VIEW_DOS);
+      }
+
+      return new FileAccessModel(VIEW_BASIC);
+   }
+
+   /**
+    * Gets the real user ID of this process. There's no public API
+    * for this, so com.sun.security.auth.module.UnixSystem is
+    * accessed through reflection. If it's not available, the
+    * read permission is always checked with the file system.
+    */ 
+   private void loadUserId(TeXOSQuery invoker)
+   {
+      try
+      {
+         Class<?> cls = Class.forName("com.sun.security.auth.module.UnixSystem");
+         Object unixSystem = cls.getConstructor().newInstance();
+
+         Method method = cls.getMethod("getUid");
+         uid = ((Long)method.invoke(unixSystem)).longValue();
+      }
+      catch (Throwable e)
+      {
+         invoker.info(String.format(
+           "Can't determine user ID (%s), read access will be checked for every file",
+            e.getMessage()));
+         uid = UNKNOWN_ID;
+      }
+   }
+
+   /**
+    * Reads the attributes of the given path without following
+    * symbolic links.
+    * @param path the path
+    * @return the attributes
+    * @throws IOException if the attributes can't be read
+    */ 
+   public Entry read(Path path) throws IOException
+   {
+      Entry entry = new Entry();
+
+      switch (view)
+      {
+         case VIEW_POSIX:
+
+           PosixFileAttributes posixAttrs = Files.readAttributes(path,
+             PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+
+           entry.setBasicAttributes(posixAttrs);
+
+           Set<PosixFilePermission> permissions = posixAttrs.permissions();
+
+           entry.readPermission =
+              (permissions.contains(PosixFilePermission.OWNER_READ) ? 1 : 0)
+            + (permissions.contains(PosixFilePermission.GROUP_READ) ? 1 : 0)
+            + (permissions.contains(PosixFilePermission.OTHERS_READ) ? 1 : 0);
+
+           Path name = path.getFileName();
+           entry.hidden = (name != null && name.toString().startsWith("."));
+
+         break;
+         case VIEW_DOS:
+
+           DosFileAttributes dosAttrs = Files.readAttributes(path,
+             DosFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+
+           entry.setBasicAttributes(dosAttrs);
+           entry.hidden = dosAttrs.isHidden();
+
+         break;
+         default:
+
+           entry.setBasicAttributes(Files.readAttributes(path,
+             BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+           entry.hidden = Files.isHidden(path);
+      }
+
+      return entry;
+   }
+
+   /**
+    * Determines whether the given entry may be read. The file
+    * system is only queried if the model can't decide.
+    * @param path the path
+    * @param entry the path's attributes
+    * @return true if the entry may be read
+    */ 
+   public boolean isReadable(Path path, Entry entry)
+   {
+      switch (checkRead(entry))
+      {
+         case ACCESS_GRANTED: return true;
+         case ACCESS_DENIED: return false;
+      }
+
+      return Files.isReadable(path);
+   }
+
+   /**
+    * Determines the read access where it's certain without asking
+    * the file system. Root can read anything. Otherwise, if none of
+    * the owner, group and others have read permission, access is
+    * denied, as an access control list can't grant read access if
+    * the group class doesn't have it (the group permission bits are
+    * used as the mask). Having the read permission bits set isn't
+    * enough to grant access, as a named entry in an access control
+    * list or some other access policy may still deny it.
+    * @return ACCESS_GRANTED, ACCESS_DENIED or ACCESS_UNKNOWN
+    */ 
+   private int checkRead(Entry entry)
+   {
+      if (uid == UNKNOWN_ID || entry.readPermission == -1)
+      {
+         return ACCESS_UNKNOWN;
+      }
+
+      if (uid == 0)
+      {
+         return ACCESS_GRANTED;
+      }
+
+      if (entry.readPermission == 0)
+      {
+         return ACCESS_DENIED;
+      }
+
+      return ACCESS_UNKNOWN;
+   }
+
+   /**
+    * The attributes of a file or directory required by the walk.
+    */ 
+   public static class Entry
+   {
+      private Entry()
+      {
+      }
+
+      private void setBasicAttributes(BasicFileAttributes attrs)
+      {
+         directory = attrs.isDirectory();
+         symbolicLink = attrs.isSymbolicLink();
+         lastModified = attrs.lastModifiedTime().toMillis();
+         size = attrs.size();
+      }
+
+      public boolean isDirectory()
+      {
+         return directory;
+      }
+
+      public boolean isSymbolicLink()
+      {
+         return symbolicLink;
+      }
+
+      public boolean isHidden()
+      {
+         return hidden;
+      }
+
+      public long lastModified()
+      {
+         return lastModified;
+      }
+
+      public long size()
+      {
+         return size;
+      }
+
+      private boolean directory, symbolicLink, hidden;
+      private long lastModified, size;
+      // number of classes (owner, group, others) with read
+      // permission or -1 if unknown
+      private int readPermission = -1;
+   }
+
+   private static final int VIEW_BASIC=0, VIEW_POSIX=1, VIEW_DOS=2;
+
+   private static final int ACCESS_UNKNOWN=0, ACCESS_GRANTED=1,
+     ACCESS_DENIED=2;
+
+   private static final long UNKNOWN_ID=-1L;
+
+   private int view;
+   private long uid = UNKNOWN_ID;
+}
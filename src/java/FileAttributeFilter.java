@@ -0,0 +1,260 @@
+/*
+    Copyright (C) 2016 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This work may be distributed and/or modified under the
+    conditions of the LaTeX Project Public License, either version 1.3
+    of this license or (at your option) any later version.
+    The latest version of this license is in
+    http://www.latex-project.org/lppl.txt
+    and version 1.3 or later is part of all distributions of LaTeX
+    version 2005/12/01 or later.
+*/
+package com.dickimawbooks.texosquery;
+
+import java.io.Serializable;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Restricts listings to files whose modification time or size is
+ * within given limits. The limits are checked against the
+ * attributes read while the directory is scanned, so files are
+ * omitted before the list is sorted. Size limits don't apply to
+ * directories.
+ * This class needs to be Java 1.5 compatible.
+ * @since 1.8
+ */
+public class FileAttributeFilter implements Serializable
+{
+   /**
+    * Only accept files modified after the given time.
+    * @param millisecs the time in milliseconds since the epoch
+    */ 
+   public void setNewerThan(long millisecs)
+   {
+      newerThan = millisecs;
+      hasNewerThan = true;
+   }
+
+   /**
+    * Only accept files modified before the given time.
+    * @param millisecs the time in milliseconds since the epoch
+    */ 
+   public void setOlderThan(long millisecs)
+   {
+      olderThan = millisecs;
+      hasOlderThan = true;
+   }
+
+   /**
+    * Only accept files that are at least the given size.
+    * @param bytes the minimum size
+    */ 
+   public void setMinSize(long bytes)
+   {
+      minSize = bytes;
+      hasMinSize = true;
+   }
+
+   /**
+    * Only accept files that are at most the given size.
+    * @param bytes the maximum size
+    */ 
+   public void setMaxSize(long bytes)
+   {
+      maxSize = bytes;
+      hasMaxSize = true;
+   }
+
+   /**
+    * Determines if any limits have been set.
+    * @return true if any limits have been set
+    */ 
+   public boolean isActive()
+   {
+      return hasNewerThan || hasOlderThan || hasMinSize || hasMaxSize;
+   }
+
+   /**
+    * Determines if the size limits need to be checked.
+    * @return true if a minimum or maximum size has been set
+    */ 
+   public boolean usesSize()
+   {
+      return hasMinSize || hasMaxSize;
+   }
+
+   /**
+    * Tests the given attributes against the limits.
+    * @param lastModified the modification time
+    * @param size the size in bytes
+    * @param isDirectory true if the file is a directory (in which
+    * case the size isn't checked)
+    * @return true if the attributes are within the limits
+    */ 
+   public boolean accept(long lastModified, long size, 
+     boolean isDirectory)
+   {
+      if (hasNewerThan && lastModified <= newerThan)
+      {
+         return false;
+      }
+
+      if (hasOlderThan && lastModified >= olderThan)
+      {
+         return false;
+      }
+
+      if (!isDirectory)
+      {
+         if (hasMinSize && size < minSize)
+         {
+            return false;
+         }
+
+         if (hasMaxSize && size > maxSize)
+         {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   /**
+    * Parses a PDF date-time string in the form
+    * D:YYYYMMDDHHmmSSOHH'mm' where everything after the year is
+    * optional. The offset O may be Z (UTC) or + or - followed by
+    * the hours and minutes. The apostrophes may be omitted. If
+    * there's no offset, the local time zone is assumed.
+    * @param value the date-time string
+    * @return the time in milliseconds since the epoch
+    * @throws IllegalArgumentException if the string is invalid
+    */ 
+   public static long parsePdfDate(String value)
+   {
+      if (!value.startsWith("D:"))
+      {
+         throw new IllegalArgumentException(
+           "Invalid PDF date (D: prefix required): "+value);
+      }
+
+      int[] fields = new int[] {0, 1, 1, 0, 0, 0};
+      int[] widths = new int[] {4, 2, 2, 2, 2, 2};
+
+      int idx = 2;
+      int n = value.length();
+
+      for (int i = 0; i < fields.length; i++)
+      {
+         if (idx == n || !Character.isDigit(value.charAt(idx)))
+         {
+            if (i == 0)
+            {
+               throw new IllegalArgumentException(
+                 "Invalid PDF date (year required): "+value);
+            }
+
+            break;
+         }
+
+         fields[i] = parseDigits(value, idx, widths[i]);
+         idx += widths[i];
+      }
+
+      TimeZone zone = TimeZone.getDefault();
+
+      if (idx < n)
+      {
+         char c = value.charAt(idx++);
+
+         if (c == 'Z')
+         {
+            zone = TimeZone.getTimeZone("GMT");
+         }
+         else if (c == '+' || c == '-')
+         {
+            int hours = parseDigits(value, idx, 2);
+            int minutes = 0;
+            idx += 2;
+
+            if (idx < n && value.charAt(idx) == '\'')
+            {
+               idx++;
+            }
+
+            if (idx < n)
+            {
+               minutes = parseDigits(value, idx, 2);
+               idx += 2;
+
+               if (idx < n && value.charAt(idx) == '\'')
+               {
+                  idx++;
+               }
+            }
+
+            zone = TimeZone.getTimeZone(String.format("GMT%c%02d:%02d",
+              c, hours, minutes));
+         }
+         else
+         {
+            idx = -1;
+         }
+
+         if (idx != n)
+         {
+            throw new IllegalArgumentException(
+              "Invalid PDF date (unknown offset): "+value);
+         }
+      }
+
+      Calendar calendar = Calendar.getInstance(zone);
+      calendar.setLenient(false);
+      calendar.clear();
+      calendar.set(fields[0], fields[1]-1, fields[2], 
+        fields[3], fields[4], fields[5]);
+
+      try
+      {
+         return calendar.getTimeInMillis();
+      }
+      catch (IllegalArgumentException e)
+      {
+         throw new IllegalArgumentException(
+           "Invalid PDF date: "+value, e);
+      }
+   }
+
+   private static int parseDigits(String value, int idx, int width)
+   {
+      if (idx+width > value.length())
+      {
+         throw new IllegalArgumentException(
+           "Invalid PDF date (incomplete field): "+value);
+      }
+
+      int result = 0;
+
+      for (int i = idx; i < idx+width; i++)
+      {
+         char c = value.charAt(i);
+
+         if (c < '0' || c > '9')
+         {
+            throw new IllegalArgumentException(
+              "Invalid PDF date (digit expected): "+value);
+         }
+
+         result = 10*result + (c - '0');
+      }
+
+      return result;
+   }
+
+   private long newerThan, olderThan, minSize, maxSize;
+
+   private boolean hasNewerThan=false, hasOlderThan=false,
+     hasMinSize=false, hasMaxSize=false;
+}
@@ -0,0 +1,62 @@
+/*
+    Copyright (C) 2016 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This work may be distributed and/or modified under the
+    conditions of the LaTeX Project Public License, either version 1.3
+    of this license or (at your option) any later version.
+    The latest version of this license is in
+    http://www.latex-project.org/lppl.txt
+    and version 1.3 or later is part of all distributions of LaTeX
+    version 2005/12/01 or later.
+*/
+package com.dickimawbooks.texosquery;
+
+import java.util.Calendar;
+
+/**
+ * Formats file modification dates in PDF format for listings.
+ * Only one calendar is used and, as the PDF format only has a
+ * precision of one second, the previous result is reused for
+ * consecutive files modified within the same second, which is
+ * common for files that were created or copied together.
+ * This class needs to be Java 1.5 compatible.
+ * @since 1.8
+ */
+public class FileDateFormatter
+{
+   /**
+    * Creates a new formatter.
+    * @param invoker the application
+    */ 
+   public FileDateFormatter(TeXOSQuery invoker)
+   {
+      this.invoker = invoker;
+      calendar = Calendar.getInstance();
+   }
+
+   /**
+    * Formats the given date.
+    * @param millis the date in milliseconds since the epoch (which
+    * must be positive)
+    * @return the date in PDF format
+    */ 
+   public String format(long millis)
+   {
+      long second = millis/1000L;
+
+      if (lastDate == null || second != lastSecond)
+      {
+         calendar.setTimeInMillis(millis);
+         lastDate = invoker.pdfDate(calendar);
+         lastSecond = second;
+      }
+
+      return lastDate;
+   }
+
+   private TeXOSQuery invoker;
+   private Calendar calendar;
+   private long lastSecond;
+   private String lastDate;
+}
@@ -0,0 +1,107 @@
+/*
+    Copyright (C) 2016 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This work may be distributed and/or modified under the
+    conditions of the LaTeX Project Public License, either version 1.3
+    of this license or (at your option) any later version.
+    The latest version of this license is in
+    http://www.latex-project.org/lppl.txt
+    and version 1.3 or later is part of all distributions of LaTeX
+    version 2005/12/01 or later.
+*/
+package com.dickimawbooks.texosquery;
+
+/**
+ * Time budget for an action. Long running actions (such as walks,
+ * listings and sorts) periodically check whether the budget has
+ * run out and, if it has, stop early and return the results found
+ * so far. Once the deadline has passed it stays expired, so
+ * concurrent tasks all see the same outcome.
+ * This class needs to be Java 1.5 compatible.
+ * @since 1.8
+ */
+public class FileDeadline
+{
+   /**
+    * Creates a deadline that ends at the given time.
+    * @param endTime the end time as given by System.nanoTime()
+    */ 
+   public FileDeadline(long endTime)
+   {
+      this.endTime = endTime;
+   }
+
+   /**
+    * Creates the deadline for an action. 
+    * @param startTime the time (as given by System.nanoTime()) at
+    * which the first action started
+    * @param overallMillis the time limit in milliseconds for all
+    * the actions or 0 for no limit
+    * @param actionMillis the time limit in milliseconds for this
+    * action or 0 for no limit
+    * @return the earlier of the two deadlines or null if there's
+    * no limit
+    */ 
+   public static FileDeadline create(long startTime, long overallMillis,
+     long actionMillis)
+   {
+      if (overallMillis <= 0L && actionMillis <= 0L)
+      {
+         return null;
+      }
+
+      long endTime;
+
+      if (overallMillis <= 0L)
+      {
+         endTime = System.nanoTime() + actionMillis*1000000L;
+      }
+      else
+      {
+         endTime = startTime + overallMillis*1000000L;
+
+         if (actionMillis > 0L)
+         {
+            long actionEnd = System.nanoTime() + actionMillis*1000000L;
+
+            if (actionEnd - endTime < 0L)
+            {
+               endTime = actionEnd;
+            }
+         }
+      }
+
+      return new FileDeadline(endTime);
+   }
+
+   /**
+    * Checks the clock to determine if the deadline has passed.
+    * This may be called concurrently.
+    * @return true if the deadline has passed
+    */ 
+   public boolean isExpired()
+   {
+      if (!expired && System.nanoTime() - endTime >= 0L)
+      {
+         expired = true;
+      }
+
+      return expired;
+   }
+
+   /**
+    * Determines if the deadline was found to have passed by an
+    * earlier call to isExpired(). This doesn't check the clock,
+    * so it indicates whether or not the action's results were
+    * truncated.
+    * @return true if the deadline has been reached
+    */ 
+   public boolean hasExpired()
+   {
+      return expired;
+   }
+
+   private long endTime;
+   private volatile boolean expired = false;
+}
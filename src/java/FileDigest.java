@@ -0,0 +1,155 @@
+/*
+    Copyright (C) 2016 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This work may be distributed and/or modified under the
+    conditions of the LaTeX Project Public License, either version 1.3
+    of this license or (at your option) any later version.
+    The latest version of this license is in
+    http://www.latex-project.org/lppl.txt
+    and version 1.3 or later is part of all distributions of LaTeX
+    version 2005/12/01 or later.
+*/
+package com.dickimawbooks.texosquery;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes the digest of a file's contents. Small files are read
+ * into a buffer. Larger files are memory-mapped a region at a
+ * time, so the contents don't need to be copied into the Java heap
+ * and only one region needs to be mapped at any time.
+ * This class needs to be Java 1.5 compatible.
+ * @since 1.8
+ */
+public class FileDigest
+{
+   private FileDigest()
+   {
+   }
+
+   /**
+    * Gets the Java name of a digest algorithm. The supported
+    * algorithms are MD5 (as \pdfmdfivesum), SHA-1 and SHA-256.
+    * @param arg the algorithm as supplied in the command line 
+    * (may be null)
+    * @return the algorithm name (MD5 if the argument is null)
+    * @throws IllegalArgumentException if the algorithm isn't
+    * supported
+    */ 
+   public static String getAlgorithm(String arg)
+   {
+      if (arg == null || arg.equalsIgnoreCase("md5"))
+      {
+         return "MD5";
+      }
+      else if (arg.equalsIgnoreCase("sha1") || arg.equalsIgnoreCase("sha-1"))
+      {
+         return "SHA-1";
+      }
+      else if (arg.equalsIgnoreCase("sha256") 
+            || arg.equalsIgnoreCase("sha-256"))
+      {
+         return "SHA-256";
+      }
+
+      throw new IllegalArgumentException("Invalid digest algorithm: "+arg);
+   }
+
+   /**
+    * Computes the digest of the given file. 
+    * @param file the file
+    * @param algorithm the algorithm name
+    * @param deadline the time limit (may be null)
+    * @return the digest as upper case hexadecimal digits or null if
+    * the deadline passed before the whole file was read
+    * @throws IOException if the file can't be read
+    * @throws NoSuchAlgorithmException if the algorithm isn't
+    * available
+    */ 
+   public static String digest(File file, String algorithm,
+     FileDeadline deadline)
+   throws IOException,NoSuchAlgorithmException
+   {
+      MessageDigest md = MessageDigest.getInstance(algorithm);
+
+      FileInputStream in = new FileInputStream(file);
+
+      try
+      {
+         FileChannel channel = in.getChannel();
+         long size = channel.size();
+
+         if (size < MAP_THRESHOLD)
+         {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+            while (channel.read(buffer) != -1)
+            {
+               buffer.flip();
+               md.update(buffer);
+               buffer.clear();
+            }
+         }
+         else
+         {
+            for (long position = 0L; position < size; 
+                 position += MAP_REGION_SIZE)
+            {
+               if (deadline != null && deadline.isExpired())
+               {
+                  return null;
+               }
+
+               MappedByteBuffer region = channel.map(
+                 FileChannel.MapMode.READ_ONLY, position,
+                 Math.min(MAP_REGION_SIZE, size - position));
+
+               md.update(region);
+            }
+         }
+      }
+      finally
+      {
+         in.close();
+      }
+
+      return toHex(md.digest());
+   }
+
+   /**
+    * Converts the digest to upper case hexadecimal digits (as
+    * \pdfmdfivesum).
+    */ 
+   static String toHex(byte[] bytes)
+   {
+      char[] chars = new char[2*bytes.length];
+
+      for (int i = 0; i < bytes.length; i++)
+      {
+         chars[2*i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+         chars[2*i+1] = HEX_DIGITS[bytes[i] & 0xF];
+      }
+
+      return new String(chars);
+   }
+
+   private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+   // Files smaller than this are read into a buffer rather than
+   // mapped, as mapping has a fixed cost.
+   private static final long MAP_THRESHOLD=1L << 20;
+
+   private static final int BUFFER_SIZE=1 << 16;
+
+   // Larger files are mapped one region at a time, so the address
+   // space needed doesn't depend on the file size.
+   private static final long MAP_REGION_SIZE=1L << 26;
+}
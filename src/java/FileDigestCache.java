@@ -0,0 +1,389 @@
+/*
+    Copyright (C) 2016 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This work may be distributed and/or modified under the
+    conditions of the LaTeX Project Public License, either version 1.3
+    of this license or (at your option) any later version.
+    The latest version of this license is in
+    http://www.latex-project.org/lppl.txt
+    and version 1.3 or later is part of all distributions of LaTeX
+    version 2005/12/01 or later.
+*/
+package com.dickimawbooks.texosquery;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Persistent cache of file digests. Each digest is recorded with
+ * the file's canonical path, size, modification time and file key
+ * (the device and inode on Unix-like systems), so a file is only
+ * read again if any of these have changed. A file replaced by
+ * another with the same size and time stamp has a different file
+ * key.
+ *
+ * The cache is saved in the same directory as the walk index
+ * (TEXMFOUTPUT, if set, or the current working directory) and in
+ * the same way: it's written to a temporary file, which is then
+ * moved to replace the old cache, and it ends with a checksum. A
+ * cache with a different version or a bad checksum is ignored.
+ * Files modified close to the time they were read aren't cached,
+ * as they may have been modified again within the file system's
+ * timestamp granularity.
+ *
+ * This uses the java.nio.file library, which was introduced
+ * to Java 7, so this isn't available for the JRE5 version.
+ * @since 1.8
+ */
+public class FileDigestCache
+{
+   private FileDigestCache(TeXOSQuery invoker, File file)
+   {
+      this.invoker = invoker;
+      this.file = file;
+      this.startTime = System.currentTimeMillis();
+   }
+
+   /**
+    * Loads the cache. If the cache doesn't exist or can't be read,
+    * an empty cache is returned.
+    * @param invoker the application
+    * @return the cache
+    */ 
+   public static FileDigestCache load(TeXOSQuery invoker)
+   {
+      FileDigestCache cache = new FileDigestCache(invoker, 
+        new File(FileWalkIndex.getIndexDirectory(invoker), CACHE_NAME));
+
+      if (cache.file.exists())
+      {
+         try
+         {
+            cache.read();
+         }
+         catch (IOException e)
+         {
+            invoker.debug(String.format("Ignoring digest cache %s",
+             cache.file.toString()), e);
+            cache.entries.clear();
+         }
+      }
+
+      return cache;
+   }
+
+   /**
+    * Determines whether the given file name is the cache (or a
+    * temporary file used when saving the cache). Walks skip these
+    * files.
+    * @param name the file name
+    * @return true if the name is a cache file name
+    */ 
+   public static boolean isCacheFile(String name)
+   {
+      return name.startsWith(CACHE_NAME);
+   }
+
+   /**
+    * Reads the attributes that identify the current contents of
+    * a file.
+    * @param file the file
+    * @param algorithm the digest algorithm
+    * @return the key used to look up the file's digest
+    * @throws IOException if the attributes can't be read
+    */ 
+   public Key getKey(File file, String algorithm) throws IOException
+   {
+      Path path = file.toPath().toRealPath();
+
+      BasicFileAttributes attrs = Files.readAttributes(path,
+        BasicFileAttributes.class);
+
+      Object fileKey = attrs.fileKey();
+
+      return new Key(path.toString(), algorithm, attrs.size(),
+         attrs.lastModifiedTime().toMillis(),
+         fileKey == null ? "" : fileKey.toString());
+   }
+
+   /**
+    * Gets the digest for the given file, if it's in the cache and
+    * the file hasn't changed.
+    * @param key the file's key
+    * @return the digest or null if the file needs to be read
+    */ 
+   public String get(Key key)
+   {
+      Entry entry = entries.get(key.getName());
+
+      if (entry == null || entry.size != key.size 
+          || entry.lastModified != key.lastModified
+          || !entry.fileKey.equals(key.fileKey))
+      {
+         return null;
+      }
+
+      reused++;
+
+      return entry.digest;
+   }
+
+   /**
+    * Adds a digest to the cache.
+    * @param key the file's key
+    * @param digest the digest
+    */ 
+   public void put(Key key, String digest)
+   {
+      if (key.lastModified >= startTime - RACY_INTERVAL)
+      {
+         invoker.info(String.format(
+           "Not caching digest of recently modified file: %s", key.path));
+         return;
+      }
+
+      Entry entry = entries.get(key.getName());
+
+      if (entry != null && entry.size == key.size 
+          && entry.lastModified == key.lastModified
+          && entry.fileKey.equals(key.fileKey) && entry.digest.equals(digest))
+      {
+         // already cached
+         return;
+      }
+
+      entries.put(key.getName(), new Entry(key.size, key.lastModified,
+        key.fileKey, digest));
+      modified = true;
+   }
+
+   /**
+    * Reads the cache file.
+    */ 
+   private void read() throws IOException
+   {
+      DataInputStream in = null;
+
+      try
+      {
+         CheckedInputStream checked = new CheckedInputStream(
+           new BufferedInputStream(new FileInputStream(file)), new CRC32());
+         in = new DataInputStream(checked);
+
+         if (in.readInt() != CACHE_MAGIC)
+         {
+            throw new IOException("Not a digest cache");
+         }
+
+         int version = in.readInt();
+
+         if (version != CACHE_VERSION)
+         {
+            throw new IOException(String.format(
+              "Unsupported digest cache version %d", version));
+         }
+
+         int n = in.readInt();
+
+         for (int i = 0; i < n; i++)
+         {
+            String name = in.readUTF();
+            long size = in.readLong();
+            long lastModified = in.readLong();
+            String fileKey = in.readUTF();
+            String digest = in.readUTF();
+
+            entries.put(name, new Entry(size, lastModified, fileKey, digest));
+         }
+
+         long checksum = checked.getChecksum().getValue();
+
+         if (in.readLong() != checksum)
+         {
+            throw new IOException("Digest cache checksum mismatch");
+         }
+      }
+      finally
+      {
+         if (in != null)
+         {
+            in.close();
+         }
+      }
+
+      invoker.info(String.format("Loaded digest cache %s (%d files)",
+        file.toString(), entries.size()));
+   }
+
+   /**
+    * Saves the cache, if any digests have been added. The cache is
+    * written to a temporary file in the same directory, which is
+    * then moved to replace the old cache.
+    */ 
+   public void save()
+   {
+      if (!modified)
+      {
+         return;
+      }
+
+      File dir = file.getParentFile();
+      File tmpFile = null;
+      DataOutputStream out = null;
+
+      try
+      {
+         tmpFile = File.createTempFile(file.getName()+".", ".tmp", dir);
+
+         CheckedOutputStream checked = new CheckedOutputStream(
+           new BufferedOutputStream(new FileOutputStream(tmpFile)), new CRC32());
+         out = new DataOutputStream(checked);
+
+         out.writeInt(CACHE_MAGIC);
+         out.writeInt(CACHE_VERSION);
+         out.writeInt(entries.size());
+
+         for (String name : entries.keySet())
+         {
+            Entry entry = entries.get(name);
+
+            out.writeUTF(name);
+            out.writeLong(entry.size);
+            out.writeLong(entry.lastModified);
+            out.writeUTF(entry.fileKey);
+            out.writeUTF(entry.digest);
+         }
+
+         out.flush();
+         out.writeLong(checked.getChecksum().getValue());
+
+         out.close();
+         out = null;
+
+         try
+         {
+            Files.move(tmpFile.toPath(), file.toPath(),
+              StandardCopyOption.ATOMIC_MOVE, 
+              StandardCopyOption.REPLACE_EXISTING);
+         }
+         catch (AtomicMoveNotSupportedException e)
+         {
+            Files.move(tmpFile.toPath(), file.toPath(),
+              StandardCopyOption.REPLACE_EXISTING);
+         }
+
+         tmpFile = null;
+
+         invoker.info(String.format(
+           "Saved digest cache %s (%d files, %d reused)",
+           file.toString(), entries.size(), reused));
+      }
+      catch (IOException e)
+      {
+         invoker.debug(String.format("Can't save digest cache %s", 
+           file.toString()), e);
+      }
+      finally
+      {
+         if (out != null)
+         {
+            try
+            {
+               out.close();
+            }
+            catch (IOException e)
+            {
+            }
+         }
+
+         if (tmpFile != null)
+         {
+            tmpFile.delete();
+         }
+      }
+   }
+
+   /**
+    * The attributes that identify a file's current contents.
+    */ 
+   public static class Key
+   {
+      Key(String path, String algorithm, long size, long lastModified,
+        String fileKey)
+      {
+         this.path = path;
+         this.algorithm = algorithm;
+         this.size = size;
+         this.lastModified = lastModified;
+         this.fileKey = fileKey;
+      }
+
+      /**
+       * Gets the file's real path.
+       * @return the path
+       */ 
+      public String getPath()
+      {
+         return path;
+      }
+
+      // Each algorithm has a separate entry for the same file.
+      String getName()
+      {
+         return algorithm+":"+path;
+      }
+
+      String path, algorithm, fileKey;
+      long size, lastModified;
+   }
+
+   /**
+    * A cached digest.
+    */ 
+   private static class Entry
+   {
+      Entry(long size, long lastModified, String fileKey, String digest)
+      {
+         this.size = size;
+         this.lastModified = lastModified;
+         this.fileKey = fileKey;
+         this.digest = digest;
+      }
+
+      long size, lastModified;
+      String fileKey, digest;
+   }
+
+   private static final String CACHE_NAME="texosquery-digest.idx";
+
+   // "TXQD"
+   private static final int CACHE_MAGIC=0x54585144;
+   private static final int CACHE_VERSION=1;
+
+   // Some file systems only store the modification time to the
+   // nearest 2 seconds.
+   private static final long RACY_INTERVAL=2000L;
+
+   private TeXOSQuery invoker;
+   private File file;
+   private long startTime;
+   private boolean modified = false;
+   private int reused=0;
+   private HashMap<String,Entry> entries = new HashMap<String,Entry>();
+}
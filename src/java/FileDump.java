@@ -0,0 +1,162 @@
+/*
+    Copyright (C) 2016 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This work may be distributed and/or modified under the
+    conditions of the LaTeX Project Public License, either version 1.3
+    of this license or (at your option) any later version.
+    The latest version of this license is in
+    http://www.latex-project.org/lppl.txt
+    and version 1.3 or later is part of all distributions of LaTeX
+    version 2005/12/01 or later.
+*/
+package com.dickimawbooks.texosquery;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads byte ranges of a file, such as the header of an image, without
+ * reading the rest of the file. Each range is read with a positional
+ * read into a direct buffer that's reused for all the ranges, so the
+ * channel's position isn't changed and the bytes don't need to be
+ * copied into the Java heap before they're formatted.
+ * This class needs to be Java 1.5 compatible.
+ * @since 1.8
+ */
+public class FileDump
+{
+   /**
+    * Creates a new reader.
+    * @param capacity the length of the longest range that will be
+    * read
+    */ 
+   public FileDump(int capacity)
+   {
+      buffer = ByteBuffer.allocateDirect(capacity);
+   }
+
+   /**
+    * Parses a comma-separated list of ranges, where each range is
+    * in the form <offset>:<length>.
+    * @param arg the list of ranges
+    * @return the offset and length of each range (in that order)
+    * @throws IllegalArgumentException if a range is invalid or if
+    * its length exceeds MAX_LENGTH
+    */ 
+   public static long[] parseRanges(String arg)
+   {
+      String[] split = arg.split(",");
+      long[] ranges = new long[2*split.length];
+
+      for (int i = 0; i < split.length; i++)
+      {
+         int idx = split[i].indexOf(':');
+
+         try
+         {
+            if (idx == -1)
+            {
+               throw new NumberFormatException();
+            }
+
+            ranges[2*i] = Long.parseLong(split[i].substring(0, idx));
+            ranges[2*i+1] = Long.parseLong(split[i].substring(idx+1));
+         }
+         catch (NumberFormatException e)
+         {
+            throw new IllegalArgumentException(
+              "Invalid byte range (<offset>:<length> required): "+split[i]);
+         }
+
+         if (ranges[2*i] < 0 || ranges[2*i+1] < 0 
+             || ranges[2*i+1] > MAX_LENGTH)
+         {
+            throw new IllegalArgumentException(String.format(
+              "Invalid byte range (offset must not be negative and length must be between 0 and %d): %s",
+              MAX_LENGTH, split[i]));
+         }
+      }
+
+      return ranges;
+   }
+
+   /**
+    * Gets the length of the longest range.
+    * @param ranges the ranges as returned by parseRanges(String)
+    * @return the maximum length
+    */ 
+   public static int getMaxLength(long[] ranges)
+   {
+      long max = 0;
+
+      for (int i = 1; i < ranges.length; i += 2)
+      {
+         max = Math.max(max, ranges[i]);
+      }
+
+      return (int)max;
+   }
+
+   /**
+    * Reads a range of bytes. The read stops early at the end of
+    * the file. The channel's position isn't changed.
+    * @param channel the file channel
+    * @param offset the position of the first byte
+    * @param length the number of bytes (no more than the capacity)
+    * @return the buffer containing the bytes, which is only valid
+    * until the next read
+    * @throws IOException if the file can't be read
+    */ 
+   public ByteBuffer read(FileChannel channel, long offset, int length)
+   throws IOException
+   {
+      buffer.clear();
+      buffer.limit(length);
+
+      // A single read normally fills the buffer, but a read may
+      // return fewer bytes than requested before the end of the
+      // file.
+
+      while (buffer.hasRemaining())
+      {
+         int n = channel.read(buffer, offset+buffer.position());
+
+         if (n == -1)
+         {
+            break;
+         }
+      }
+
+      buffer.flip();
+
+      return buffer;
+   }
+
+   /**
+    * Appends the remaining bytes in the buffer as upper case
+    * hexadecimal digits (as \pdffiledump).
+    * @param bytes the buffer
+    * @param builder the output
+    */ 
+   public static void appendHex(ByteBuffer bytes, StringBuilder builder)
+   {
+      while (bytes.hasRemaining())
+      {
+         int b = bytes.get() & 0xFF;
+
+         builder.append(HEX_DIGITS[b >> 4]);
+         builder.append(HEX_DIGITS[b & 0xF]);
+      }
+   }
+
+   /**
+    * The maximum length of a range.
+    */ 
+   public static final int MAX_LENGTH=0x10000;
+
+   private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+   private ByteBuffer buffer;
+}
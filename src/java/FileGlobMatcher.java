@@ -0,0 +1,208 @@
+/*
+    Copyright (C) 2016 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This work may be distributed and/or modified under the
+    conditions of the LaTeX Project Public License, either version 1.3
+    of this license or (at your option) any later version.
+    The latest version of this license is in
+    http://www.latex-project.org/lppl.txt
+    and version 1.3 or later is part of all distributions of LaTeX
+    version 2005/12/01 or later.
+*/
+package com.dickimawbooks.texosquery;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Locale;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+
+/**
+ * Matches file names against a glob pattern. This uses the
+ * java.nio.file library, which was introduced in Java 7, so this
+ * isn't available for the JRE5 version.
+ *
+ * Simple patterns are checked directly without creating a
+ * PathMatcher: a literal name (<tt>foo.tex</tt>), a literal prefix
+ * (<tt>foo*</tt>), a literal suffix (<tt>*.png</tt>), a literal
+ * prefix and suffix (<tt>fig*.pdf</tt>) or a set of extensions
+ * (<tt>*.{png,pdf,jpg}</tt>). Anything else is passed to
+ * the default file system's PathMatcher.
+ * @since 1.8
+ */
+public class FileGlobMatcher extends FileNameMatcher
+{
+   /**
+    * Creates a new glob matcher.
+    * @param glob the glob pattern
+    * @throws IllegalArgumentException if the pattern is invalid
+    */
+   public FileGlobMatcher(String glob)
+   {
+      super(glob);
+
+      // The default file system on Windows is case-insensitive, so
+      // the PathMatcher is as well. The shortcuts need to behave in
+      // the same way.
+      ignoreCase = (File.separatorChar == '\\');
+
+      if (!parseSimple(glob))
+      {
+         kind = GLOB_PATH_MATCHER;
+         pathMatcher = FileSystems.getDefault().getPathMatcher("glob:"+glob);
+      }
+   }
+
+   /**
+    * Determines whether the glob is one of the simple forms that
+    * can be tested without a PathMatcher.
+    * @param glob the glob pattern
+    * @return true if the pattern is a simple form
+    */
+   private boolean parseSimple(String glob)
+   {
+      int n = glob.length();
+
+      // Extension set: *.{ext1,ext2,...}
+
+      if (glob.startsWith("*.{") && glob.endsWith("}") && n > 4)
+      {
+         String[] exts = glob.substring(3, n-1).split(",", -1);
+
+         extensions = new HashSet<String>();
+
+         for (int i = 0; i < exts.length; i++)
+         {
+            if (hasGlobChar(exts[i]) || exts[i].indexOf('.') != -1)
+            {
+               extensions = null;
+               return false;
+            }
+
+            extensions.add(ignoreCase ?
+               exts[i].toLowerCase(Locale.ROOT) : exts[i]);
+         }
+
+         kind = GLOB_EXTENSION_SET;
+         return true;
+      }
+
+      int idx = glob.indexOf('*');
+
+      if (idx == -1)
+      {
+         if (hasGlobChar(glob))
+         {
+            return false;
+         }
+
+         prefix = glob;
+         kind = GLOB_LITERAL;
+         return true;
+      }
+
+      if (glob.indexOf('*', idx+1) != -1)
+      {
+         return false;
+      }
+
+      String pre = glob.substring(0, idx);
+      String post = glob.substring(idx+1);
+
+      if (hasGlobChar(pre) || hasGlobChar(post))
+      {
+         return false;
+      }
+
+      prefix = pre;
+      suffix = post;
+      kind = GLOB_PREFIX_SUFFIX;
+
+      return true;
+   }
+
+   /**
+    * Checks if the given string contains any glob special
+    * characters (other than those already dealt with). The
+    * single asterisk has already been located by this point.
+    */
+   private static boolean hasGlobChar(String str)
+   {
+      for (int i = 0, n = str.length(); i < n; i++)
+      {
+         switch (str.charAt(i))
+         {
+            case '*':
+            case '?':
+            case '[':
+            case ']':
+            case '{':
+            case '}':
+            case '\\':
+              return true;
+         }
+      }
+
+      return false;
+   }
+
+   private boolean startsWith(String name, String str)
+   {
+      return name.regionMatches(ignoreCase, 0, str, 0, str.length());
+   }
+
+   private boolean endsWith(String name, String str)
+   {
+      int offset = name.length()-str.length();
+
+      return offset >= 0
+        && name.regionMatches(ignoreCase, offset, str, 0, str.length());
+   }
+
+   /**
+    * Tests if the given file name matches the glob.
+    * @param name the file name (not including the directory path)
+    * @return true if the name matches
+    */
+   @Override
+   public boolean matches(String name)
+   {
+      switch (kind)
+      {
+         case GLOB_LITERAL:
+           return ignoreCase ?
+             name.equalsIgnoreCase(prefix) : name.equals(prefix);
+         case GLOB_PREFIX_SUFFIX:
+           return name.length() >= prefix.length()+suffix.length()
+             && startsWith(name, prefix) && endsWith(name, suffix);
+         case GLOB_EXTENSION_SET:
+
+           int idx = name.lastIndexOf('.');
+
+           if (idx == -1)
+           {
+              return false;
+           }
+
+           String ext = name.substring(idx+1);
+
+           return extensions.contains(ignoreCase ?
+             ext.toLowerCase(Locale.ROOT) : ext);
+      }
+
+      return pathMatcher.matches(Paths.get(name));
+   }
+
+   private static final int GLOB_PATH_MATCHER=0;
+   private static final int GLOB_LITERAL=1;
+   private static final int GLOB_PREFIX_SUFFIX=2;
+   private static final int GLOB_EXTENSION_SET=3;
+
+   private int kind = GLOB_PATH_MATCHER;
+   private boolean ignoreCase;
+   private String prefix, suffix;
+   private HashSet<String> extensions;
+   private PathMatcher pathMatcher;
+}
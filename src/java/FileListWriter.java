@@ -0,0 +1,92 @@
+/*
+    Copyright (C) 2016 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This work may be distributed and/or modified under the
+    conditions of the LaTeX Project Public License, either version 1.3
+    of this license or (at your option) any later version.
+    The latest version of this license is in
+    http://www.latex-project.org/lppl.txt
+    and version 1.3 or later is part of all distributions of LaTeX
+    version 2005/12/01 or later.
+*/
+package com.dickimawbooks.texosquery;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Files;
+import java.nio.file.DirectoryStream;
+import java.nio.file.DirectoryIteratorException;
+
+/**
+ * Writes a directory listing while the directory is being read.
+ * Unlike File.list, the entries are read lazily, so the memory
+ * used doesn't depend on the size of the directory. This uses the
+ * java.nio.file library, which was introduced in Java 7, so this
+ * isn't available for the JRE5 version.
+ * @since 1.8
+ */
+public class FileListWriter
+{
+   /**
+    * Writes the names of the files in the given directory that
+    * match the filter. The directory should already have been
+    * checked with checkListingDirectory.
+    * @param invoker the application
+    * @param out the output
+    * @param separator the separator
+    * @param matcher the file name filter
+    * @param directory the directory
+    * @param listType the type of files to include in the list
+    * @throws IOException if the output can't be written
+    */ 
+   public static void write(TeXOSQuery invoker, Appendable out, 
+     String separator, FileNameMatcher matcher, File directory,
+     FileListType listType)
+   throws IOException
+   {
+      DirectoryStream<Path> stream;
+
+      try
+      {
+         stream = Files.newDirectoryStream(directory.toPath());
+      }
+      catch (Exception e)
+      {
+         invoker.debug(String.format("Unable to list contents of: %s",
+            directory), e);
+         return;
+      }
+
+      try
+      {
+         boolean first = true;
+
+         for (Path path : stream)
+         {
+            if (invoker.isDeadlineExpired())
+            {
+               break;
+            }
+
+            String name = path.getFileName().toString();
+
+            if (invoker.acceptListEntry(directory, name, matcher, listType))
+            {
+               invoker.appendFileListEntry(out, separator, name, first);
+               first = false;
+            }
+         }
+      }
+      catch (DirectoryIteratorException e)
+      {
+         invoker.debug(String.format(
+           "Unable to read all contents of: %s", directory), e);
+      }
+      finally
+      {
+         stream.close();
+      }
+   }
+}
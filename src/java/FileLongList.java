@@ -0,0 +1,185 @@
+/*
+    Copyright (C) 2016 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This work may be distributed and/or modified under the
+    conditions of the LaTeX Project Public License, either version 1.3
+    of this license or (at your option) any later version.
+    The latest version of this license is in
+    http://www.latex-project.org/lppl.txt
+    and version 1.3 or later is part of all distributions of LaTeX
+    version 2005/12/01 or later.
+*/
+package com.dickimawbooks.texosquery;
+
+import java.io.File;
+
+/**
+ * The entries of a long format directory listing. The name,
+ * modification date, size and type of each entry are stored in
+ * columns, so the attributes read while the directory was scanned
+ * can be used for both sorting and the listing without querying
+ * the file system again.
+ * This class needs to be Java 1.5 compatible.
+ * @since 1.8
+ */
+public class FileLongList
+{
+   /**
+    * Creates an empty list.
+    */ 
+   public FileLongList()
+   {
+   }
+
+   /**
+    * Adds an entry.
+    * @param name the entry's name
+    * @param lastModified the entry's modification date
+    * @param size the entry's size (0 for a directory)
+    * @param type the entry's type (TYPE_FILE, TYPE_DIRECTORY or
+    * TYPE_OTHER)
+    */ 
+   public void add(String name, long lastModified, long size, char type)
+   {
+      if (numEntries == names.length)
+      {
+         int capacity = 2*names.length;
+
+         String[] newNames = new String[capacity];
+         System.arraycopy(names, 0, newNames, 0, numEntries);
+         names = newNames;
+
+         long[] newDates = new long[capacity];
+         System.arraycopy(dates, 0, newDates, 0, numEntries);
+         dates = newDates;
+
+         long[] newSizes = new long[capacity];
+         System.arraycopy(sizes, 0, newSizes, 0, numEntries);
+         sizes = newSizes;
+
+         char[] newTypes = new char[capacity];
+         System.arraycopy(types, 0, newTypes, 0, numEntries);
+         types = newTypes;
+      }
+
+      names[numEntries] = name;
+      dates[numEntries] = lastModified;
+      sizes[numEntries] = size;
+      types[numEntries] = type;
+
+      numEntries++;
+   }
+
+   /**
+    * Gets the order of the entries. The sort keys are created from
+    * the stored names and attributes.
+    * @param sortType how to order the list
+    * @param deadline the time limit (may be null)
+    * @return the indexes of the entries in sorted order
+    */ 
+   public int[] sort(FileSortSpec sortType, FileDeadline deadline)
+   {
+      if (sortType.isDefault())
+      {
+         int[] order = new int[numEntries];
+
+         for (int i = 0; i < numEntries; i++)
+         {
+            order[i] = i;
+         }
+
+         return order;
+      }
+
+      String[] list = new String[numEntries];
+      System.arraycopy(names, 0, list, 0, numEntries);
+
+      FileSortColumns columns = new FileSortColumns(sortType, list,
+        File.separatorChar);
+
+      if (columns.usesFileAttributes())
+      {
+         for (int i = 0; i < numEntries; i++)
+         {
+            columns.setAttributes(i, dates[i], sizes[i]);
+         }
+      }
+
+      columns.setDeadline(deadline);
+
+      return columns.sort();
+   }
+
+   /**
+    * Gets the number of entries.
+    * @return the number of entries
+    */ 
+   public int size()
+   {
+      return numEntries;
+   }
+
+   /**
+    * Gets the name of an entry.
+    * @param index the index of the entry
+    * @return the name
+    */ 
+   public String getName(int index)
+   {
+      return names[index];
+   }
+
+   /**
+    * Gets the modification date of an entry.
+    * @param index the index of the entry
+    * @return the modification date
+    */ 
+   public long getLastModified(int index)
+   {
+      return dates[index];
+   }
+
+   /**
+    * Gets the size of an entry.
+    * @param index the index of the entry
+    * @return the size
+    */ 
+   public long getSize(int index)
+   {
+      return sizes[index];
+   }
+
+   /**
+    * Gets the type of an entry.
+    * @param index the index of the entry
+    * @return TYPE_FILE, TYPE_DIRECTORY or TYPE_OTHER
+    */ 
+   public char getType(int index)
+   {
+      return types[index];
+   }
+
+   /**
+    * The type of a regular file.
+    */ 
+   public static final char TYPE_FILE='f';
+
+   /**
+    * The type of a directory.
+    */ 
+   public static final char TYPE_DIRECTORY='d';
+
+   /**
+    * The type of any other entry (such as a device).
+    */ 
+   public static final char TYPE_OTHER='o';
+
+   private static final int INITIAL_CAPACITY=64;
+
+   private int numEntries=0;
+   private String[] names = new String[INITIAL_CAPACITY];
+   private long[] dates = new long[INITIAL_CAPACITY];
+   private long[] sizes = new long[INITIAL_CAPACITY];
+   private char[] types = new char[INITIAL_CAPACITY];
+}
@@ -0,0 +1,230 @@
+/*
+    Copyright (C) 2016 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This work may be distributed and/or modified under the
+    conditions of the LaTeX Project Public License, either version 1.3
+    of this license or (at your option) any later version.
+    The latest version of this license is in
+    http://www.latex-project.org/lppl.txt
+    and version 1.3 or later is part of all distributions of LaTeX
+    version 2005/12/01 or later.
+*/
+package com.dickimawbooks.texosquery;
+
+import java.util.regex.Pattern;
+
+/**
+ * Used to test file names (not including the directory path)
+ * in filtered listings and walks. The filter is compiled once
+ * when the listing starts rather than for every file name.
+ * This class needs to be Java 1.5 compatible.
+ * @since 1.8
+ */
+public abstract class FileNameMatcher
+{
+   /**
+    * Creates a new matcher.
+    * @param expression the expression as supplied in the command
+    * line invocation
+    */
+   protected FileNameMatcher(String expression)
+   {
+      this.expression = expression;
+   }
+
+   /**
+    * Tests if the given file name matches this filter.
+    * @param name the file name (not including the directory path)
+    * @return true if the name matches
+    */
+   public abstract boolean matches(String name);
+
+   /**
+    * Gets the expression used to create this matcher.
+    * @return the original expression
+    */
+   public String getExpression()
+   {
+      return expression;
+   }
+
+   public String toString()
+   {
+      return expression;
+   }
+
+   /**
+    * Creates a matcher from the given regular expression. The
+    * expression is anchored, so the whole name must match.
+    * @param regex the regular expression
+    * @return the new matcher
+    * @throws java.util.regex.PatternSyntaxException if the regular
+    * expression is invalid
+    */
+   public static FileNameMatcher createRegexMatcher(String regex)
+   {
+      return createRegexMatcher(null, regex);
+   }
+
+   /**
+    * Creates a matcher from the given regular expression. The
+    * expression is anchored, so the whole name must match.
+    * If the expression only uses the syntax supported by
+    * FileRegexNFA, the names are matched in linear time. Otherwise
+    * java.util.regex is used with a limit on the number of steps
+    * for each name.
+    * @param invoker used for debugging messages (may be null)
+    * @param regex the regular expression
+    * @return the new matcher
+    * @throws java.util.regex.PatternSyntaxException if the regular
+    * expression is invalid
+    */
+   public static FileNameMatcher createRegexMatcher(TeXOSQuery invoker,
+      String regex)
+   {
+      return new RegexFileNameMatcher(invoker, regex);
+   }
+
+   /**
+    * Matcher for a regular expression. The pattern is only
+    * compiled once. (String.matches compiles the pattern on every
+    * call.) Any literal text required by the pattern is checked
+    * first, so most non-matching names never reach the regular
+    * expression engine.
+    */
+   static class RegexFileNameMatcher extends FileNameMatcher
+   {
+      RegexFileNameMatcher(TeXOSQuery invoker, String regex)
+      {
+         super(regex);
+         this.invoker = invoker;
+
+         // Compile with java.util.regex first so that any syntax
+         // errors are reported in the usual way.
+         pattern = Pattern.compile(regex);
+
+         prefilter = FileRegexPrefilter.create(regex);
+         nfa = FileRegexNFA.compile(regex);
+
+         if (nfa == null && invoker != null)
+         {
+            invoker.info(String.format(
+              "Regular expression not supported by linear matcher, using step limit of %d: %s",
+              MAX_MATCH_STEPS, regex));
+         }
+      }
+
+      public boolean matches(String name)
+      {
+         if (prefilter != null && !prefilter.accept(name))
+         {
+            return false;
+         }
+
+         if (nfa != null)
+         {
+            return nfa.matches(name);
+         }
+
+         try
+         {
+            return pattern.matcher(new StepLimitedSequence(name,
+              new int[1])).matches();
+         }
+         catch (StepLimitExceeded e)
+         {
+            limitExceeded(name);
+         }
+         catch (StackOverflowError e)
+         {
+            limitExceeded(name);
+         }
+
+         return false;
+      }
+
+      /**
+       * Reports the first name that exceeded the step limit.
+       * (Any others are quietly treated as not matching.)
+       */
+      private void limitExceeded(String name)
+      {
+         if (invoker != null && !limitReported)
+         {
+            limitReported = true;
+
+            invoker.debug(String.format(
+             "Regular expression step limit exceeded, treating as no match: %s (name: %s)",
+             getExpression(), name));
+         }
+      }
+
+      private TeXOSQuery invoker;
+      private Pattern pattern;
+      private FileRegexPrefilter prefilter;
+      private FileRegexNFA nfa;
+      private volatile boolean limitReported = false;
+   }
+
+   /**
+    * Character sequence that counts the number of characters
+    * read by the regular expression engine. This puts a limit on
+    * the amount of backtracking.
+    */
+   static class StepLimitedSequence implements CharSequence
+   {
+      StepLimitedSequence(CharSequence seq, int[] steps)
+      {
+         this.seq = seq;
+         this.steps = steps;
+      }
+
+      public char charAt(int index)
+      {
+         if (++steps[0] > MAX_MATCH_STEPS)
+         {
+            throw new StepLimitExceeded();
+         }
+
+         return seq.charAt(index);
+      }
+
+      public int length()
+      {
+         return seq.length();
+      }
+
+      public CharSequence subSequence(int start, int end)
+      {
+         return new StepLimitedSequence(seq.subSequence(start, end), steps);
+      }
+
+      public String toString()
+      {
+         return seq.toString();
+      }
+
+      private CharSequence seq;
+      private int[] steps;
+   }
+
+   /**
+    * Thrown when the step limit has been exceeded.
+    */
+   static class StepLimitExceeded extends RuntimeException
+   {
+      StepLimitExceeded()
+      {
+         super("Step limit exceeded", null);
+      }
+   }
+
+   /**
+    * Maximum number of characters that java.util.regex may read
+    * when matching a single name.
+    */
+   public static final int MAX_MATCH_STEPS=100000;
+
+   private String expression;
+}
@@ -0,0 +1,214 @@
+/*
+    Copyright (C) 2016 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This work may be distributed and/or modified under the
+    conditions of the LaTeX Project Public License, either version 1.3
+    of this license or (at your option) any later version.
+    The latest version of this license is in
+    http://www.latex-project.org/lppl.txt
+    and version 1.3 or later is part of all distributions of LaTeX
+    version 2005/12/01 or later.
+*/
+package com.dickimawbooks.texosquery;
+
+/**
+ * Key used to order file names naturally, so that numbers within
+ * the names are compared by value (<tt>fig2.pdf</tt> comes before
+ * <tt>fig10.pdf</tt>). The name is split into alternating runs of
+ * text and digits when the key is created, so comparisons don't
+ * need to parse the name again. Digit runs may be of any length as
+ * they are compared as strings (after the leading zeros have been
+ * removed) rather than converted to a numeric type. Only the ASCII
+ * digits 0 to 9 are considered numeric.
+ * This class needs to be Java 1.5 compatible.
+ * @since 1.8
+ */
+public class FileNaturalSortKey implements Comparable<FileNaturalSortKey>
+{
+   /**
+    * Creates a new key for the given name.
+    * @param source the file name
+    * @param ignoreCase true if the text runs should be compared
+    * case-insensitively
+    */ 
+   public FileNaturalSortKey(String source, boolean ignoreCase)
+   {
+      this.source = source;
+      this.ignoreCase = ignoreCase;
+
+      int n = source.length();
+
+      if (n == 0)
+      {
+         runs = new String[0];
+         return;
+      }
+
+      startsWithNumber = isDigit(source.charAt(0));
+
+      // count the runs first so that the array is the right size
+
+      int numRuns = 1;
+
+      for (int i = 1; i < n; i++)
+      {
+         if (isDigit(source.charAt(i)) != isDigit(source.charAt(i-1)))
+         {
+            numRuns++;
+         }
+      }
+
+      runs = new String[numRuns];
+
+      int start = 0;
+      int idx = 0;
+
+      for (int i = 1; i <= n; i++)
+      {
+         if (i == n 
+             || isDigit(source.charAt(i)) != isDigit(source.charAt(i-1)))
+         {
+            if (isNumeric(idx))
+            {
+               // strip leading zeros
+
+               while (start < i-1 && source.charAt(start) == '0')
+               {
+                  start++;
+               }
+            }
+
+            runs[idx++] = source.substring(start, i);
+            start = i;
+         }
+      }
+   }
+
+   private static boolean isDigit(char c)
+   {
+      return c >= '0' && c <= '9';
+   }
+
+   /**
+    * Checks if the given run consists of digits. Since the runs
+    * alternate, this only depends on the type of the first run.
+    */ 
+   private boolean isNumeric(int idx)
+   {
+      return (idx % 2 == 0) == startsWithNumber;
+   }
+
+   /**
+    * Gets the name used to create this key.
+    * @return the file name
+    */ 
+   public String getSourceString()
+   {
+      return source;
+   }
+
+   /**
+    * Compares this key with another key.
+    * @param other the other key
+    * @return negative if this key comes before the other key,
+    * positive if this key comes after the other key, or 0 if
+    * they are the same
+    */ 
+   public int compareTo(FileNaturalSortKey other)
+   {
+      int n = Math.min(runs.length, other.runs.length);
+
+      for (int i = 0; i < n; i++)
+      {
+         String run1 = runs[i];
+         String run2 = other.runs[i];
+
+         boolean numeric1 = isNumeric(i);
+         boolean numeric2 = other.isNumeric(i);
+
+         int result;
+
+         if (numeric1 && numeric2)
+         {
+            // The leading zeros have been stripped so the longer
+            // number is the larger
+
+            result = run1.length() - run2.length();
+
+            if (result == 0)
+            {
+               result = run1.compareTo(run2);
+            }
+         }
+         else if (numeric1 || numeric2)
+         {
+            // One is a number and the other is text. The first
+            // characters must be different.
+
+            result = run1.charAt(0) - run2.charAt(0);
+         }
+         else if (ignoreCase)
+         {
+            result = run1.compareToIgnoreCase(run2);
+         }
+         else
+         {
+            result = run1.compareTo(run2);
+         }
+
+         if (result != 0)
+         {
+            return result;
+         }
+      }
+
+      if (runs.length != other.runs.length)
+      {
+         return runs.length - other.runs.length;
+      }
+
+      // The names are equivalent (for example, "fig02" and "fig2"
+      // or "Fig2" and "fig2" when case is ignored), so compare the
+      // original names to ensure a consistent order.
+
+      if (ignoreCase)
+      {
+         int result = source.compareToIgnoreCase(other.source);
+
+         if (result != 0)
+         {
+            return result;
+         }
+      }
+
+      return source.compareTo(other.source);
+   }
+
+   public boolean equals(Object obj)
+   {
+      if (!(obj instanceof FileNaturalSortKey))
+      {
+         return false;
+      }
+
+      FileNaturalSortKey other = (FileNaturalSortKey)obj;
+
+      return ignoreCase == other.ignoreCase && source.equals(other.source);
+   }
+
+   public int hashCode()
+   {
+      return source.hashCode();
+   }
+
+   public String toString()
+   {
+      return source;
+   }
+
+   private String source;
+   private String[] runs;
+   private boolean startsWithNumber = false;
+   private boolean ignoreCase;
+}
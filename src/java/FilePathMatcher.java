@@ -0,0 +1,379 @@
+/*
+    Copyright (C) 2016 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This work may be distributed and/or modified under the
+    conditions of the LaTeX Project Public License, either version 1.3
+    of this license or (at your option) any later version.
+    The latest version of this license is in
+    http://www.latex-project.org/lppl.txt
+    and version 1.3 or later is part of all distributions of LaTeX
+    version 2005/12/01 or later.
+*/
+package com.dickimawbooks.texosquery;
+
+import java.util.Vector;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Used to test the path of a file relative to the starting
+ * directory of a walk, rather than just the file name. The path
+ * always uses <tt>/</tt> as the separator. As well as testing
+ * files, a matcher can determine whether or not any file in a
+ * given sub-directory could possibly match, so the walk doesn't
+ * need to descend sub-directories that can't lead to a match.
+ * This class needs to be Java 1.5 compatible.
+ * @since 1.8
+ */
+public abstract class FilePathMatcher
+{
+   /**
+    * Creates a new matcher.
+    * @param expression the expression as supplied in the command
+    * line invocation
+    */
+   protected FilePathMatcher(String expression)
+   {
+      this.expression = expression;
+   }
+
+   /**
+    * Tests if the given relative path matches this filter.
+    * @param path the path relative to the starting directory
+    * @return true if the path matches
+    */
+   public abstract boolean matches(String path);
+
+   /**
+    * Tests if a file in the given sub-directory (or any of its
+    * descendents) could match this filter. This may return true
+    * even if there are no matches, but if it returns false there
+    * can't be any matches.
+    * @param path the path of the sub-directory relative to the
+    * starting directory
+    * @return false if there can't be any matching files in the
+    * sub-directory
+    */
+   public abstract boolean mayMatchWithin(String path);
+
+   /**
+    * Gets the expression used to create this matcher.
+    * @return the original expression
+    */
+   public String getExpression()
+   {
+      return expression;
+   }
+
+   public String toString()
+   {
+      return expression;
+   }
+
+   /**
+    * Creates a matcher from the given regular expression. The
+    * expression is anchored, so the whole path must match.
+    * @param invoker used for debugging messages (may be null)
+    * @param regex the regular expression
+    * @return the new matcher
+    * @throws java.util.regex.PatternSyntaxException if the regular
+    * expression is invalid
+    */
+   public static FilePathMatcher createRegexMatcher(TeXOSQuery invoker,
+      String regex)
+   {
+      return new RegexFilePathMatcher(invoker, regex);
+   }
+
+   /**
+    * Creates a matcher from the given glob pattern. The pattern is
+    * split into <tt>/</tt>-separated elements. An element that's
+    * just <tt>**</tt> matches any number (including none) of
+    * sub-directories. Any other element must match exactly one
+    * element of the path and is treated as a glob pattern for a
+    * file name (as for the glob file listings).
+    * @param invoker the application, which creates the glob
+    * matchers for the elements
+    * @param glob the glob pattern
+    * @return the new matcher
+    * @throws IllegalArgumentException if the pattern is invalid or
+    * glob patterns aren't available
+    */
+   public static FilePathMatcher createGlobMatcher(TeXOSQuery invoker,
+      String glob)
+   {
+      return new GlobFilePathMatcher(invoker, glob);
+   }
+
+   /**
+    * Matcher for a regular expression. Files are tested in the
+    * same way as file names in filtered listings (see
+    * FileNameMatcher). A sub-directory is tested by checking
+    * whether the sub-directory's path followed by a slash is the
+    * start of a possible match.
+    */
+   static class RegexFilePathMatcher extends FilePathMatcher
+   {
+      RegexFilePathMatcher(TeXOSQuery invoker, String regex)
+      {
+         super(regex);
+
+         nameMatcher = FileNameMatcher.createRegexMatcher(invoker, regex);
+         pattern = Pattern.compile(regex);
+      }
+
+      public boolean matches(String path)
+      {
+         return nameMatcher.matches(path);
+      }
+
+      public boolean mayMatchWithin(String path)
+      {
+         try
+         {
+            Matcher m = pattern.matcher(
+               new FileNameMatcher.StepLimitedSequence(path+"/", new int[1]));
+
+            // If the match failed without reaching the end of the
+            // input, no amount of further input can make it match.
+
+            return m.matches() || m.hitEnd();
+         }
+         catch (FileNameMatcher.StepLimitExceeded e)
+         {
+         }
+         catch (StackOverflowError e)
+         {
+         }
+
+         // Can't tell, so the sub-directory has to be walked.
+
+         return true;
+      }
+
+      private FileNameMatcher nameMatcher;
+      private Pattern pattern;
+   }
+
+   /**
+    * Matcher for a glob pattern. The path elements are matched
+    * against the pattern elements as a non-deterministic
+    * automaton, where the state is the set of pattern elements
+    * that the next path element may be matched against.
+    */
+   static class GlobFilePathMatcher extends FilePathMatcher
+   {
+      GlobFilePathMatcher(TeXOSQuery invoker, String glob)
+      {
+         super(glob);
+
+         String[] split = split(glob);
+
+         elements = new FileNameMatcher[split.length];
+
+         for (int i = 0; i < split.length; i++)
+         {
+            if (split[i].equals("**"))
+            {
+               // null indicates any number of path elements
+
+               elements[i] = null;
+            }
+            else if ("".equals(split[i]))
+            {
+               throw new IllegalArgumentException(
+                 "Empty element in glob path pattern: "+glob);
+            }
+            else
+            {
+               elements[i] = invoker.createGlobMatcher(split[i]);
+
+               if (elements[i] == null)
+               {
+                  throw new IllegalArgumentException(
+                    "Invalid glob path pattern: "+glob);
+               }
+            }
+         }
+      }
+
+      /**
+       * Splits the pattern at each slash that's not inside
+       * braces or brackets.
+       */
+      private static String[] split(String glob)
+      {
+         Vector<String> list = new Vector<String>();
+
+         int braces = 0;
+         boolean inBrackets = false;
+         int start = 0;
+
+         for (int i = 0, n = glob.length(); i < n; i++)
+         {
+            char c = glob.charAt(i);
+
+            if (c == '\\')
+            {
+               i++;
+            }
+            else if (inBrackets)
+            {
+               if (c == ']')
+               {
+                  inBrackets = false;
+               }
+               else if (c == '/')
+               {
+                  throw new IllegalArgumentException(
+                    "Slash not permitted in bracket expression: "+glob);
+               }
+            }
+            else if (c == '[')
+            {
+               inBrackets = true;
+            }
+            else if (c == '{')
+            {
+               braces++;
+            }
+            else if (c == '}')
+            {
+               braces--;
+            }
+            else if (c == '/')
+            {
+               if (braces > 0)
+               {
+                  throw new IllegalArgumentException(
+                    "Slash not permitted in braces: "+glob);
+               }
+
+               list.add(glob.substring(start, i));
+               start = i+1;
+            }
+         }
+
+         list.add(glob.substring(start));
+
+         return list.toArray(new String[list.size()]);
+      }
+
+      public boolean matches(String path)
+      {
+         boolean[] states = advance(initialStates(), path);
+
+         return states != null && states[elements.length];
+      }
+
+      public boolean mayMatchWithin(String path)
+      {
+         boolean[] states = advance(initialStates(), path);
+
+         if (states == null)
+         {
+            return false;
+         }
+
+         // A file in the sub-directory needs at least one more path
+         // element, so the final state on its own isn't enough.
+
+         for (int i = 0; i < elements.length; i++)
+         {
+            if (states[i])
+            {
+               return true;
+            }
+         }
+
+         return false;
+      }
+
+      /**
+       * Gets the states before any path elements have been matched.
+       */
+      private boolean[] initialStates()
+      {
+         boolean[] states = new boolean[elements.length+1];
+         states[0] = true;
+         addAnyElements(states);
+
+         return states;
+      }
+
+      /**
+       * Adds the states after each "**" that's reachable without
+       * matching another path element.
+       */
+      private void addAnyElements(boolean[] states)
+      {
+         for (int i = 0; i < elements.length; i++)
+         {
+            if (states[i] && elements[i] == null)
+            {
+               states[i+1] = true;
+            }
+         }
+      }
+
+      /**
+       * Matches each element of the path in turn.
+       * @return the resulting states or null if there are none
+       */
+      private boolean[] advance(boolean[] states, String path)
+      {
+         int start = 0;
+         int end = path.length();
+
+         while (start <= end)
+         {
+            int idx = path.indexOf('/', start);
+
+            if (idx == -1)
+            {
+               idx = end;
+            }
+
+            String name = path.substring(start, idx);
+
+            boolean[] next = new boolean[elements.length+1];
+            boolean any = false;
+
+            for (int i = 0; i < elements.length; i++)
+            {
+               if (!states[i])
+               {
+                  continue;
+               }
+
+               if (elements[i] == null)
+               {
+                  next[i] = true;
+                  any = true;
+               }
+               else if (elements[i].matches(name))
+               {
+                  next[i+1] = true;
+                  any = true;
+               }
+            }
+
+            if (!any)
+            {
+               return null;
+            }
+
+            addAnyElements(next);
+            states = next;
+            start = idx+1;
+         }
+
+         return states;
+      }
+
+      private FileNameMatcher[] elements;
+   }
+
+   private String expression;
+}
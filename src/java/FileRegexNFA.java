@@ -0,0 +1,1010 @@
+/*
+    Copyright (C) 2016 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This work may be distributed and/or modified under the
+    conditions of the LaTeX Project Public License, either version 1.3
+    of this license or (at your option) any later version.
+    The latest version of this license is in
+    http://www.latex-project.org/lppl.txt
+    and version 1.3 or later is part of all distributions of LaTeX
+    version 2005/12/01 or later.
+*/
+package com.dickimawbooks.texosquery;
+
+import java.util.Vector;
+
+/**
+ * Linear-time matcher for the subset of regular expression syntax
+ * typically used in file name filters. The expression is compiled
+ * to a Thompson NFA, which is simulated one code point at a time,
+ * so the time taken is proportional to the length of the name
+ * multiplied by the size of the expression. This means that a
+ * pathological pattern, such as <tt>(a|aa)*b</tt>, can't
+ * cause catastrophic backtracking.
+ *
+ * Supported syntax: literal characters, escaped punctuation, the
+ * escapes \t \n \r \f \a \e \xhh \\uhhhh \d \D \s \S \w \W, the
+ * dot, simple character classes (with ranges and negation but not
+ * intersections or nested classes), capturing and non-capturing
+ * groups, alternatives, the quantifiers *, +, ? and {n,m} (greedy
+ * or lazy, but not possessive) and ^ and $ at the start and end of
+ * the expression. Anything else isn't supported and
+ * compile(String) will return null. The semantics are the same as
+ * java.util.regex with no flags set for a complete match.
+ *
+ * This class needs to be Java 1.5 compatible.
+ * @since 1.8
+ */
+public class FileRegexNFA
+{
+   private FileRegexNFA(State start, int numStates)
+   {
+      this.numStates = numStates;
+
+      // flatten the graph into arrays, which are read-only after
+      // construction, so this object may be used by multiple threads
+
+      types = new int[numStates];
+      sets = new CharSet[numStates];
+      out = new int[numStates];
+      out1 = new int[numStates];
+
+      Vector<State> stack = new Vector<State>();
+      boolean[] done = new boolean[numStates];
+      stack.add(start);
+      done[start.id] = true;
+
+      while (!stack.isEmpty())
+      {
+         State state = stack.remove(stack.size()-1);
+
+         types[state.id] = state.type;
+         sets[state.id] = state.set;
+         out[state.id] = (state.out == null ? -1 : state.out.id);
+         out1[state.id] = (state.out1 == null ? -1 : state.out1.id);
+
+         if (state.out != null && !done[state.out.id])
+         {
+            done[state.out.id] = true;
+            stack.add(state.out);
+         }
+
+         if (state.out1 != null && !done[state.out1.id])
+         {
+            done[state.out1.id] = true;
+            stack.add(state.out1);
+         }
+      }
+
+      this.start = start.id;
+   }
+
+   /**
+    * Compiles the given regular expression. The expression should
+    * already have been checked with java.util.regex.Pattern.compile
+    * so that syntax errors are reported in the usual way.
+    * @param regex the regular expression
+    * @return the compiled NFA or null if the expression uses
+    * syntax that isn't supported
+    */
+   public static FileRegexNFA compile(String regex)
+   {
+      try
+      {
+         Parser parser = new Parser(regex);
+
+         Node node = parser.parse();
+
+         Builder builder = new Builder();
+
+         State match = builder.newState(MATCH, null, null, null);
+
+         State start = builder.build(node, match);
+
+         return new FileRegexNFA(start, builder.count);
+      }
+      catch (UnsupportedSyntax e)
+      {
+         return null;
+      }
+   }
+
+   /**
+    * Tests if the entire character sequence matches.
+    * @param seq the character sequence
+    * @return true if matched
+    */
+   public boolean matches(CharSequence seq)
+   {
+      int[] clist = new int[numStates];
+      int[] nlist = new int[numStates];
+      int[] mark = new int[numStates];
+      int[] stack = new int[numStates];
+
+      int generation = 1;
+      int csize = addState(start, clist, 0, mark, generation, stack);
+
+      int n = seq.length();
+
+      for (int i = 0; i < n; )
+      {
+         int cp = Character.codePointAt(seq, i);
+         i += Character.charCount(cp);
+
+         generation++;
+         int nsize = 0;
+
+         for (int j = 0; j < csize; j++)
+         {
+            int id = clist[j];
+
+            if (types[id] == CHAR && sets[id].contains(cp))
+            {
+               nsize = addState(out[id], nlist, nsize, mark, generation,
+                 stack);
+            }
+         }
+
+         if (nsize == 0)
+         {
+            return false;
+         }
+
+         int[] tmp = clist;
+         clist = nlist;
+         nlist = tmp;
+         csize = nsize;
+      }
+
+      for (int j = 0; j < csize; j++)
+      {
+         if (types[clist[j]] == MATCH)
+         {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   /**
+    * Adds the given state and everything reachable from it through
+    * empty transitions.
+    * @return the new size of the list
+    */
+   private int addState(int id, int[] list, int size, int[] mark,
+     int generation, int[] stack)
+   {
+      int top = 0;
+
+      if (mark[id] == generation)
+      {
+         return size;
+      }
+
+      mark[id] = generation;
+      stack[top++] = id;
+
+      while (top > 0)
+      {
+         id = stack[--top];
+
+         if (types[id] == SPLIT)
+         {
+            // push out1 first so that out is processed first
+            if (mark[out1[id]] != generation)
+            {
+               mark[out1[id]] = generation;
+               stack[top++] = out1[id];
+            }
+
+            if (mark[out[id]] != generation)
+            {
+               mark[out[id]] = generation;
+               stack[top++] = out[id];
+            }
+         }
+         else
+         {
+            list[size++] = id;
+         }
+      }
+
+      return size;
+   }
+
+   /**
+    * Thrown by the parser when the syntax isn't supported.
+    */
+   private static class UnsupportedSyntax extends Exception
+   {
+      UnsupportedSyntax()
+      {
+         super(null, null);
+      }
+   }
+
+   /**
+    * Set of code points, stored as a sorted list of inclusive ranges.
+    */
+   private static class CharSet
+   {
+      CharSet(int[] ranges)
+      {
+         this.ranges = ranges;
+      }
+
+      boolean contains(int cp)
+      {
+         for (int i = 0; i < ranges.length; i += 2)
+         {
+            if (cp < ranges[i])
+            {
+               return false;
+            }
+
+            if (cp <= ranges[i+1])
+            {
+               return true;
+            }
+         }
+
+         return false;
+      }
+
+      private int[] ranges;
+   }
+
+   /**
+    * Builds a CharSet from an unsorted collection of ranges.
+    */
+   private static class CharSetBuilder
+   {
+      void add(int from, int to)
+      {
+         list.add(new int[]{from, to});
+      }
+
+      void add(int[] ranges)
+      {
+         for (int i = 0; i < ranges.length; i += 2)
+         {
+            add(ranges[i], ranges[i+1]);
+         }
+      }
+
+      CharSet build(boolean negate)
+      {
+         int[] ranges = normalise();
+
+         return new CharSet(negate ? complement(ranges) : ranges);
+      }
+
+      private int[] normalise()
+      {
+         int n = list.size();
+         int[][] array = list.toArray(new int[n][]);
+
+         java.util.Arrays.sort(array, new java.util.Comparator<int[]>()
+         {
+            public int compare(int[] a, int[] b)
+            {
+               return a[0] < b[0] ? -1 : (a[0] == b[0] ? 0 : 1);
+            }
+         });
+
+         Vector<int[]> merged = new Vector<int[]>();
+
+         for (int i = 0; i < n; i++)
+         {
+            int[] range = array[i];
+
+            if (!merged.isEmpty())
+            {
+               int[] last = merged.get(merged.size()-1);
+
+               if (range[0] <= last[1]+1)
+               {
+                  if (range[1] > last[1])
+                  {
+                     last[1] = range[1];
+                  }
+
+                  continue;
+               }
+            }
+
+            merged.add(new int[]{range[0], range[1]});
+         }
+
+         int[] result = new int[2*merged.size()];
+
+         for (int i = 0; i < merged.size(); i++)
+         {
+            result[2*i] = merged.get(i)[0];
+            result[2*i+1] = merged.get(i)[1];
+         }
+
+         return result;
+      }
+
+      private Vector<int[]> list = new Vector<int[]>();
+   }
+
+   /**
+    * Complement of a sorted, merged list of ranges.
+    */
+   private static int[] complement(int[] ranges)
+   {
+      Vector<Integer> result = new Vector<Integer>();
+      int next = 0;
+
+      for (int i = 0; i < ranges.length; i += 2)
+      {
+         if (ranges[i] > next)
+         {
+            result.add(next);
+            result.add(ranges[i]-1);
+         }
+
+         next = ranges[i+1]+1;
+      }
+
+      if (next <= Character.MAX_CODE_POINT)
+      {
+         result.add(next);
+         result.add(Character.MAX_CODE_POINT);
+      }
+
+      int[] array = new int[result.size()];
+
+      for (int i = 0; i < array.length; i++)
+      {
+         array[i] = result.get(i).intValue();
+      }
+
+      return array;
+   }
+
+   /**
+    * Node in the parse tree.
+    */
+   private static class Node
+   {
+      Node(int type)
+      {
+         this.type = type;
+      }
+
+      int type;
+      CharSet set;
+      Node left, right;
+      int min, max;
+   }
+
+   /**
+    * Recursive descent parser for the supported subset.
+    */
+   private static class Parser
+   {
+      Parser(String regex)
+      {
+         this.regex = regex;
+         n = regex.length();
+      }
+
+      Node parse() throws UnsupportedSyntax
+      {
+         if (pos < n && regex.charAt(pos) == '^')
+         {
+            // redundant for a complete match
+            pos++;
+         }
+
+         Node node = parseAlternative();
+
+         if (pos < n)
+         {
+            throw new UnsupportedSyntax();
+         }
+
+         return node;
+      }
+
+      private Node parseAlternative() throws UnsupportedSyntax
+      {
+         Node node = parseSequence();
+
+         while (pos < n && regex.charAt(pos) == '|')
+         {
+            pos++;
+
+            Node alt = new Node(NODE_ALT);
+            alt.left = node;
+            alt.right = parseSequence();
+            node = alt;
+         }
+
+         return node;
+      }
+
+      private Node parseSequence() throws UnsupportedSyntax
+      {
+         Node node = new Node(NODE_EMPTY);
+
+         while (pos < n)
+         {
+            char c = regex.charAt(pos);
+
+            if (c == '|' || c == ')')
+            {
+               break;
+            }
+
+            if (c == '$' && pos == n-1 && depth == 0)
+            {
+               // redundant for a complete match
+               pos++;
+               break;
+            }
+
+            Node atom = parseRepeat();
+
+            if (node.type == NODE_EMPTY)
+            {
+               node = atom;
+            }
+            else
+            {
+               Node cat = new Node(NODE_CONCAT);
+               cat.left = node;
+               cat.right = atom;
+               node = cat;
+            }
+         }
+
+         return node;
+      }
+
+      private Node parseRepeat() throws UnsupportedSyntax
+      {
+         Node atom = parseAtom();
+
+         if (pos >= n)
+         {
+            return atom;
+         }
+
+         char c = regex.charAt(pos);
+         int min, max;
+
+         switch (c)
+         {
+            case '*':
+              min = 0;
+              max = -1;
+              pos++;
+            break;
+            case '+':
+              min = 1;
+              max = -1;
+              pos++;
+            break;
+            case '?':
+              min = 0;
+              max = 1;
+              pos++;
+            break;
+            case '{':
+              pos++;
+              min = parseInt();
+              max = min;
+
+              if (pos < n && regex.charAt(pos) == ',')
+              {
+                 pos++;
+
+                 if (pos < n && regex.charAt(pos) == '}')
+                 {
+                    max = -1;
+                 }
+                 else
+                 {
+                    max = parseInt();
+                 }
+              }
+
+              if (pos >= n || regex.charAt(pos) != '}'
+                  || (max != -1 && max < min) || min > MAX_REPEAT
+                  || max > MAX_REPEAT)
+              {
+                 throw new UnsupportedSyntax();
+              }
+
+              pos++;
+            break;
+            default:
+              return atom;
+         }
+
+         if (pos < n)
+         {
+            c = regex.charAt(pos);
+
+            if (c == '?')
+            {
+               // lazy makes no difference for a complete match
+               pos++;
+            }
+            else if (c == '+')
+            {
+               // possessive (no backtracking) changes the semantics
+               throw new UnsupportedSyntax();
+            }
+
+            if (pos < n)
+            {
+               c = regex.charAt(pos);
+
+               if (c == '*' || c == '+' || c == '?' || c == '{')
+               {
+                  throw new UnsupportedSyntax();
+               }
+            }
+         }
+
+         Node node = new Node(NODE_REPEAT);
+         node.left = atom;
+         node.min = min;
+         node.max = max;
+
+         return node;
+      }
+
+      private int parseInt() throws UnsupportedSyntax
+      {
+         int start = pos;
+
+         while (pos < n && regex.charAt(pos) >= '0' && regex.charAt(pos) <= '9')
+         {
+            pos++;
+         }
+
+         if (start == pos || pos-start > 4)
+         {
+            throw new UnsupportedSyntax();
+         }
+
+         return Integer.parseInt(regex.substring(start, pos));
+      }
+
+      private Node parseAtom() throws UnsupportedSyntax
+      {
+         int cp = regex.codePointAt(pos);
+         Node node;
+
+         switch (cp)
+         {
+            case '(':
+              pos++;
+
+              if (pos+1 < n && regex.charAt(pos) == '?')
+              {
+                 if (regex.charAt(pos+1) == ':')
+                 {
+                    pos += 2;
+                 }
+                 else
+                 {
+                    // flags, look-around, named or atomic group
+                    throw new UnsupportedSyntax();
+                 }
+              }
+
+              if (++depth > MAX_DEPTH)
+              {
+                 throw new UnsupportedSyntax();
+              }
+
+              node = parseAlternative();
+
+              depth--;
+
+              if (pos >= n || regex.charAt(pos) != ')')
+              {
+                 throw new UnsupportedSyntax();
+              }
+
+              pos++;
+
+              if (node.type == NODE_EMPTY)
+              {
+                 // an empty group can be repeated
+                 node = new Node(NODE_GROUP_EMPTY);
+              }
+
+              return node;
+            case '[':
+              pos++;
+              node = new Node(NODE_CHAR);
+              node.set = parseClass();
+              return node;
+            case '.':
+              pos++;
+              node = new Node(NODE_CHAR);
+              node.set = DOT;
+              return node;
+            case '\\':
+              pos++;
+              node = new Node(NODE_CHAR);
+              node.set = parseEscape(false);
+              return node;
+            case '^':
+            case '$':
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+            case ')':
+              throw new UnsupportedSyntax();
+         }
+
+         pos += Character.charCount(cp);
+         node = new Node(NODE_CHAR);
+         node.set = new CharSet(new int[]{cp, cp});
+
+         return node;
+      }
+
+      /**
+       * Parses an escape sequence (the backslash has already been
+       * consumed). In a character class, the set escapes may be
+       * added to the class but can't be used in a range.
+       */
+      private CharSet parseEscape(boolean inClass) throws UnsupportedSyntax
+      {
+         if (pos >= n)
+         {
+            throw new UnsupportedSyntax();
+         }
+
+         int cp = regex.codePointAt(pos);
+         pos += Character.charCount(cp);
+
+         switch (cp)
+         {
+            case 'd': return new CharSet(DIGIT);
+            case 'D': return new CharSet(complement(DIGIT));
+            case 's': return new CharSet(SPACE);
+            case 'S': return new CharSet(complement(SPACE));
+            case 'w': return new CharSet(WORD);
+            case 'W': return new CharSet(complement(WORD));
+            case 't': return single('\t');
+            case 'n': return single('\n');
+            case 'r': return single('\r');
+            case 'f': return single('\f');
+            case 'a': return single('\u0007');
+            case 'e': return single('\u001B');
+            case 'x': return single(parseHex(2));
+            case 'u': return single(parseHex(4));
+         }
+
+         if (Character.isLetterOrDigit(cp))
+         {
+            // \b, \p{..}, back references etc
+            throw new UnsupportedSyntax();
+         }
+
+         return single(cp);
+      }
+
+      private int parseHex(int numDigits) throws UnsupportedSyntax
+      {
+         if (pos+numDigits > n)
+         {
+            throw new UnsupportedSyntax();
+         }
+
+         String hex = regex.substring(pos, pos+numDigits);
+
+         for (int i = 0; i < numDigits; i++)
+         {
+            if (Character.digit(hex.charAt(i), 16) == -1)
+            {
+               throw new UnsupportedSyntax();
+            }
+         }
+
+         pos += numDigits;
+
+         int value = Integer.parseInt(hex, 16);
+
+         if (value >= 0xD800 && value <= 0xDFFF)
+         {
+            // surrogate pairs may be combined by java.util.regex
+            throw new UnsupportedSyntax();
+         }
+
+         return value;
+      }
+
+      private CharSet single(int cp)
+      {
+         return new CharSet(new int[] {cp, cp});
+      }
+
+      /**
+       * Parses a character class (the opening bracket has already been
+       * consumed).
+       */
+      private CharSet parseClass() throws UnsupportedSyntax
+      {
+         CharSetBuilder builder = new CharSetBuilder();
+         boolean negate = false;
+
+         if (pos < n && regex.charAt(pos) == '^')
+         {
+            negate = true;
+            pos++;
+         }
+
+         if (pos < n && regex.charAt(pos) == ']')
+         {
+            throw new UnsupportedSyntax();
+         }
+
+         boolean first = true;
+
+         while (true)
+         {
+            if (pos >= n)
+            {
+               throw new UnsupportedSyntax();
+            }
+
+            int cp = regex.codePointAt(pos);
+
+            if (cp == ']')
+            {
+               pos++;
+               break;
+            }
+
+            if (cp == '[' || cp == '&')
+            {
+               // nested class, union or intersection
+               throw new UnsupportedSyntax();
+            }
+
+            if (cp == '-')
+            {
+               // only literal at the start or end of the class
+
+               if (!first && !(pos+1 < n && regex.charAt(pos+1) == ']'))
+               {
+                  throw new UnsupportedSyntax();
+               }
+
+               pos++;
+               builder.add('-', '-');
+               first = false;
+               continue;
+            }
+
+            int from;
+
+            if (cp == '\\')
+            {
+               pos++;
+
+               CharSet set = parseEscape(true);
+
+               if (set.ranges.length != 2 || set.ranges[0] != set.ranges[1])
+               {
+                  // \d etc
+                  builder.add(set.ranges);
+
+                  if (pos < n && regex.charAt(pos) == '-'
+                   && !(pos+1 < n && regex.charAt(pos+1) == ']'))
+                  {
+                     throw new UnsupportedSyntax();
+                  }
+
+                  first = false;
+                  continue;
+               }
+
+               from = set.ranges[0];
+            }
+            else
+            {
+               pos += Character.charCount(cp);
+               from = cp;
+            }
+
+            int to = from;
+
+            if (pos+1 < n && regex.charAt(pos) == '-'
+                && regex.charAt(pos+1) != ']')
+            {
+               pos++;
+
+               cp = regex.codePointAt(pos);
+
+               if (cp == '\\')
+               {
+                  pos++;
+
+                  CharSet set = parseEscape(true);
+
+                  if (set.ranges.length != 2 || set.ranges[0] != set.ranges[1])
+                  {
+                     throw new UnsupportedSyntax();
+                  }
+
+                  to = set.ranges[0];
+               }
+               else if (cp == '[' || cp == '&')
+               {
+                  throw new UnsupportedSyntax();
+               }
+               else
+               {
+                  pos += Character.charCount(cp);
+                  to = cp;
+               }
+
+               if (to < from)
+               {
+                  throw new UnsupportedSyntax();
+               }
+            }
+
+            builder.add(from, to);
+            first = false;
+         }
+
+         return builder.build(negate);
+      }
+
+      private String regex;
+      private int pos = 0, n;
+      private int depth = 0;
+   }
+
+   /**
+    * Thompson construction. Each node is built with a reference to
+    * the state that follows it.
+    */
+   private static class Builder
+   {
+      State newState(int type, CharSet set, State out, State out1)
+        throws UnsupportedSyntax
+      {
+         if (count >= MAX_STATES)
+         {
+            throw new UnsupportedSyntax();
+         }
+
+         State state = new State(count++, type);
+         state.set = set;
+         state.out = out;
+         state.out1 = out1;
+
+         return state;
+      }
+
+      State build(Node node, State next) throws UnsupportedSyntax
+      {
+         switch (node.type)
+         {
+            case NODE_EMPTY:
+            case NODE_GROUP_EMPTY:
+              return next;
+            case NODE_CHAR:
+              return newState(CHAR, node.set, next, null);
+            case NODE_CONCAT:
+
+              // The parser creates a left-deep tree, so work back
+              // from the right without recursing down the left.
+
+              State state = next;
+
+              while (node.type == NODE_CONCAT)
+              {
+                 state = build(node.right, state);
+                 node = node.left;
+              }
+
+              return build(node, state);
+            case NODE_ALT:
+
+              Vector<Node> alternatives = new Vector<Node>();
+
+              while (node.type == NODE_ALT)
+              {
+                 alternatives.add(node.right);
+                 node = node.left;
+              }
+
+              state = build(node, next);
+
+              for (int i = alternatives.size()-1; i >= 0; i--)
+              {
+                 state = newState(SPLIT, null, state,
+                   build(alternatives.get(i), next));
+              }
+
+              return state;
+            case NODE_REPEAT:
+
+              state = next;
+
+              if (node.max == -1)
+              {
+                 State split = newState(SPLIT, null, null, next);
+                 split.out = build(node.left, split);
+                 state = split;
+              }
+              else
+              {
+                 for (int i = node.min; i < node.max; i++)
+                 {
+                    state = newState(SPLIT, null, build(node.left, state), next);
+                 }
+              }
+
+              for (int i = 0; i < node.min; i++)
+              {
+                 state = build(node.left, state);
+              }
+
+              return state;
+         }
+
+         throw new UnsupportedSyntax();
+      }
+
+      int count = 0;
+   }
+
+   /**
+    * State used during construction.
+    */
+   private static class State
+   {
+      State(int id, int type)
+      {
+         this.id = id;
+         this.type = type;
+      }
+
+      int id, type;
+      CharSet set;
+      State out, out1;
+   }
+
+   private int start, numStates;
+   private int[] types, out, out1;
+   private CharSet[] sets;
+
+   private static final int CHAR=0, SPLIT=1, MATCH=2;
+
+   private static final int NODE_EMPTY=0, NODE_CHAR=1, NODE_CONCAT=2,
+     NODE_ALT=3, NODE_REPEAT=4, NODE_GROUP_EMPTY=5;
+
+   private static final int MAX_STATES=10000;
+   private static final int MAX_DEPTH=100;
+   private static final int MAX_REPEAT=1000;
+
+   private static final int[] DIGIT = new int[] {'0', '9'};
+   private static final int[] SPACE = new int[]
+    {'\t', '\r', ' ', ' '};
+   private static final int[] WORD = new int[]
+    {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+
+   // The dot matches anything except a line terminator.
+   private static final CharSet DOT = new CharSet(complement(new int[]
+    {'\n', '\n', '\r', '\r', 0x0085, 0x0085, 0x2028, 0x2029}));
+}
@@ -0,0 +1,450 @@
+/*
+    Copyright (C) 2016 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This work may be distributed and/or modified under the
+    conditions of the LaTeX Project Public License, either version 1.3
+    of this license or (at your option) any later version.
+    The latest version of this license is in
+    http://www.latex-project.org/lppl.txt
+    and version 1.3 or later is part of all distributions of LaTeX
+    version 2005/12/01 or later.
+*/
+package com.dickimawbooks.texosquery;
+
+import java.util.Vector;
+
+/**
+ * Literal text that any file name must contain in order to match a
+ * regular expression. Most filters are in the form <tt>prefix.*</tt>,
+ * <tt>.*\.ext</tt> or <tt>.*literal.*</tt>, so a quick check with
+ * String.startsWith, String.endsWith or String.contains can reject
+ * most names without running the regular expression engine.
+ *
+ * The analysis is conservative. If the expression contains anything
+ * that might alter the meaning of a literal (such as an embedded
+ * flag or a top-level alternative), no prefilter is created. A name
+ * that passes the prefilter still needs to be tested against the
+ * full regular expression. This class needs to be Java 1.5
+ * compatible.
+ * @since 1.8
+ */
+public class FileRegexPrefilter
+{
+   private FileRegexPrefilter(String prefix, String suffix, String infix)
+   {
+      this.prefix = prefix;
+      this.suffix = suffix;
+      this.infix = infix;
+   }
+
+   /**
+    * Tests if the given name contains the required literal text.
+    * @param name the file name
+    * @return false if the name can't possibly match the regular
+    * expression, true if it might match
+    */
+   public boolean accept(String name)
+   {
+      if (prefix != null && !name.startsWith(prefix))
+      {
+         return false;
+      }
+
+      if (suffix != null && !name.endsWith(suffix))
+      {
+         return false;
+      }
+
+      return infix == null || name.indexOf(infix) != -1;
+   }
+
+   public String toString()
+   {
+      return String.format("prefix=%s,suffix=%s,infix=%s",
+        prefix, suffix, infix);
+   }
+
+   /**
+    * Analyses the given regular expression. This should only be
+    * used with an expression that has already been successfully
+    * compiled without flags.
+    * @param regex the regular expression
+    * @return the prefilter or null if no literal text could be
+    * found
+    */
+   public static FileRegexPrefilter create(String regex)
+   {
+      Vector<Atom> atoms = parse(regex);
+
+      if (atoms == null || atoms.isEmpty())
+      {
+         return null;
+      }
+
+      // Find the runs of literal characters. A literal that's
+      // followed by '+' is required at least once, so it may end a
+      // run and also start the next one. Any other quantifier makes the
+      // literal optional.
+
+      int n = atoms.size();
+
+      String prefix = null;
+      String suffix = null;
+      String infix = null;
+
+      StringBuilder run = new StringBuilder();
+      int runStart = 0;
+
+      for (int i = 0; i <= n; i++)
+      {
+         Atom atom = (i < n ? atoms.get(i) : null);
+
+         if (atom != null && atom.literal)
+         {
+            if (run.length() == 0)
+            {
+               runStart = i;
+            }
+
+            run.append(atom.c);
+
+            if (!atom.repeated)
+            {
+               continue;
+            }
+         }
+
+         if (run.length() > 0)
+         {
+            String str = run.toString();
+
+            // end of run is the last literal atom, which is either
+            // the current atom (if repeated) or the previous one
+
+            int runEnd = (atom != null && atom.literal) ? i : i-1;
+
+            if (runStart == 0 && prefix == null)
+            {
+               prefix = str;
+            }
+            else if (runEnd == n-1)
+            {
+               suffix = str;
+            }
+            else if (infix == null || str.length() > infix.length())
+            {
+               infix = str;
+            }
+
+            run.setLength(0);
+
+            if (atom != null && atom.literal)
+            {
+               // repeated literal also starts the next run
+               runStart = i;
+               run.append(atom.c);
+            }
+         }
+      }
+
+      if (prefix == null && suffix == null && infix == null)
+      {
+         return null;
+      }
+
+      return new FileRegexPrefilter(prefix, suffix, infix);
+   }
+
+   /**
+    * Splits the top-level of the regular expression into a list of
+    * atoms.
+    * @return list of atoms or null if the expression can't be
+    * safely analysed
+    */
+   private static Vector<Atom> parse(String regex)
+   {
+      Vector<Atom> atoms = new Vector<Atom>();
+
+      int n = regex.length();
+      int i = 0;
+
+      while (i < n)
+      {
+         char c = regex.charAt(i);
+
+         if (isSurrogate(c))
+         {
+            // a quantifier would apply to the whole code point
+            return null;
+         }
+
+         Atom atom;
+
+         switch (c)
+         {
+            case '|':
+              // top-level alternative
+              return null;
+            case '(':
+
+              if (i+1 < n && regex.charAt(i+1) == '?')
+              {
+                 // embedded flag, look-around or special group
+                 return null;
+              }
+
+              i = skipGroup(regex, i);
+
+              if (i == -1) return null;
+
+              atom = OTHER;
+            break;
+            case '[':
+              i = skipClass(regex, i);
+
+              if (i == -1) return null;
+
+              atom = OTHER;
+            break;
+            case '\\':
+
+              if (i+1 >= n) return null;
+
+              c = regex.charAt(i+1);
+              i += 2;
+
+              if (isSurrogate(c))
+              {
+                 return null;
+              }
+
+              if (Character.isLetterOrDigit(c))
+              {
+                 // \t, \d etc. Anything that takes a parameter
+                 // (such as \p{L} or \x41) or quotes (\Q) isn't
+                 // supported.
+
+                 if (SIMPLE_ESCAPES.indexOf(c) == -1
+                  || (i < n && regex.charAt(i) == '{'))
+                 {
+                    return null;
+                 }
+
+                 atom = OTHER;
+              }
+              else
+              {
+                 atom = new Atom(c);
+              }
+            break;
+            case '.':
+            case '^':
+            case '$':
+              i++;
+              atom = OTHER;
+            break;
+            case ')':
+            case ']':
+            case '{':
+            case '*':
+            case '+':
+            case '?':
+              // shouldn't happen for a valid pattern
+              return null;
+            default:
+              i++;
+              atom = new Atom(c);
+        }
+
+        // is there a quantifier?
+
+        if (i < n)
+        {
+           c = regex.charAt(i);
+
+           if (c == '*' || c == '+' || c == '?' || c == '{')
+           {
+              if (c == '{')
+              {
+                 i = regex.indexOf('}', i);
+
+                 if (i == -1) return null;
+              }
+
+              i++;
+
+              // lazy or possessive
+              if (i < n && (regex.charAt(i) == '?' || regex.charAt(i) == '+'))
+              {
+                 i++;
+              }
+
+              if (atom.literal)
+              {
+                 atom = (c == '+' ? new Atom(atom.c, true) : OTHER);
+              }
+           }
+        }
+
+        atoms.add(atom);
+      }
+
+      return atoms;
+   }
+
+   private static boolean isSurrogate(char c)
+   {
+      return Character.isHighSurrogate(c) || Character.isLowSurrogate(c);
+   }
+
+   /**
+    * Finds the end of the group starting at the given index.
+    * @return the index after the closing parenthesis or -1 if not
+    * found
+    */
+   private static int skipGroup(String regex, int i)
+   {
+      int n = regex.length();
+      int depth = 0;
+
+      while (i < n)
+      {
+         char c = regex.charAt(i);
+
+         switch (c)
+         {
+            case '\\':
+
+              if (i+1 < n && regex.charAt(i+1) == 'Q')
+              {
+                 return -1;
+              }
+
+              i += 2;
+            break;
+            case '[':
+              i = skipClass(regex, i);
+
+              if (i == -1) return -1;
+            break;
+            case '(':
+
+              if (i+1 < n && regex.charAt(i+1) == '?')
+              {
+                 return -1;
+              }
+
+              depth++;
+              i++;
+            break;
+            case ')':
+              depth--;
+              i++;
+
+              if (depth == 0)
+              {
+                 return i;
+              }
+            break;
+            default:
+              i++;
+         }
+      }
+
+      return -1;
+   }
+
+   /**
+    * Finds the end of the character class starting at the given index.
+    * @return the index after the closing bracket or -1 if not
+    * found
+    */
+   private static int skipClass(String regex, int i)
+   {
+      int n = regex.length();
+      int depth = 0;
+
+      while (i < n)
+      {
+         char c = regex.charAt(i);
+
+         switch (c)
+         {
+            case '\\':
+
+              if (i+1 < n && regex.charAt(i+1) == 'Q')
+              {
+                 return -1;
+              }
+
+              i += 2;
+            break;
+            case '[':
+              depth++;
+              i++;
+
+              if (i < n && regex.charAt(i) == '^')
+              {
+                 i++;
+              }
+
+              if (i < n && regex.charAt(i) == ']')
+              {
+                 // literal ] at the start is ambiguous
+                 return -1;
+              }
+            break;
+            case ']':
+              depth--;
+              i++;
+
+              if (depth == 0)
+              {
+                 return i;
+              }
+            break;
+            default:
+              i++;
+         }
+      }
+
+      return -1;
+   }
+
+   /**
+    * An element of the top level of the regular expression.
+    */
+   private static class Atom
+   {
+      Atom()
+      {
+         literal = false;
+      }
+
+      Atom(char c)
+      {
+         this(c, false);
+      }
+
+      Atom(char c, boolean repeated)
+      {
+         this.c = c;
+         this.literal = true;
+         this.repeated = repeated;
+      }
+
+      char c;
+      boolean literal;
+      boolean repeated = false;
+   }
+
+   private static final Atom OTHER = new Atom();
+
+   /**
+    * Escaped letters that don't take any parameters.
+    */
+   private static final String SIMPLE_ESCAPES = "dDsSwWbBtnrfaehHvVRXzZAG";
+
+   private String prefix, suffix, infix;
+}
@@ -0,0 +1,461 @@
+/*
+    Copyright (C) 2016 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This work may be distributed and/or modified under the
+    conditions of the LaTeX Project Public License, either version 1.3
+    of this license or (at your option) any later version.
+    The latest version of this license is in
+    http://www.latex-project.org/lppl.txt
+    and version 1.3 or later is part of all distributions of LaTeX
+    version 2005/12/01 or later.
+*/
+package com.dickimawbooks.texosquery;
+
+import java.io.File;
+import java.text.Collator;
+import java.text.CollationKey;
+
+/**
+ * Sorts a list of file names according to a sort specification.
+ * The sort keys are stored in columns (one array per key) rather
+ * than as an object per file, and the list is sorted by index, so
+ * very large listings don't need a File object or a boxed value
+ * for every entry. Modification dates and sizes are stored in
+ * primitive arrays and extensions are stored as offsets into the
+ * names.
+ *
+ * The file attributes, if required, must be supplied with
+ * setAttributes before sort is called. If a deadline has been
+ * set and it passes while the list is being sorted, the sort
+ * stops early and the order is left partially sorted.
+ * This class needs to be Java 1.5 compatible.
+ * @since 1.8
+ */
+public class FileSortColumns
+{
+   /**
+    * Creates the columns for the given names.
+    * @param spec the sort specification
+    * @param names the names as they appear in the list (which may
+    * include a path)
+    * @param separatorChar the character that separates the path from
+    * the file name
+    */ 
+   public FileSortColumns(FileSortSpec spec, String[] names, 
+     char separatorChar)
+   {
+      this(spec, names, names.length, separatorChar);
+   }
+
+   /**
+    * Creates the columns for entries that are only sorted by
+    * modification date or size, so the names aren't needed. Use
+    * sort() rather than sortNames().
+    * @param spec the sort specification (which mustn't use the
+    * names)
+    * @param size the number of entries
+    */ 
+   public FileSortColumns(FileSortSpec spec, int size)
+   {
+      this(spec, null, size, File.separatorChar);
+
+      if (spec.usesNames())
+      {
+         throw new IllegalArgumentException(
+           "Sort specification requires file names: "+spec);
+      }
+   }
+
+   private FileSortColumns(FileSortSpec spec, String[] names, int size,
+     char separatorChar)
+   {
+      this.spec = spec;
+      this.names = names;
+      this.size = size;
+      this.separatorChar = separatorChar;
+
+      types = spec.getComparisonTypes();
+
+      for (int i = 0; i < types.length; i++)
+      {
+         switch (types[i])
+         {
+            case FILE_SORT_DATE_ASCENDING:
+            case FILE_SORT_DATE_DESCENDING:
+              if (dates == null) dates = new long[size];
+            break;
+            case FILE_SORT_SIZE_ASCENDING:
+            case FILE_SORT_SIZE_DESCENDING:
+              if (sizes == null) sizes = new long[size];
+            break;
+         }
+      }
+   }
+
+   /**
+    * Checks if the modification date or size of the files are
+    * needed.
+    * @return true if setAttributes needs to be called for each file
+    */ 
+   public boolean usesFileAttributes()
+   {
+      return dates != null || sizes != null;
+   }
+
+   /**
+    * Gets the number of entries.
+    * @return the number of names
+    */ 
+   public int size()
+   {
+      return size;
+   }
+
+   /**
+    * Gets the name at the given index.
+    * @param index the index
+    * @return the name
+    */ 
+   public String getName(int index)
+   {
+      return names[index];
+   }
+
+   /**
+    * Sets the file attributes for the given entry.
+    * @param index the index of the entry
+    * @param lastModified the modification date
+    * @param size the file size
+    */ 
+   public void setAttributes(int index, long lastModified, long size)
+   {
+      if (dates != null)
+      {
+         dates[index] = lastModified;
+      }
+
+      if (sizes != null)
+      {
+         sizes[index] = size;
+      }
+   }
+
+   /**
+    * Sets the deadline for the sort. 
+    * @param deadline the deadline or null if there's no time limit
+    */ 
+   public void setDeadline(FileDeadline deadline)
+   {
+      this.deadline = deadline;
+   }
+
+   /**
+    * Determines if the deadline (if set) has passed.
+    */ 
+   private boolean isExpired()
+   {
+      return deadline != null && deadline.isExpired();
+   }
+
+   /**
+    * Sorts the entries. The order is stable, so entries with equal
+    * keys stay in their original order.
+    * @return the indexes of the entries in sorted order
+    */ 
+   public int[] sort()
+   {
+      createColumns();
+
+      int n = size;
+      int[] order = new int[n];
+
+      for (int i = 0; i < n; i++)
+      {
+         order[i] = i;
+      }
+
+      // The sort keys may be incomplete if the deadline passed
+      // while they were being created.
+
+      if (n > 1 && !isExpired())
+      {
+         mergeSort(order, new int[n], 0, n);
+      }
+
+      return order;
+   }
+
+   /**
+    * Sorts the names into the order given by the sort
+    * specification.
+    */ 
+   public void sortNames()
+   {
+      int[] order = sort();
+
+      String[] sorted = new String[order.length];
+
+      for (int i = 0; i < order.length; i++)
+      {
+         sorted[i] = names[order[i]];
+      }
+
+      System.arraycopy(sorted, 0, names, 0, sorted.length);
+   }
+
+   /**
+    * Creates the columns for the keys derived from the names.
+    */ 
+   private void createColumns()
+   {
+      int n = size;
+
+      columns = new Object[types.length];
+
+      for (int k = 0; k < types.length; k++)
+      {
+         switch (types[k])
+         {
+            case FILE_SORT_DATE_ASCENDING:
+            case FILE_SORT_DATE_DESCENDING:
+              columns[k] = dates;
+            break;
+            case FILE_SORT_SIZE_ASCENDING:
+            case FILE_SORT_SIZE_DESCENDING:
+              columns[k] = sizes;
+            break;
+            case FILE_SORT_EXT_ASCENDING:
+            case FILE_SORT_EXT_DESCENDING:
+
+              // offset of the extension (or the end of the name if
+              // there's no extension)
+
+              int[] offsets = new int[n];
+
+              for (int i = 0; i < n; i++)
+              {
+                 String name = names[i];
+                 int idx = name.lastIndexOf('.');
+
+                 offsets[i] = (idx > name.lastIndexOf(separatorChar) ?
+                    idx+1 : name.length());
+              }
+
+              columns[k] = offsets;
+            break;
+            case FILE_SORT_COLLATE_ASCENDING:
+            case FILE_SORT_COLLATE_DESCENDING:
+
+              Collator collator = spec.getCollator(k);
+              CollationKey[] collationKeys = new CollationKey[n];
+
+              for (int i = 0; i < n; i++)
+              {
+                 if ((i & DEADLINE_CHECK_MASK) == 0 && isExpired())
+                 {
+                    return;
+                 }
+
+                 collationKeys[i] = collator.getCollationKey(names[i]);
+              }
+
+              columns[k] = collationKeys;
+            break;
+            case FILE_SORT_NATURAL_ASCENDING:
+            case FILE_SORT_NATURAL_DESCENDING:
+            case FILE_SORT_NATURAL_NOCASE_ASCENDING:
+            case FILE_SORT_NATURAL_NOCASE_DESCENDING:
+
+              boolean ignoreCase = 
+                 (types[k] == FileSortType.FILE_SORT_NATURAL_NOCASE_ASCENDING
+               || types[k] == FileSortType.FILE_SORT_NATURAL_NOCASE_DESCENDING);
+
+              FileNaturalSortKey[] naturalKeys = new FileNaturalSortKey[n];
+
+              for (int i = 0; i < n; i++)
+              {
+                 if ((i & DEADLINE_CHECK_MASK) == 0 && isExpired())
+                 {
+                    return;
+                 }
+
+                 naturalKeys[i] = new FileNaturalSortKey(names[i], ignoreCase);
+              }
+
+              columns[k] = naturalKeys;
+            break;
+         }
+      }
+   }
+
+   /**
+    * Compares the entries at the given indexes.
+    */ 
+   private int compare(int i, int j)
+   {
+      for (int k = 0; k < types.length; k++)
+      {
+         int result = 0;
+
+         switch (types[k])
+         {
+            case FILE_SORT_DEFAULT:
+            break;
+            case FILE_SORT_DATE_ASCENDING:
+            case FILE_SORT_DATE_DESCENDING:
+            case FILE_SORT_SIZE_ASCENDING:
+            case FILE_SORT_SIZE_DESCENDING:
+
+              long[] values = (long[])columns[k];
+
+              result = values[i] < values[j] ? -1 
+                     : (values[i] == values[j] ? 0 : 1);
+
+            break;
+            case FILE_SORT_NAME_NOCASE_ASCENDING:
+            case FILE_SORT_NAME_NOCASE_DESCENDING:
+              result = names[i].compareToIgnoreCase(names[j]);
+            break;
+            case FILE_SORT_EXT_ASCENDING:
+            case FILE_SORT_EXT_DESCENDING:
+
+              int[] offsets = (int[])columns[k];
+
+              result = compareRegion(names[i], offsets[i], 
+                                     names[j], offsets[j]);
+            break;
+            case FILE_SORT_COLLATE_ASCENDING:
+            case FILE_SORT_COLLATE_DESCENDING:
+
+              CollationKey[] collationKeys = (CollationKey[])columns[k];
+
+              result = collationKeys[i].compareTo(collationKeys[j]);
+
+            break;
+            case FILE_SORT_NATURAL_ASCENDING:
+            case FILE_SORT_NATURAL_DESCENDING:
+            case FILE_SORT_NATURAL_NOCASE_ASCENDING:
+            case FILE_SORT_NATURAL_NOCASE_DESCENDING:
+
+              FileNaturalSortKey[] naturalKeys = (FileNaturalSortKey[])columns[k];
+
+              result = naturalKeys[i].compareTo(naturalKeys[j]);
+
+            break;
+            default:
+              result = names[i].compareTo(names[j]);
+         }
+
+         if (result != 0)
+         {
+            return types[k].isDescending() ? -Integer.signum(result) : result;
+         }
+      }
+
+      return 0;
+   }
+
+   /**
+    * Compares the ends of two strings from the given offsets
+    * (as String.compareTo but without creating the substrings).
+    */ 
+   private static int compareRegion(String str1, int offset1, 
+      String str2, int offset2)
+   {
+      int n1 = str1.length() - offset1;
+      int n2 = str2.length() - offset2;
+      int n = Math.min(n1, n2);
+
+      for (int i = 0; i < n; i++)
+      {
+         char c1 = str1.charAt(offset1+i);
+         char c2 = str2.charAt(offset2+i);
+
+         if (c1 != c2)
+         {
+            return c1 - c2;
+         }
+      }
+
+      return n1 - n2;
+   }
+
+   /**
+    * Stable merge sort of the index array between from
+    * (inclusive) and to (exclusive).
+    */ 
+   private void mergeSort(int[] order, int[] tmp, int from, int to)
+   {
+      if (to - from <= INSERTION_SORT_THRESHOLD)
+      {
+         for (int i = from+1; i < to; i++)
+         {
+            int value = order[i];
+            int j = i;
+
+            while (j > from && compare(order[j-1], value) > 0)
+            {
+               order[j] = order[j-1];
+               j--;
+            }
+
+            order[j] = value;
+         }
+
+         return;
+      }
+
+      int mid = (from + to) >>> 1;
+
+      mergeSort(order, tmp, from, mid);
+      mergeSort(order, tmp, mid, to);
+
+      // Large ranges check the deadline before merging. If it has
+      // passed, the two halves are left unmerged.
+
+      if (to - from > DEADLINE_CHECK_MASK && isExpired())
+      {
+         return;
+      }
+
+      // already in order?
+
+      if (compare(order[mid-1], order[mid]) <= 0)
+      {
+         return;
+      }
+
+      System.arraycopy(order, from, tmp, from, to-from);
+
+      int i = from;
+      int j = mid;
+
+      for (int k = from; k < to; k++)
+      {
+         if (j >= to || (i < mid && compare(tmp[i], tmp[j]) <= 0))
+         {
+            order[k] = tmp[i++];
+         }
+         else
+         {
+            order[k] = tmp[j++];
+         }
+      }
+   }
+
+   private static final int INSERTION_SORT_THRESHOLD=16;
+
+   // How often the deadline is checked while creating keys or
+   // merging (one less than a power of 2).
+   private static final int DEADLINE_CHECK_MASK=0x3FF;
+
+   private FileSortSpec spec;
+   private FileSortType[] types;
+   private String[] names;
+   private int size;
+   private char separatorChar;
+   private long[] dates, sizes;
+   private Object[] columns;
+   private FileDeadline deadline = null;
+}
@@ -0,0 +1,241 @@
+/*
+    Copyright (C) 2016 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This work may be distributed and/or modified under the
+    conditions of the LaTeX Project Public License, either version 1.3
+    of this license or (at your option) any later version.
+    The latest version of this license is in
+    http://www.latex-project.org/lppl.txt
+    and version 1.3 or later is part of all distributions of LaTeX
+    version 2005/12/01 or later.
+*/
+package com.dickimawbooks.texosquery;
+
+import java.util.Locale;
+import java.text.Collator;
+
+/**
+ * Indicates how to order files in listings. This is a list of sort
+ * keys, each with any additional information that the sort type
+ * needs, such as the locale used by collated sorting. Files that
+ * are equal according to the first key are ordered by the second
+ * key, and so on.
+ * This class needs to be Java 1.5 compatible.
+ * @since 1.8
+ */
+public class FileSortSpec
+{
+   /**
+    * Creates a new specification for the given sort type.
+    * @param type the sort type
+    */ 
+   public FileSortSpec(FileSortType type)
+   {
+      this(type, null);
+   }
+
+   /**
+    * Creates a new specification for the given sort type.
+    * @param type the sort type
+    * @param locale the locale used by collated sort types or null
+    * for the default locale
+    */ 
+   public FileSortSpec(FileSortType type, Locale locale)
+   {
+      this(new FileSortType[] {type}, new Locale[] {locale});
+   }
+
+   /**
+    * Creates a new specification with multiple sort keys.
+    * @param types the sort type of each key
+    * @param locales the locale of each key (elements may be null
+    * for the default locale)
+    */ 
+   public FileSortSpec(FileSortType[] types, Locale[] locales)
+   {
+      if (types.length == 0 || types.length != locales.length)
+      {
+         throw new IllegalArgumentException(
+           "Invalid sort specification");
+      }
+
+      this.types = types;
+      this.locales = locales;
+   }
+
+   /**
+    * Gets the number of sort keys.
+    * @return the number of keys
+    */ 
+   public int getKeyCount()
+   {
+      return types.length;
+   }
+
+   /**
+    * Gets the sort type of the first key.
+    * @return the sort type
+    */ 
+   public FileSortType getType()
+   {
+      return types[0];
+   }
+
+   /**
+    * Gets the sort type of the given key.
+    * @param index the key index
+    * @return the sort type
+    */ 
+   public FileSortType getType(int index)
+   {
+      return types[index];
+   }
+
+   /**
+    * Gets the locale used by the first key, if collated.
+    * @return the locale or null if the default locale should be used
+    */ 
+   public Locale getLocale()
+   {
+      return locales[0];
+   }
+
+   /**
+    * Gets the locale used by the given key, if collated.
+    * @param index the key index
+    * @return the locale or null if the default locale should be used
+    */ 
+   public Locale getLocale(int index)
+   {
+      return locales[index];
+   }
+
+   /**
+    * Gets the sort types used to compare files. Files with the
+    * same extension have always been ordered by name, so if the last
+    * key is the extension, the name is added as an extra key.
+    * @return the sort types in order of precedence
+    */ 
+   public FileSortType[] getComparisonTypes()
+   {
+      int n = types.length;
+
+      FileSortType last = types[n-1];
+
+      FileSortType extra = null;
+
+      if (last == FileSortType.FILE_SORT_EXT_ASCENDING)
+      {
+         extra = FileSortType.FILE_SORT_NAME_ASCENDING;
+      }
+      else if (last == FileSortType.FILE_SORT_EXT_DESCENDING)
+      {
+         extra = FileSortType.FILE_SORT_NAME_DESCENDING;
+      }
+
+      FileSortType[] result = new FileSortType[extra == null ? n : n+1];
+
+      System.arraycopy(types, 0, result, 0, n);
+
+      if (extra != null)
+      {
+         result[n] = extra;
+      }
+
+      return result;
+   }
+
+   /**
+    * Checks if the files should be listed in the default order.
+    * @return true if no sorting is required
+    */ 
+   public boolean isDefault()
+   {
+      return types.length == 1 && types[0] == FileSortType.FILE_SORT_DEFAULT;
+   }
+
+   /**
+    * Checks if any of the keys need the file's modification date
+    * or size.
+    * @return true if the file attributes are needed
+    */ 
+   public boolean usesFileAttributes()
+   {
+      for (int i = 0; i < types.length; i++)
+      {
+         if (types[i].usesFileAttributes())
+         {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   /**
+    * Checks if any of the keys are derived from the file names.
+    * Lists that are only sorted by modification date or size can
+    * be sorted without the names.
+    * @return true if the names are needed for sorting
+    */ 
+   public boolean usesNames()
+   {
+      FileSortType[] comparisonTypes = getComparisonTypes();
+
+      for (int i = 0; i < comparisonTypes.length; i++)
+      {
+         if (comparisonTypes[i] != FileSortType.FILE_SORT_DEFAULT
+          && !comparisonTypes[i].usesFileAttributes())
+         {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   /**
+    * Gets a new collator for the given key's locale.
+    * Collators aren't thread-safe, so each sort should get its own.
+    * @param index the key index
+    * @return the collator
+    */ 
+   public Collator getCollator(int index)
+   {
+      return locales[index] == null ? Collator.getInstance() 
+        : Collator.getInstance(locales[index]);
+   }
+
+   public String toString()
+   {
+      StringBuilder builder = new StringBuilder();
+
+      for (int i = 0; i < types.length; i++)
+      {
+         if (i > 0)
+         {
+            builder.append(',');
+         }
+
+         builder.append(types[i]);
+
+         if (locales[i] != null)
+         {
+            builder.append(':');
+            builder.append(locales[i]);
+         }
+      }
+
+      return builder.toString();
+   }
+
+   /**
+    * Specification for the default order.
+    */ 
+   public static final FileSortSpec DEFAULT 
+     = new FileSortSpec(FileSortType.FILE_SORT_DEFAULT);
+
+   private FileSortType[] types;
+   private Locale[] locales;
+}
@@ -28,7 +28,13 @@ public enum FileSortType
    FILE_SORT_NAME_NOCASE_ASCENDING ("iname-ascending", "iname", "iname-asc"), 
    FILE_SORT_NAME_NOCASE_DESCENDING ("iname-descending", "iname-des"), 
    FILE_SORT_EXT_ASCENDING ("ext-ascending", "ext", "ext-asc"), 
-   FILE_SORT_EXT_DESCENDING ("ext-descending", "ext-des");
+   FILE_SORT_EXT_DESCENDING ("ext-descending", "ext-des"),
+   FILE_SORT_COLLATE_ASCENDING ("collate-ascending", "collate", "collate-asc"), 
+   FILE_SORT_COLLATE_DESCENDING ("collate-descending", "collate-des"),
+   FILE_SORT_NATURAL_ASCENDING ("natural-ascending", "natural", "natural-asc"), 
+   FILE_SORT_NATURAL_DESCENDING ("natural-descending", "natural-des"),
+   FILE_SORT_NATURAL_NOCASE_ASCENDING ("inatural-ascending", "inatural", "inatural-asc"), 
+   FILE_SORT_NATURAL_NOCASE_DESCENDING ("inatural-descending", "inatural-des");
 
    private final String name, altName1, altName2;
 
@@ -77,6 +83,70 @@ public enum FileSortType
         || type.equals(altName2);
    }
 
+   /**
+    * Checks if this sort type uses a locale-sensitive collator.
+    * These types may be followed by a colon and a language tag in
+    * the command line invocation.
+    * @return true if this is a collated sort type
+    * @since 1.8
+    */ 
+   public boolean isCollated()
+   {
+      return this == FILE_SORT_COLLATE_ASCENDING 
+          || this == FILE_SORT_COLLATE_DESCENDING;
+   }
+
+   /**
+    * Checks if this sort type compares numbers within file names by
+    * value.
+    * @return true if this is a natural sort type
+    * @since 1.8
+    */ 
+   public boolean isNatural()
+   {
+      return this == FILE_SORT_NATURAL_ASCENDING 
+          || this == FILE_SORT_NATURAL_DESCENDING
+          || this == FILE_SORT_NATURAL_NOCASE_ASCENDING 
+          || this == FILE_SORT_NATURAL_NOCASE_DESCENDING;
+   }
+
+   /**
+    * Checks if this sort type orders in descending order.
+    * @return true if this is a descending sort type
+    * @since 1.8
+    */ 
+   public boolean isDescending()
+   {
+      switch (this)
+      {
+         case FILE_SORT_DATE_DESCENDING:
+         case FILE_SORT_SIZE_DESCENDING:
+         case FILE_SORT_NAME_DESCENDING:
+         case FILE_SORT_NAME_NOCASE_DESCENDING:
+         case FILE_SORT_EXT_DESCENDING:
+         case FILE_SORT_COLLATE_DESCENDING:
+         case FILE_SORT_NATURAL_DESCENDING:
+         case FILE_SORT_NATURAL_NOCASE_DESCENDING:
+           return true;
+      }
+
+      return false;
+   }
+
+   /**
+    * Checks if this sort type needs the file's modification date
+    * or size.
+    * @return true if this sort type uses the file attributes
+    * @since 1.8
+    */ 
+   public boolean usesFileAttributes()
+   {
+      return this == FILE_SORT_DATE_ASCENDING 
+          || this == FILE_SORT_DATE_DESCENDING
+          || this == FILE_SORT_SIZE_ASCENDING 
+          || this == FILE_SORT_SIZE_DESCENDING;
+   }
+
    /**
     * Returns a list of available sort options used in the command
     * line invocation.
@@ -96,6 +166,9 @@ public enum FileSortType
          builder.append(t.options());
       }
 
+      builder.append(
+       ". The collate types may be followed by :<lang tag> to specify the locale. Multiple sort types may be separated by commas, in which case files that are equal according to one type are ordered by the next");
+
       return builder.toString();
    }
 
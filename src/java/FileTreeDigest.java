@@ -0,0 +1,254 @@
+/*
+    Copyright (C) 2016 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This work may be distributed and/or modified under the
+    conditions of the LaTeX Project Public License, either version 1.3
+    of this license or (at your option) any later version.
+    The latest version of this license is in
+    http://www.latex-project.org/lppl.txt
+    and version 1.3 or later is part of all distributions of LaTeX
+    version 2005/12/01 or later.
+*/
+package com.dickimawbooks.texosquery;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Computes a single digest for the files found by a walk. Each
+ * directory's digest is computed from its sorted entries, where a
+ * file entry is its name followed by either its size and
+ * modification time or its content digest, and a sub-directory
+ * entry is its name followed by its own digest. Sub-directories
+ * that don't contain any of the files are omitted. The digest of
+ * the starting directory therefore changes if any file found by
+ * the walk is added, removed, renamed or modified, but doesn't
+ * depend on the order in which the files were found.
+ * This class needs to be Java 1.5 compatible.
+ * @since 1.8
+ */
+public class FileTreeDigest
+{
+   /**
+    * Creates a new tree digest.
+    * @param content true if the file entries should use the
+    * content digest rather than the size and modification time
+    */ 
+   public FileTreeDigest(boolean content)
+   {
+      this.content = content;
+   }
+
+   /**
+    * Computes the digest of the starting directory. The directories
+    * are processed in reverse walk order, so each sub-directory's
+    * digest is available before its parent's. In content mode, if
+    * any file couldn't be read, the result is marked as truncated.
+    * @param invoker the application
+    * @param results the files found by the walk (with attributes)
+    * @param start the starting directory
+    * @return the digest as upper case hexadecimal digits
+    * @throws NoSuchAlgorithmException if MD5 isn't available
+    */ 
+   public String compute(TeXOSQuery invoker, FileWalkResults results,
+     File start)
+   throws NoSuchAlgorithmException
+   {
+      int numFiles = results.size();
+      int numDirs = results.getDirectoryCount();
+
+      String[] fileDigests = null;
+
+      if (content)
+      {
+         File[] files = new File[numFiles];
+
+         for (int i = 0; i < numFiles; i++)
+         {
+            files[i] = new File(start, results.getPath(i));
+         }
+
+         fileDigests = invoker.getFileDigests(files, "MD5");
+
+         // A file that couldn't be read has no content digest, so
+         // the tree digest wouldn't change with its content. The
+         // result is marked as truncated so that it's not mistaken
+         // for a complete digest.
+
+         for (int i = 0; i < numFiles; i++)
+         {
+            if (fileDigests[i] == null)
+            {
+               invoker.debug(String.format(
+                 "No content digest for file: %s", files[i]));
+               invoker.setTruncated();
+               break;
+            }
+         }
+      }
+
+      // Group the files by directory and the directories by
+      // parent. The first entry of each group is at offsets[d] and
+      // the group ends at offsets[d+1].
+
+      int[] fileOffsets = new int[numDirs+1];
+      int[] dirOffsets = new int[numDirs+1];
+
+      for (int i = 0; i < numFiles; i++)
+      {
+         fileOffsets[results.getFileDirectory(i)+1]++;
+      }
+
+      for (int d = 1; d < numDirs; d++)
+      {
+         dirOffsets[results.getDirectoryParent(d)+1]++;
+      }
+
+      for (int d = 0; d < numDirs; d++)
+      {
+         fileOffsets[d+1] += fileOffsets[d];
+         dirOffsets[d+1] += dirOffsets[d];
+      }
+
+      int[] fileOrder = new int[numFiles];
+      int[] dirOrder = new int[numDirs];
+      int[] next = new int[numDirs];
+
+      System.arraycopy(fileOffsets, 0, next, 0, numDirs);
+
+      for (int i = 0; i < numFiles; i++)
+      {
+         fileOrder[next[results.getFileDirectory(i)]++] = i;
+      }
+
+      System.arraycopy(dirOffsets, 0, next, 0, numDirs);
+
+      for (int d = 1; d < numDirs; d++)
+      {
+         dirOrder[next[results.getDirectoryParent(d)]++] = d;
+      }
+
+      MessageDigest md = MessageDigest.getInstance("MD5");
+      byte[][] dirDigests = new byte[numDirs][];
+
+      for (int d = numDirs-1; d >= 0; d--)
+      {
+         int numEntries = fileOffsets[d+1]-fileOffsets[d]
+                        + dirOffsets[d+1]-dirOffsets[d];
+
+         Entry[] entries = new Entry[numEntries];
+         int n = 0;
+
+         for (int j = fileOffsets[d]; j < fileOffsets[d+1]; j++)
+         {
+            int i = fileOrder[j];
+            entries[n++] = new Entry(results.getFileName(i), i, false);
+         }
+
+         for (int j = dirOffsets[d]; j < dirOffsets[d+1]; j++)
+         {
+            int child = dirOrder[j];
+
+            if (dirDigests[child] != null)
+            {
+               entries[n++] = new Entry(results.getDirectoryName(child),
+                 child, true);
+            }
+         }
+
+         if (n == 0 && d != FileWalkResults.ROOT)
+         {
+            continue;
+         }
+
+         Arrays.sort(entries, 0, n);
+
+         for (int k = 0; k < n; k++)
+         {
+            Entry entry = entries[k];
+
+            md.update(entry.isDirectory ? DIRECTORY_TAG : FILE_TAG);
+            md.update(toBytes(entry.name));
+            md.update((byte)0);
+
+            if (entry.isDirectory)
+            {
+               md.update(dirDigests[entry.index]);
+            }
+            else if (content)
+            {
+               String digest = fileDigests[entry.index];
+
+               if (digest != null)
+               {
+                  md.update(toBytes(digest));
+               }
+            }
+            else
+            {
+               update(md, results.getSize(entry.index));
+               update(md, results.getLastModified(entry.index));
+            }
+         }
+
+         dirDigests[d] = md.digest();
+      }
+
+      return FileDigest.toHex(dirDigests[FileWalkResults.ROOT]);
+   }
+
+   private static void update(MessageDigest md, long value)
+   {
+      for (int shift = 56; shift >= 0; shift -= 8)
+      {
+         md.update((byte)(value >>> shift));
+      }
+   }
+
+   private static byte[] toBytes(String name)
+   {
+      try
+      {
+         return name.getBytes("UTF-8");
+      }
+      catch (UnsupportedEncodingException e)
+      {
+         // UTF-8 is always supported
+
+         return name.getBytes();
+      }
+   }
+
+   /**
+    * An entry in a directory, which is either a file (identified by
+    * its index in the results) or a sub-directory (identified by
+    * its directory index).
+    */ 
+   private static class Entry implements Comparable<Entry>
+   {
+      Entry(String name, int index, boolean isDirectory)
+      {
+         this.name = name;
+         this.index = index;
+         this.isDirectory = isDirectory;
+      }
+
+      public int compareTo(Entry other)
+      {
+         return name.compareTo(other.name);
+      }
+
+      String name;
+      int index;
+      boolean isDirectory;
+   }
+
+   private static final byte FILE_TAG='f';
+   private static final byte DIRECTORY_TAG='d';
+
+   private boolean content;
+}
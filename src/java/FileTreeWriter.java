@@ -0,0 +1,329 @@
+/*
+    Copyright (C) 2016 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This work may be distributed and/or modified under the
+    conditions of the LaTeX Project Public License, either version 1.3
+    of this license or (at your option) any later version.
+    The latest version of this license is in
+    http://www.latex-project.org/lppl.txt
+    and version 1.3 or later is part of all distributions of LaTeX
+    version 2005/12/01 or later.
+*/
+package com.dickimawbooks.texosquery;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Files;
+import java.nio.file.DirectoryStream;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+
+/**
+ * Writes the directory structure found by a walk as nested groups.
+ * Each directory is written as {<files>}{<sub-directories>}, where
+ * <files> contains a group for each file name and
+ * <sub-directories> contains {{<name>}{<files>}{<sub-directories>}}
+ * for each sub-directory. The starting directory is written without
+ * a name or enclosing group. The same rules as FileWalkVisitor's
+ * walk determine which files and directories are included, but
+ * sub-directories that don't contain any matching files are still
+ * included.
+ *
+ * The tree is written in a single depth-first pass. Each directory
+ * is read and sorted once and its files are written straight away,
+ * so only the sub-directories of the directories on the current
+ * path are held in memory. An explicit stack is used rather than
+ * recursion, so deep trees don't overflow the call stack. If the
+ * deadline passes, the remaining sub-directories are skipped but
+ * the open groups are still closed.
+ *
+ * This uses the java.nio.file library, which was introduced to
+ * Java 7, so this isn't available for the JRE5 version.
+ * @since 1.8
+ */
+public class FileTreeWriter
+{
+   /**
+    * Creates a new tree writer.
+    * @param invoker the application
+    * @param visitor the visitor that determines which files and
+    * directories are accepted
+    * @param sortType how to order the files and sub-directories in
+    * each directory
+    * @param out the output
+    */ 
+   public FileTreeWriter(TeXOSQuery invoker, FileWalkVisitor visitor,
+     FileSortSpec sortType, Appendable out)
+   {
+      this.invoker = invoker;
+      this.visitor = visitor;
+      this.sortType = sortType;
+      this.out = out;
+   }
+
+   /**
+    * Writes the tree. The starting directory should already have
+    * been accepted by the visitor.
+    * @param start the starting directory
+    * @throws IOException if the output can't be written
+    */ 
+   public void write(Path start) throws IOException
+   {
+      ArrayList<Frame> frames = new ArrayList<Frame>();
+
+      frames.add(readDirectory(start));
+
+      while (!frames.isEmpty())
+      {
+         int top = frames.size()-1;
+         Frame frame = frames.get(top);
+
+         if (frame.position < frame.directories.length
+              && !invoker.isDeadlineExpired())
+         {
+            Path dir = frame.directories[frame.position++];
+
+            out.append("{{");
+            out.append(invoker.escapeFileName(FileWalkVisitor.getName(dir)));
+            out.append('}');
+
+            frames.add(readDirectory(dir));
+         }
+         else
+         {
+            frames.remove(top);
+
+            out.append('}');
+
+            if (top > 0)
+            {
+               out.append('}');
+            }
+         }
+      }
+   }
+
+   /**
+    * Reads a directory, writes its sorted files and opens the
+    * group for its sub-directories. A directory that has been
+    * removed is written as empty. If a directory can't otherwise be
+    * read, the entries found so far are written and the result is
+    * marked as truncated.
+    * @param dir the directory
+    * @return the frame containing the directory's sorted
+    * sub-directories
+    * @throws IOException if the output can't be written
+    */ 
+   private Frame readDirectory(Path dir) throws IOException
+   {
+      Listing files = new Listing();
+      Listing directories = new Listing();
+
+      DirectoryStream<Path> stream = null;
+
+      try
+      {
+         stream = Files.newDirectoryStream(dir);
+
+         for (Path path : stream)
+         {
+            if (invoker.isDeadlineExpired())
+            {
+               break;
+            }
+
+            FileAccessModel.Entry entry;
+
+            // Skip entries that have been removed since the
+            // directory listing was read.
+
+            try
+            {
+               entry = visitor.readEntry(path);
+            }
+            catch (NoSuchFileException e)
+            {
+               continue;
+            }
+
+            if (entry.isDirectory())
+            {
+               if (visitor.acceptDirectory(path, entry))
+               {
+                  directories.add(path, entry.lastModified(), 0L);
+               }
+            }
+            else if (visitor.acceptFile(path, entry))
+            {
+               files.add(path, entry.lastModified(), entry.size());
+            }
+         }
+      }
+      catch (DirectoryIteratorException e)
+      {
+         invoker.debug(String.format("Unable to read directory: %s", dir),
+           e.getCause());
+         invoker.setTruncated();
+      }
+      catch (NoSuchFileException e)
+      {
+         // The directory has been removed since it was found.
+      }
+      catch (IOException e)
+      {
+         invoker.debug(String.format("Unable to read directory: %s", dir),
+           e);
+         invoker.setTruncated();
+      }
+      finally
+      {
+         if (stream != null)
+         {
+            try
+            {
+               stream.close();
+            }
+            catch (IOException e)
+            {
+            }
+         }
+      }
+
+      Path[] sortedFiles = files.sort();
+
+      out.append('{');
+
+      for (int i = 0; i < sortedFiles.length; i++)
+      {
+         out.append('{');
+         out.append(invoker.escapeFileName(
+           FileWalkVisitor.getName(sortedFiles[i])));
+         out.append('}');
+      }
+
+      out.append("}{");
+
+      return new Frame(directories.sort());
+   }
+
+   /**
+    * The entries of one type found in a directory, together with
+    * the attributes needed for sorting. As with FileLongList, the
+    * attributes are kept in primitive columns, which are only
+    * created if the sort type needs them.
+    */ 
+   private class Listing
+   {
+      Listing()
+      {
+         if (sortType.usesFileAttributes())
+         {
+            dates = new long[INITIAL_CAPACITY];
+            sizes = new long[INITIAL_CAPACITY];
+         }
+      }
+
+      void add(Path path, long lastModified, long size)
+      {
+         if (numEntries == paths.length)
+         {
+            int capacity = 2*paths.length;
+
+            Path[] newPaths = new Path[capacity];
+            System.arraycopy(paths, 0, newPaths, 0, numEntries);
+            paths = newPaths;
+
+            if (dates != null)
+            {
+               long[] newDates = new long[capacity];
+               System.arraycopy(dates, 0, newDates, 0, numEntries);
+               dates = newDates;
+
+               long[] newSizes = new long[capacity];
+               System.arraycopy(sizes, 0, newSizes, 0, numEntries);
+               sizes = newSizes;
+            }
+         }
+
+         paths[numEntries] = path;
+
+         if (dates != null)
+         {
+            dates[numEntries] = lastModified;
+            sizes[numEntries] = size;
+         }
+
+         numEntries++;
+      }
+
+      Path[] sort()
+      {
+         int n = numEntries;
+         Path[] array = new Path[n];
+         System.arraycopy(paths, 0, array, 0, n);
+
+         if (sortType.isDefault() || n < 2)
+         {
+            return array;
+         }
+
+         String[] names = new String[n];
+
+         for (int i = 0; i < n; i++)
+         {
+            names[i] = FileWalkVisitor.getName(array[i]);
+         }
+
+         FileSortColumns columns = new FileSortColumns(sortType, names,
+           File.separatorChar);
+
+         if (dates != null)
+         {
+            for (int i = 0; i < n; i++)
+            {
+               columns.setAttributes(i, dates[i], sizes[i]);
+            }
+         }
+
+         columns.setDeadline(invoker.getDeadline());
+
+         int[] order = columns.sort();
+         Path[] sorted = new Path[n];
+
+         for (int i = 0; i < n; i++)
+         {
+            sorted[i] = array[order[i]];
+         }
+
+         return sorted;
+      }
+
+      private Path[] paths = new Path[INITIAL_CAPACITY];
+      private long[] dates = null, sizes = null;
+      private int numEntries = 0;
+   }
+
+   /**
+    * A directory whose sub-directories are being written.
+    */ 
+   private static class Frame
+   {
+      Frame(Path[] directories)
+      {
+         this.directories = directories;
+      }
+
+      Path[] directories;
+      int position = 0;
+   }
+
+   private TeXOSQuery invoker;
+   private FileWalkVisitor visitor;
+   private FileSortSpec sortType;
+   private Appendable out;
+
+   private static final int INITIAL_CAPACITY=16;
+}
@@ -0,0 +1,523 @@
+/*
+    Copyright (C) 2016 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This work may be distributed and/or modified under the
+    conditions of the LaTeX Project Public License, either version 1.3
+    of this license or (at your option) any later version.
+    The latest version of this license is in
+    http://www.latex-project.org/lppl.txt
+    and version 1.3 or later is part of all distributions of LaTeX
+    version 2005/12/01 or later.
+*/
+package com.dickimawbooks.texosquery;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Persistent index used by incremental walks. The index records
+ * the modification time of each directory visited by a walk
+ * together with the names of its entries and whether each entry
+ * is a directory, a symbolic link or hidden. A later walk from the
+ * same starting directory only needs to re-read the directories
+ * whose modification time has changed. (The modification time of a
+ * directory changes when an entry is added, removed or renamed.)
+ *
+ * Files aren't listed in the index with their size or modification
+ * time, as a file may be modified in place without changing its
+ * directory's modification time. The walk re-reads the attributes
+ * of the files that match the filter.
+ *
+ * There is one index file per starting directory. It's written to
+ * TEXMFOUTPUT (if set) or to the current working directory. The
+ * file isn't hidden, so it's permitted by openout_any. It's first
+ * written to a temporary file, which is then moved to replace the
+ * old index, so an interrupted run can't leave a partly-written
+ * index. The file starts with a version number and ends with a
+ * checksum. An index with a different version, a different
+ * starting directory or a bad checksum is ignored.
+ *
+ * This uses the java.nio.file library, which was introduced
+ * to Java 7, so this isn't available for the JRE5 version.
+ * @since 1.8
+ */
+public class FileWalkIndex
+{
+   private FileWalkIndex(TeXOSQuery invoker, File file, String startPath)
+   {
+      this.invoker = invoker;
+      this.file = file;
+      this.startPath = startPath;
+      this.startTime = System.currentTimeMillis();
+   }
+
+   /**
+    * Loads the index for the given starting directory. If the
+    * index doesn't exist or can't be read, an empty index is
+    * returned.
+    * @param invoker the application
+    * @param start the canonical starting directory
+    * @return the index
+    */ 
+   public static FileWalkIndex load(TeXOSQuery invoker, File start)
+   {
+      String startPath = start.getPath();
+
+      FileWalkIndex index = new FileWalkIndex(invoker, 
+        new File(getIndexDirectory(invoker), getIndexName(startPath)),
+        startPath);
+
+      if (index.file.exists())
+      {
+         try
+         {
+            index.read();
+         }
+         catch (IOException e)
+         {
+            invoker.debug(String.format("Ignoring walk index %s",
+             index.file.toString()), e);
+            index.oldListings.clear();
+         }
+         catch (RuntimeException e)
+         {
+            // A damaged index may fail in other ways before the
+            // checksum can be tested.
+
+            invoker.debug(String.format("Ignoring walk index %s",
+             index.file.toString()), e);
+            index.oldListings.clear();
+         }
+      }
+
+      return index;
+   }
+
+   /**
+    * Gets the directory in which to save the index. This is
+    * TEXMFOUTPUT, if set to a writable directory, or the current
+    * working directory.
+    */ 
+   static File getIndexDirectory(TeXOSQuery invoker)
+   {
+      String path = null;
+
+      try
+      {
+         path = System.getenv("TEXMFOUTPUT");
+      }
+      catch (SecurityException e)
+      {
+         invoker.debug("Can't query TEXMFOUTPUT", e);
+      }
+
+      if (path != null && !"".equals(path))
+      {
+         File dir = new File(invoker.fromTeXPath(path));
+
+         if (dir.isDirectory() && dir.canWrite())
+         {
+            return dir;
+         }
+      }
+
+      return new File(invoker.getSystemProperty("user.dir", "."));
+   }
+
+   /**
+    * Determines whether the given directory is the one in which the
+    * index is saved.
+    * @param invoker the invoking application
+    * @param directory the directory
+    * @return true if the index is saved in the directory
+    */ 
+   static boolean isIndexDirectory(TeXOSQuery invoker, File directory)
+   {
+      try
+      {
+         return getIndexDirectory(invoker).getCanonicalFile().equals(
+           directory.getCanonicalFile());
+      }
+      catch (IOException e)
+      {
+         invoker.debug(String.format("Can't compare directory %s",
+           directory.toString()), e);
+         return false;
+      }
+   }
+
+   /**
+    * Gets the index file name for the given starting directory.
+    */ 
+   private static String getIndexName(String startPath)
+   {
+      CRC32 crc = new CRC32();
+
+      try
+      {
+         crc.update(startPath.getBytes("UTF-8"));
+      }
+      catch (IOException e)
+      {// UTF-8 is always supported
+      }
+
+      return String.format("%s%08x%s", INDEX_PREFIX, crc.getValue(), 
+        INDEX_SUFFIX);
+   }
+
+   /**
+    * Determines whether the given file name is an index (or a
+    * temporary file used when saving an index). Walks skip these
+    * files, so that the results don't depend on whether or not an
+    * index has been saved.
+    * @param name the file name
+    * @return true if the name is an index file name
+    */ 
+   public static boolean isIndexFile(String name)
+   {
+      return name.startsWith(INDEX_PREFIX) && name.indexOf(INDEX_SUFFIX) > 0;
+   }
+
+   /**
+    * Gets the listing for the given directory, if it's in the
+    * index and its modification time hasn't changed. The listing
+    * is also kept in the updated index.
+    * @param key the directory path relative to the starting
+    * directory
+    * @param lastModified the directory's current modification time
+    * @return the listing or null if the directory needs to be read
+    */ 
+   public Listing get(String key, long lastModified)
+   {
+      Listing listing = oldListings.get(key);
+
+      if (listing == null || listing.lastModified != lastModified
+          || lastModified == UNKNOWN_TIME)
+      {
+         return null;
+      }
+
+      newListings.put(key, listing);
+      reused++;
+
+      return listing;
+   }
+
+   /**
+    * Adds a new listing to the updated index.
+    * @param key the directory path relative to the starting
+    * directory
+    * @param listing the directory listing
+    */ 
+   public void put(String key, Listing listing)
+   {
+      newListings.put(key, listing);
+   }
+
+   /**
+    * Keeps the listings of the directories that weren't visited
+    * in the updated index. This is used when a walk stops early,
+    * so that the rest of the index isn't lost. The listings are
+    * still checked against the directory modification times when
+    * they're next used.
+    */ 
+   public void retainUnvisited()
+   {
+      for (String key : oldListings.keySet())
+      {
+         if (!newListings.containsKey(key))
+         {
+            newListings.put(key, oldListings.get(key));
+         }
+      }
+   }
+
+   /**
+    * Reads the index file.
+    */ 
+   private void read() throws IOException
+   {
+      DataInputStream in = null;
+
+      // Each entry takes at least three bytes (the flags and the
+      // length of the name), so a listing can't have more entries
+      // than this. The counts are read before the checksum can be
+      // tested, so they need to be checked before any arrays are
+      // allocated.
+      long maxEntries = file.length()/3L;
+
+      try
+      {
+         CheckedInputStream checked = new CheckedInputStream(
+           new BufferedInputStream(new FileInputStream(file)), new CRC32());
+         in = new DataInputStream(checked);
+
+         if (in.readInt() != INDEX_MAGIC)
+         {
+            throw new IOException("Not a walk index");
+         }
+
+         int version = in.readInt();
+
+         if (version != INDEX_VERSION)
+         {
+            throw new IOException(String.format(
+              "Unsupported walk index version %d", version));
+         }
+
+         String path = in.readUTF();
+
+         if (!startPath.equals(path))
+         {
+            throw new IOException(String.format(
+              "Walk index is for a different directory: %s", path));
+         }
+
+         int numListings = in.readInt();
+
+         for (int i = 0; i < numListings; i++)
+         {
+            String key = in.readUTF();
+            long lastModified = in.readLong();
+            int n = in.readInt();
+
+            if (n < 0 || n > maxEntries)
+            {
+               throw new IOException(String.format(
+                 "Invalid walk index entry count %d", n));
+            }
+
+            String[] names = new String[n];
+            byte[] flags = new byte[n];
+
+            for (int j = 0; j < n; j++)
+            {
+               flags[j] = in.readByte();
+               names[j] = in.readUTF();
+            }
+
+            oldListings.put(key, new Listing(lastModified, names, flags));
+         }
+
+         long checksum = checked.getChecksum().getValue();
+
+         if (in.readLong() != checksum)
+         {
+            throw new IOException("Walk index checksum mismatch");
+         }
+      }
+      finally
+      {
+         if (in != null)
+         {
+            in.close();
+         }
+      }
+
+      invoker.info(String.format("Loaded walk index %s (%d directories)",
+        file.toString(), oldListings.size()));
+   }
+
+   /**
+    * Saves the updated index. The index is written to a temporary
+    * file in the same directory, which is then moved to replace
+    * the old index. Directories modified close to the start of the
+    * walk are saved with an unknown modification time, as they may
+    * have been modified again within the file system's timestamp
+    * granularity, so they will be read again on the next walk.
+    */ 
+   public void save()
+   {
+      File dir = file.getParentFile();
+      File tmpFile = null;
+      DataOutputStream out = null;
+
+      try
+      {
+         tmpFile = File.createTempFile(file.getName()+".", ".tmp", dir);
+
+         CheckedOutputStream checked = new CheckedOutputStream(
+           new BufferedOutputStream(new FileOutputStream(tmpFile)), new CRC32());
+         out = new DataOutputStream(checked);
+
+         out.writeInt(INDEX_MAGIC);
+         out.writeInt(INDEX_VERSION);
+         out.writeUTF(startPath);
+         out.writeInt(newListings.size());
+
+         long racyTime = startTime - RACY_INTERVAL;
+
+         for (String key : newListings.keySet())
+         {
+            Listing listing = newListings.get(key);
+
+            out.writeUTF(key);
+            out.writeLong(listing.lastModified >= racyTime ? 
+              UNKNOWN_TIME : listing.lastModified);
+            out.writeInt(listing.names.length);
+
+            for (int i = 0; i < listing.names.length; i++)
+            {
+               out.writeByte(listing.flags[i]);
+               out.writeUTF(listing.names[i]);
+            }
+         }
+
+         out.flush();
+         out.writeLong(checked.getChecksum().getValue());
+
+         out.close();
+         out = null;
+
+         try
+         {
+            Files.move(tmpFile.toPath(), file.toPath(),
+              StandardCopyOption.ATOMIC_MOVE, 
+              StandardCopyOption.REPLACE_EXISTING);
+         }
+         catch (AtomicMoveNotSupportedException e)
+         {
+            Files.move(tmpFile.toPath(), file.toPath(),
+              StandardCopyOption.REPLACE_EXISTING);
+         }
+
+         tmpFile = null;
+
+         invoker.info(String.format(
+           "Saved walk index %s (%d directories, %d reused)",
+           file.toString(), newListings.size(), reused));
+      }
+      catch (IOException e)
+      {
+         invoker.debug(String.format("Can't save walk index %s", 
+           file.toString()), e);
+      }
+      finally
+      {
+         if (out != null)
+         {
+            try
+            {
+               out.close();
+            }
+            catch (IOException e)
+            {
+            }
+         }
+
+         if (tmpFile != null)
+         {
+            tmpFile.delete();
+         }
+      }
+   }
+
+   /**
+    * The entries in a directory.
+    */ 
+   public static class Listing
+   {
+      Listing(long lastModified, String[] names, byte[] flags)
+      {
+         this.lastModified = lastModified;
+         this.names = names;
+         this.flags = flags;
+      }
+
+      public int size()
+      {
+         return names.length;
+      }
+
+      public String getName(int i)
+      {
+         return names[i];
+      }
+
+      public boolean isDirectory(int i)
+      {
+         return (flags[i] & FLAG_DIRECTORY) != 0;
+      }
+
+      public boolean isSymbolicLink(int i)
+      {
+         return (flags[i] & FLAG_SYMBOLIC_LINK) != 0;
+      }
+
+      public boolean isHidden(int i)
+      {
+         return (flags[i] & FLAG_HIDDEN) != 0;
+      }
+
+      long lastModified;
+      String[] names;
+      byte[] flags;
+   }
+
+   /**
+    * Gets the flags for an entry.
+    * @param entry the entry's attributes
+    * @return the flags to store in a listing
+    */ 
+   public static byte getFlags(FileAccessModel.Entry entry)
+   {
+      int flags = 0;
+
+      if (entry.isDirectory())
+      {
+         flags |= FLAG_DIRECTORY;
+      }
+
+      if (entry.isSymbolicLink())
+      {
+         flags |= FLAG_SYMBOLIC_LINK;
+      }
+
+      if (entry.isHidden())
+      {
+         flags |= FLAG_HIDDEN;
+      }
+
+      return (byte)flags;
+   }
+
+   private static final byte FLAG_DIRECTORY=1;
+   private static final byte FLAG_SYMBOLIC_LINK=2;
+   private static final byte FLAG_HIDDEN=4;
+
+   private static final String INDEX_PREFIX="texosquery-walk-";
+   private static final String INDEX_SUFFIX=".idx";
+
+   // "TXQW"
+   private static final int INDEX_MAGIC=0x54585157;
+   private static final int INDEX_VERSION=1;
+
+   private static final long UNKNOWN_TIME=Long.MIN_VALUE;
+
+   // Some file systems only store the modification time to the
+   // nearest 2 seconds.
+   private static final long RACY_INTERVAL=2000L;
+
+   private TeXOSQuery invoker;
+   private File file;
+   private String startPath;
+   private long startTime;
+   private int reused=0;
+
+   private HashMap<String,Listing> oldListings = new HashMap<String,Listing>();
+   private HashMap<String,Listing> newListings = new HashMap<String,Listing>();
+}
@@ -0,0 +1,504 @@
+/*
+    Copyright (C) 2016 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This work may be distributed and/or modified under the
+    conditions of the LaTeX Project Public License, either version 1.3
+    of this license or (at your option) any later version.
+    The latest version of this license is in
+    http://www.latex-project.org/lppl.txt
+    and version 1.3 or later is part of all distributions of LaTeX
+    version 2005/12/01 or later.
+*/
+package com.dickimawbooks.texosquery;
+
+/**
+ * Compact store for the files found by a walk. Rather than keeping
+ * a path object or a relative path string for each file, each
+ * directory is recorded as the index of its parent directory and
+ * its name, and each file is recorded as the index of its
+ * directory and the position of its name in a shared byte arena.
+ * (Each character of the name takes one byte if it's ASCII and
+ * two or three bytes otherwise.) The modification dates and sizes,
+ * if needed for sorting, are kept in primitive columns. The
+ * relative path strings are only created when the list is written,
+ * so a walk over a very large tree doesn't need several objects
+ * for every file or repeated copies of the directory prefixes.
+ *
+ * The columns and the arena are stored in fixed-size pages, which
+ * are added as required. This means that nothing needs to be
+ * copied as the store grows and it doesn't need a single large
+ * block of memory.
+ * This class needs to be Java 1.5 compatible.
+ * @since 1.8
+ */
+public class FileWalkResults
+{
+   /**
+    * Creates an empty store. The starting directory is
+    * automatically added with the index ROOT.
+    * @param separatorChar the character used to separate the
+    * elements of a relative path
+    * @param keepAttributes true if the modification date and size
+    * of each file should be kept
+    */ 
+   public FileWalkResults(char separatorChar, boolean keepAttributes)
+   {
+      this.separatorChar = separatorChar;
+
+      if (keepAttributes)
+      {
+         dates = new long[INITIAL_PAGES][];
+         sizes = new long[INITIAL_PAGES][];
+      }
+
+      addDirectory(-1, "");
+   }
+
+   /**
+    * Adds a directory.
+    * @param parent the index of the parent directory
+    * @param name the directory's name
+    * @return the index of the new directory
+    */ 
+   public int addDirectory(int parent, String name)
+   {
+      if (numDirectories == dirParents.length)
+      {
+         int[] parents = new int[2*dirParents.length];
+         System.arraycopy(dirParents, 0, parents, 0, numDirectories);
+         dirParents = parents;
+
+         String[] names = new String[dirParents.length];
+         System.arraycopy(dirNames, 0, names, 0, numDirectories);
+         dirNames = names;
+      }
+
+      dirParents[numDirectories] = parent;
+      dirNames[numDirectories] = name;
+
+      return numDirectories++;
+   }
+
+   /**
+    * Adds a file.
+    * @param directory the index of the directory containing the
+    * file
+    * @param name the file's name
+    * @param lastModified the file's modification date
+    * @param size the file's size
+    */ 
+   public void addFile(int directory, String name, long lastModified,
+     long size)
+   {
+      int page = numFiles >>> PAGE_BITS;
+      int idx = numFiles & PAGE_MASK;
+
+      if (idx == 0)
+      {
+         addPage(page);
+      }
+
+      int length = name.length();
+
+      // Each character takes at most three bytes. Names don't
+      // span chunks.
+
+      if (arenaChunk < 0 || arenaUsed + 3*length > CHUNK_SIZE)
+      {
+         addChunk(3*length);
+      }
+
+      fileDirectories[page][idx] = directory;
+      nameOffsets[page][idx] = (arenaChunk << CHUNK_BITS) | arenaUsed;
+
+      if (dates != null)
+      {
+         dates[page][idx] = lastModified;
+         sizes[page][idx] = size;
+      }
+
+      byte[] chunk = arena[arenaChunk];
+
+      for (int i = 0; i < length; i++)
+      {
+         char c = name.charAt(i);
+
+         if (c < 0x80)
+         {
+            chunk[arenaUsed++] = (byte)c;
+         }
+         else if (c < 0x800)
+         {
+            chunk[arenaUsed++] = (byte)(0xC0 | (c >> 6));
+            chunk[arenaUsed++] = (byte)(0x80 | (c & 0x3F));
+         }
+         else
+         {
+            chunk[arenaUsed++] = (byte)(0xE0 | (c >> 12));
+            chunk[arenaUsed++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+            chunk[arenaUsed++] = (byte)(0x80 | (c & 0x3F));
+         }
+      }
+
+      chunkLengths[arenaChunk] = arenaUsed;
+
+      numFiles++;
+   }
+
+   /**
+    * Adds a page to each of the file columns.
+    */ 
+   private void addPage(int page)
+   {
+      if (page == fileDirectories.length)
+      {
+         fileDirectories = growPages(fileDirectories);
+         nameOffsets = growPages(nameOffsets);
+
+         if (dates != null)
+         {
+            dates = growPages(dates);
+            sizes = growPages(sizes);
+         }
+      }
+
+      fileDirectories[page] = new int[PAGE_SIZE];
+      nameOffsets[page] = new int[PAGE_SIZE];
+
+      if (dates != null)
+      {
+         dates[page] = new long[PAGE_SIZE];
+         sizes[page] = new long[PAGE_SIZE];
+      }
+   }
+
+   /**
+    * Starts a new arena chunk with room for at least the given
+    * number of bytes.
+    */ 
+   private void addChunk(int minLength)
+   {
+      if (minLength > CHUNK_SIZE)
+      {
+         throw new IllegalArgumentException("File name too long");
+      }
+
+      arenaChunk++;
+
+      if (arenaChunk == arena.length)
+      {
+         byte[][] chunks = new byte[2*arena.length][];
+         System.arraycopy(arena, 0, chunks, 0, arena.length);
+         arena = chunks;
+
+         int[] lengths = new int[arena.length];
+         System.arraycopy(chunkLengths, 0, lengths, 0, arenaChunk);
+         chunkLengths = lengths;
+      }
+
+      arena[arenaChunk] = new byte[CHUNK_SIZE];
+      arenaUsed = 0;
+   }
+
+   /**
+    * Gets the number of files.
+    * @return the number of files
+    */ 
+   public int size()
+   {
+      return numFiles;
+   }
+
+   /**
+    * Gets the number of directories, including the starting
+    * directory.
+    * @return the number of directories
+    */ 
+   public int getDirectoryCount()
+   {
+      return numDirectories;
+   }
+
+   /**
+    * Gets the parent of a directory. Directories are added in walk
+    * order, so the parent's index is always less than the
+    * directory's index.
+    * @param directory the index of the directory
+    * @return the index of the parent (-1 for the starting
+    * directory)
+    */ 
+   public int getDirectoryParent(int directory)
+   {
+      return dirParents[directory];
+   }
+
+   /**
+    * Gets the name of a directory.
+    * @param directory the index of the directory
+    * @return the name (empty for the starting directory)
+    */ 
+   public String getDirectoryName(int directory)
+   {
+      return dirNames[directory];
+   }
+
+   /**
+    * Gets the directory containing a file.
+    * @param index the index of the file
+    * @return the index of the directory
+    */ 
+   public int getFileDirectory(int index)
+   {
+      return fileDirectories[index >>> PAGE_BITS][index & PAGE_MASK];
+   }
+
+   /**
+    * Gets the path of a directory relative to the starting
+    * directory. The paths are cached, so each directory's path is
+    * only created once.
+    * @param directory the index of the directory
+    * @return the relative path (empty for the starting directory)
+    */ 
+   public String getDirectoryPath(int directory)
+   {
+      if (dirPaths == null || dirPaths.length < numDirectories)
+      {
+         String[] array = new String[dirParents.length];
+
+         if (dirPaths == null)
+         {
+            array[ROOT] = "";
+         }
+         else
+         {
+            System.arraycopy(dirPaths, 0, array, 0, dirPaths.length);
+         }
+
+         dirPaths = array;
+      }
+
+      if (dirPaths[directory] != null)
+      {
+         return dirPaths[directory];
+      }
+
+      // Find the nearest ancestor whose path is known and then
+      // work back down (without recursion, as the tree may be
+      // very deep).
+
+      int top = directory;
+      int depth = 0;
+
+      while (dirPaths[top] == null)
+      {
+         top = dirParents[top];
+         depth++;
+      }
+
+      int[] chain = new int[depth];
+
+      for (int d = directory, i = depth-1; i >= 0; d = dirParents[d], i--)
+      {
+         chain[i] = d;
+      }
+
+      for (int i = 0; i < depth; i++)
+      {
+         int d = chain[i];
+         dirPaths[d] = join(dirPaths[dirParents[d]], dirNames[d]);
+      }
+
+      return dirPaths[directory];
+   }
+
+   /**
+    * Gets the name of a file from the arena.
+    * @param index the index of the file
+    * @return the name
+    */ 
+   public String getFileName(int index)
+   {
+      int offset = nameOffsets[index >>> PAGE_BITS][index & PAGE_MASK];
+      int chunkIndex = offset >>> CHUNK_BITS;
+      int start = offset & CHUNK_MASK;
+      int end = chunkLengths[chunkIndex];
+
+      // The name ends where the next one starts if the next one is
+      // in the same chunk.
+
+      if (index+1 < numFiles)
+      {
+         int next = index+1;
+         int nextOffset = nameOffsets[next >>> PAGE_BITS][next & PAGE_MASK];
+
+         if ((nextOffset >>> CHUNK_BITS) == chunkIndex)
+         {
+            end = nextOffset & CHUNK_MASK;
+         }
+      }
+
+      byte[] chunk = arena[chunkIndex];
+      char[] chars = new char[end-start];
+      int n = 0;
+
+      for (int i = start; i < end; i++)
+      {
+         int b = chunk[i] & 0xFF;
+
+         if (b < 0x80)
+         {
+            chars[n++] = (char)b;
+         }
+         else if (b < 0xE0)
+         {
+            chars[n++] = (char)(((b & 0x1F) << 6) | (chunk[++i] & 0x3F));
+         }
+         else
+         {
+            int c = ((b & 0x0F) << 12) | ((chunk[++i] & 0x3F) << 6);
+            chars[n++] = (char)(c | (chunk[++i] & 0x3F));
+         }
+      }
+
+      return new String(chars, 0, n);
+   }
+
+   /**
+    * Gets the path of a file relative to the starting directory.
+    * @param index the index of the file
+    * @return the relative path
+    */ 
+   public String getPath(int index)
+   {
+      return join(getDirectoryPath(
+        fileDirectories[index >>> PAGE_BITS][index & PAGE_MASK]), 
+        getFileName(index));
+   }
+
+   /**
+    * Gets the paths of all the files relative to the starting
+    * directory, for sorting by name. Each part of the arena is
+    * released as soon as its names have been converted, so the
+    * paths and the arena aren't both held in full. Afterwards,
+    * only the modification dates and sizes may be accessed.
+    * @return the relative paths in the order the files were added
+    */ 
+   public String[] takePaths()
+   {
+      String[] paths = new String[numFiles];
+
+      for (int i = 0; i < numFiles; i++)
+      {
+         paths[i] = getPath(i);
+
+         int page = i >>> PAGE_BITS;
+         int chunk = nameOffsets[page][i & PAGE_MASK] >>> CHUNK_BITS;
+
+         if (i+1 == numFiles || (nameOffsets[(i+1) >>> PAGE_BITS]
+               [(i+1) & PAGE_MASK] >>> CHUNK_BITS) != chunk)
+         {
+            arena[chunk] = null;
+         }
+
+         // The next name's offset is needed to find where this
+         // name ends, so a page can only be released once the
+         // next page has been reached.
+
+         if (page > 0 && (i & PAGE_MASK) == 0)
+         {
+            fileDirectories[page-1] = null;
+            nameOffsets[page-1] = null;
+         }
+      }
+
+      fileDirectories = null;
+      nameOffsets = null;
+      arena = null;
+
+      return paths;
+   }
+
+   /**
+    * Gets the modification date of a file. This requires the
+    * attributes to have been kept.
+    * @param index the index of the file
+    * @return the modification date
+    */ 
+   public long getLastModified(int index)
+   {
+      return dates[index >>> PAGE_BITS][index & PAGE_MASK];
+   }
+
+   /**
+    * Gets the size of a file. This requires the attributes to
+    * have been kept.
+    * @param index the index of the file
+    * @return the size
+    */ 
+   public long getSize(int index)
+   {
+      return sizes[index >>> PAGE_BITS][index & PAGE_MASK];
+   }
+
+   private String join(String path, String name)
+   {
+      if (path.length() == 0)
+      {
+         return name;
+      }
+
+      StringBuilder builder = new StringBuilder(path.length()+1+name.length());
+      builder.append(path);
+      builder.append(separatorChar);
+      builder.append(name);
+
+      return builder.toString();
+   }
+
+   private static int[][] growPages(int[][] pages)
+   {
+      int[][] newPages = new int[2*pages.length][];
+      System.arraycopy(pages, 0, newPages, 0, pages.length);
+      return newPages;
+   }
+
+   private static long[][] growPages(long[][] pages)
+   {
+      long[][] newPages = new long[2*pages.length][];
+      System.arraycopy(pages, 0, newPages, 0, pages.length);
+      return newPages;
+   }
+
+   /**
+    * The index of the starting directory.
+    */ 
+   public static final int ROOT=0;
+
+   private static final int PAGE_BITS=12;
+   private static final int PAGE_SIZE=1 << PAGE_BITS;
+   private static final int PAGE_MASK=PAGE_SIZE-1;
+
+   private static final int CHUNK_BITS=16;
+   private static final int CHUNK_SIZE=1 << CHUNK_BITS;
+   private static final int CHUNK_MASK=CHUNK_SIZE-1;
+
+   private static final int INITIAL_PAGES=16;
+
+   private char separatorChar;
+
+   private int numDirectories=0;
+   private int[] dirParents = new int[PAGE_SIZE];
+   private String[] dirNames = new String[PAGE_SIZE];
+   private String[] dirPaths;
+
+   private int numFiles=0;
+   private int[][] fileDirectories = new int[INITIAL_PAGES][];
+   private int[][] nameOffsets = new int[INITIAL_PAGES][];
+   private long[][] dates, sizes;
+
+   private byte[][] arena = new byte[INITIAL_PAGES][];
+   private int[] chunkLengths = new int[INITIAL_PAGES];
+   private int arenaChunk=-1;
+   private int arenaUsed=0;
+}
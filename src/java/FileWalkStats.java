@@ -0,0 +1,209 @@
+/*
+    Copyright (C) 2016 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This work may be distributed and/or modified under the
+    conditions of the LaTeX Project Public License, either version 1.3
+    of this license or (at your option) any later version.
+    The latest version of this license is in
+    http://www.latex-project.org/lppl.txt
+    and version 1.3 or later is part of all distributions of LaTeX
+    version 2005/12/01 or later.
+*/
+package com.dickimawbooks.texosquery;
+
+import java.util.Calendar;
+import java.util.TreeMap;
+
+/**
+ * Aggregate statistics for the files found by a walk. Only the
+ * totals (and optionally the totals for each file extension) are
+ * kept, so the memory used doesn't depend on the number of files.
+ * Statistics gathered by separate tasks may be merged, as the
+ * result doesn't depend on the order in which files are added.
+ * This class needs to be Java 1.5 compatible.
+ * @since 1.8
+ */
+public class FileWalkStats
+{
+   /**
+    * Creates new empty statistics.
+    * @param histogram true if the totals for each file extension
+    * should also be kept
+    */ 
+   public FileWalkStats(boolean histogram)
+   {
+      if (histogram)
+      {
+         extensions = new TreeMap<String,long[]>();
+      }
+   }
+
+   /**
+    * Creates new empty statistics with the same settings as this
+    * object.
+    * @return new statistics
+    */ 
+   public FileWalkStats createEmpty()
+   {
+      return new FileWalkStats(extensions != null);
+   }
+
+   /**
+    * Adds a file.
+    * @param name the file's basename
+    * @param lastModified the file's modification time
+    * @param size the file's size in bytes
+    */ 
+   public void add(String name, long lastModified, long size)
+   {
+      if (count == 0)
+      {
+         newest = lastModified;
+         oldest = lastModified;
+      }
+      else if (lastModified > newest)
+      {
+         newest = lastModified;
+      }
+      else if (lastModified < oldest)
+      {
+         oldest = lastModified;
+      }
+
+      count++;
+      totalSize += size;
+
+      if (extensions != null)
+      {
+         int idx = name.lastIndexOf('.');
+
+         // A leading dot doesn't start an extension. (Hidden files
+         // aren't included in walks anyway.)
+         String ext = (idx > 0 ? name.substring(idx+1) : "");
+
+         long[] totals = extensions.get(ext);
+
+         if (totals == null)
+         {
+            totals = new long[2];
+            extensions.put(ext, totals);
+         }
+
+         totals[0]++;
+         totals[1] += size;
+      }
+   }
+
+   /**
+    * Adds the statistics gathered by another object.
+    * @param other the other statistics
+    */ 
+   public void merge(FileWalkStats other)
+   {
+      if (other.count == 0)
+      {
+         return;
+      }
+
+      if (count == 0)
+      {
+         newest = other.newest;
+         oldest = other.oldest;
+      }
+      else
+      {
+         newest = Math.max(newest, other.newest);
+         oldest = Math.min(oldest, other.oldest);
+      }
+
+      count += other.count;
+      totalSize += other.totalSize;
+
+      if (extensions != null && other.extensions != null)
+      {
+         for (String ext : other.extensions.keySet())
+         {
+            long[] otherTotals = other.extensions.get(ext);
+            long[] totals = extensions.get(ext);
+
+            if (totals == null)
+            {
+               extensions.put(ext, 
+                 new long[] {otherTotals[0], otherTotals[1]});
+            }
+            else
+            {
+               totals[0] += otherTotals[0];
+               totals[1] += otherTotals[1];
+            }
+         }
+      }
+   }
+
+   public long getCount()
+   {
+      return count;
+   }
+
+   public long getTotalSize()
+   {
+      return totalSize;
+   }
+
+   /**
+    * Formats the statistics in the form
+    * {count}{total size}{newest}{oldest} where newest and oldest
+    * are the modification times in PDF format (empty if there are
+    * no files). If the extension totals were requested, this is
+    * followed by a group containing {{ext}{count}{size}} for each
+    * extension, ordered by extension.
+    * @param invoker the application
+    * @return the formatted statistics
+    */ 
+   public String format(TeXOSQuery invoker)
+   {
+      StringBuilder builder = new StringBuilder();
+
+      builder.append(String.format("{%d}{%d}", count, totalSize));
+
+      if (count == 0)
+      {
+         builder.append("{}{}");
+      }
+      else
+      {
+         builder.append(String.format("{%s}{%s}", 
+           formatDate(invoker, newest), formatDate(invoker, oldest)));
+      }
+
+      if (extensions != null)
+      {
+         builder.append('{');
+
+         for (String ext : extensions.keySet())
+         {
+            long[] totals = extensions.get(ext);
+
+            builder.append(String.format("{{%s}{%d}{%d}}",
+              invoker.escapeFileName(ext), totals[0], totals[1]));
+         }
+
+         builder.append('}');
+      }
+
+      return builder.toString();
+   }
+
+   private static String formatDate(TeXOSQuery invoker, long millisecs)
+   {
+      Calendar calendar = Calendar.getInstance();
+      calendar.setTimeInMillis(millisecs);
+
+      return invoker.pdfDate(calendar);
+   }
+
+   private long count=0, totalSize=0, newest=0, oldest=0;
+
+   private TreeMap<String,long[]> extensions;
+}
@@ -0,0 +1,312 @@
+/*
+    Copyright (C) 2016 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This work may be distributed and/or modified under the
+    conditions of the LaTeX Project Public License, either version 1.3
+    of this license or (at your option) any later version.
+    The latest version of this license is in
+    http://www.latex-project.org/lppl.txt
+    and version 1.3 or later is part of all distributions of LaTeX
+    version 2005/12/01 or later.
+*/
+package com.dickimawbooks.texosquery;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Files;
+import java.nio.file.DirectoryStream;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Parallel file walk. Each directory is read by a separate fork/join
+ * task, which applies the same rules as FileWalkVisitor's
+ * sequential walk. Each task keeps its
+ * matches and its sub-directory tasks in the order the
+ * directory stream returned them, so when all the tasks have
+ * completed the results can be passed to the visitor in exactly
+ * the order that the sequential walk would have visited them.
+ * If the deadline passes, or if any directory can't be read, each
+ * task stops reading its directory, so the results only include
+ * the entries found so far.
+ * This relies on the java.nio.file library and the fork/join
+ * framework, which were introduced to Java 7, so this isn't
+ * available for the JRE5 version.
+ * @since 1.8
+ */
+public class FileWalkTask extends RecursiveAction
+{
+   private FileWalkTask(FileWalkVisitor visitor, Path dir,
+     AtomicReference<IOException> failure)
+   {
+      this.visitor = visitor;
+      this.dir = dir;
+      this.failure = failure;
+
+      FileWalkStats visitorStats = visitor.getStatistics();
+
+      if (visitorStats != null)
+      {
+         stats = visitorStats.createEmpty();
+      }
+   }
+
+   /**
+    * Reads this task's directory. Sub-directories that may be
+    * descended are forked as new tasks. If a directory can't be
+    * read, the failure is recorded for the whole walk and the
+    * other tasks stop reading, as for the deadline, so the entries
+    * found so far are kept.
+    */ 
+   @Override
+   protected void compute()
+   {
+      ArrayList<FileWalkTask> subtasks = new ArrayList<FileWalkTask>();
+
+      DirectoryStream<Path> stream = null;
+
+      try
+      {
+         if (isAbandoned())
+         {
+            return;
+         }
+
+         stream = Files.newDirectoryStream(dir);
+
+         for (Path path : stream)
+         {
+            if (isAbandoned())
+            {
+               break;
+            }
+
+            FileAccessModel.Entry entry;
+
+            // Skip entries that have been removed since the
+            // directory listing was read.
+
+            try
+            {
+               entry = visitor.readEntry(path);
+            }
+            catch (NoSuchFileException e)
+            {
+               continue;
+            }
+
+            if (entry.isDirectory())
+            {
+               if (visitor.acceptDirectory(path, entry))
+               {
+                  FileWalkTask task = new FileWalkTask(visitor, path,
+                    failure);
+
+                  if (stats == null)
+                  {
+                     entries.add(task);
+                  }
+
+                  subtasks.add(task);
+                  task.fork();
+               }
+            }
+            else if (visitor.acceptFile(path, entry))
+            {
+               if (stats == null)
+               {
+                  entries.add(new Match(FileWalkVisitor.getName(path), entry));
+               }
+               else
+               {
+                  stats.add(FileWalkVisitor.getName(path),
+                    entry.lastModified(), entry.size());
+               }
+            }
+         }
+      }
+      catch (DirectoryIteratorException e)
+      {
+         failure.compareAndSet(null, e.getCause());
+      }
+      catch (NoSuchFileException e)
+      {
+         // The directory has been removed since it was found.
+      }
+      catch (IOException e)
+      {
+         failure.compareAndSet(null, e);
+      }
+      finally
+      {
+         if (stream != null)
+         {
+            try
+            {
+               stream.close();
+            }
+            catch (IOException e)
+            {
+            }
+         }
+      }
+
+      for (int i = subtasks.size()-1; i >= 0; i--)
+      {
+         FileWalkTask task = subtasks.get(i);
+         task.join();
+
+         if (stats != null)
+         {
+            // The order doesn't matter for statistics, so they can
+            // be merged as soon as the sub-directory is done.
+            stats.merge(task.stats);
+            task.stats = null;
+         }
+      }
+   }
+
+   /**
+    * Determines whether this task should stop reading its
+    * directory, because the deadline has passed or another task
+    * has failed.
+    */ 
+   private boolean isAbandoned()
+   {
+      return failure.get() != null || visitor.isDeadlineExpired();
+   }
+
+   /**
+    * Passes the matches to the visitor in walk order. An explicit
+    * stack is used rather than recursion, so deep trees don't
+    * overflow the call stack.
+    */ 
+   private void addMatches() throws IOException
+   {
+      ArrayList<FileWalkTask> tasks = new ArrayList<FileWalkTask>();
+      ArrayList<Integer> positions = new ArrayList<Integer>();
+      ArrayList<Integer> directories = new ArrayList<Integer>();
+
+      tasks.add(this);
+      positions.add(Integer.valueOf(0));
+      directories.add(Integer.valueOf(FileWalkResults.ROOT));
+
+      while (!tasks.isEmpty())
+      {
+         int top = tasks.size()-1;
+         FileWalkTask task = tasks.get(top);
+         int i = positions.get(top).intValue();
+
+         if (i == task.entries.size())
+         {
+            tasks.remove(top);
+            positions.remove(top);
+            directories.remove(top);
+            task.entries = null;
+            continue;
+         }
+
+         positions.set(top, Integer.valueOf(i+1));
+
+         Object entry = task.entries.get(i);
+
+         int directory = directories.get(top).intValue();
+
+         if (entry instanceof FileWalkTask)
+         {
+            FileWalkTask subtask = (FileWalkTask)entry;
+
+            tasks.add(subtask);
+            positions.add(Integer.valueOf(0));
+            directories.add(Integer.valueOf(visitor.addDirectory(directory,
+              FileWalkVisitor.getName(subtask.dir))));
+         }
+         else
+         {
+            Match match = (Match)entry;
+            visitor.addFile(directory, match.name, match.lastModified, 
+              match.size);
+         }
+      }
+   }
+
+   /**
+    * Walks the tree starting from the given directory and passes
+    * the matching files to the visitor. The starting directory
+    * should already have been checked. If a directory can't be
+    * read, the matches found so far are still passed to the
+    * visitor before the exception is thrown, as for the sequential
+    * walk.
+    * @param visitor the visitor that determines which files and
+    * directories are accepted and collects the results
+    * @param start the starting directory
+    * @param numThreads the number of threads
+    * @throws IOException if a directory can't be read or if the
+    * results can't be written
+    */ 
+   public static void walk(FileWalkVisitor visitor, Path start, 
+     int numThreads)
+   throws IOException
+   {
+      AtomicReference<IOException> failure 
+        = new AtomicReference<IOException>();
+
+      FileWalkTask root = new FileWalkTask(visitor, start, failure);
+
+      ForkJoinPool pool = new ForkJoinPool(numThreads);
+
+      try
+      {
+         pool.invoke(root);
+      }
+      finally
+      {
+         pool.shutdown();
+      }
+
+      if (root.stats == null)
+      {
+         root.addMatches();
+      }
+      else
+      {
+         visitor.getStatistics().merge(root.stats);
+      }
+
+      IOException e = failure.get();
+
+      if (e != null)
+      {
+         throw e;
+      }
+   }
+
+   /**
+    * The name of a matching file together with the attributes that
+    * may be needed for sorting. (The directory is given by the task
+    * that found it.)
+    */ 
+   private static class Match
+   {
+      Match(String name, FileAccessModel.Entry entry)
+      {
+         this.name = name;
+         lastModified = entry.lastModified();
+         size = entry.size();
+      }
+
+      String name;
+      long lastModified, size;
+   }
+
+   private FileWalkVisitor visitor;
+   private Path dir;
+   private AtomicReference<IOException> failure;
+   private ArrayList<Object> entries = new ArrayList<Object>();
+   private FileWalkStats stats;
+}
@@ -17,142 +17,908 @@ import java.io.IOException;
 import java.io.FileNotFoundException;
 import java.nio.file.Path;
 import java.nio.file.Files;
-import java.nio.file.FileVisitResult;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.util.Vector;
-import java.util.Comparator;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
+import java.nio.file.DirectoryStream;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.InvalidPathException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Iterator;
+import java.nio.charset.Charset;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * This class is used during a file walk to determine if a directory
  * may be descended and to add allowed files to the list.
+ * As from version 1.8, the tree is walked by this class (or by
+ * FileWalkTask) rather than by Files.walkFileTree, so that each
+ * entry's attributes are only read once.
  * This relies on the java.nio.file library, which was introduced to
  * Java 7, so this isn't available for the JRE5 version.
  * @since 1.2
  */
-public class FileWalkVisitor extends SimpleFileVisitor<Path>
+public class FileWalkVisitor
 {
    /**
     * Creates a new visitor for a file walk. This will only allow
-    * regular, non-hidden, readable files, where the name matches
-    * the supplied regular expression. The found files are inserted
-    * into the results list according to the comparator.
+    * regular, non-hidden, readable files, where the name is
+    * accepted by the supplied matcher. If the default order is
+    * requested, each file is written to the output as soon as it's
+    * found. Otherwise the files are collected (together with any
+    * attributes needed for sorting) and are sorted and written
+    * when finish() is called.
+    * @param invoker the application
+    * @param matcher the file name filter
+    * @param start the starting directory (the listed paths are
+    * relative to this directory)
+    * @param sortType how to order the list
+    * @param out the output
+    * @param separator the separator to use in the list
+    * @since 1.8
     */ 
-   public FileWalkVisitor(TeXOSQuery invoker, String regex, 
-     Comparator<Path> comparator)
+   public FileWalkVisitor(TeXOSQuery invoker, FileNameMatcher matcher, 
+     Path start, FileSortSpec sortType, Appendable out, String separator)
    {
       this.invoker = invoker;
-      this.comparator = comparator;
-      pattern = Pattern.compile(regex);
-      result = new Vector<Path>();
+      this.matcher = matcher;
+      this.start = start;
+      this.sortType = sortType;
+      this.out = out;
+      this.separator = separator;
+
+      maxDepth = invoker.getWalkMaxDepth();
+      startDepth = start.getNameCount();
+
+      excludeDirs = new ArrayList<FileNameMatcher>();
+
+      for (String pattern : invoker.getWalkExcludeDirs())
+      {
+         addExclusion(pattern);
+      }
+
+      readIgnoreFile();
+
+      accessModel = FileAccessModel.create(invoker);
+      attributeFilter = invoker.getFileAttributeFilter();
+
+      results = new FileWalkResults(File.separatorChar,
+        sortType.usesFileAttributes());
+   }
+
+   /**
+    * Creates a new visitor for a file walk where the matcher is
+    * applied to each file's path relative to the starting
+    * directory rather than its name. Sub-directories that can't
+    * contain a match aren't descended.
+    * @param invoker the application
+    * @param pathMatcher the relative path filter
+    * @param start the starting directory (the listed paths are
+    * relative to this directory)
+    * @param sortType how to order the list
+    * @param out the output
+    * @param separator the separator to use in the list
+    * @since 1.8
+    */ 
+   public FileWalkVisitor(TeXOSQuery invoker, FilePathMatcher pathMatcher, 
+     Path start, FileSortSpec sortType, Appendable out, String separator)
+   {
+      this(invoker, (FileNameMatcher)null, start, sortType, out, separator);
+      this.pathMatcher = pathMatcher;
+   }
+
+   /**
+    * Creates a new visitor for a file walk that only gathers
+    * statistics. The files aren't listed, so no sorting is
+    * required and the memory used doesn't depend on the number of
+    * files. The statistics are written when finish() is called.
+    * @param invoker the application
+    * @param matcher the file name filter
+    * @param start the starting directory
+    * @param stats the statistics to update
+    * @param out the output
+    * @since 1.8
+    */ 
+   public FileWalkVisitor(TeXOSQuery invoker, FileNameMatcher matcher, 
+     Path start, FileWalkStats stats, Appendable out)
+   {
+      this(invoker, matcher, start, FileSortSpec.DEFAULT, out, "");
+      this.stats = stats;
+   }
+
+   /**
+    * Creates a new visitor for a long format file walk. Each file
+    * is listed as a group containing its relative path, size,
+    * modification date and type, using the attributes supplied by
+    * the walk.
+    * @param invoker the application
+    * @param matcher the file name filter
+    * @param start the starting directory (the listed paths are
+    * relative to this directory)
+    * @param sortType how to order the list
+    * @param out the output
+    * @since 1.8
+    */ 
+   public FileWalkVisitor(TeXOSQuery invoker, FileNameMatcher matcher, 
+     Path start, FileSortSpec sortType, Appendable out)
+   {
+      this(invoker, matcher, start, sortType, out, "");
+      dateFormatter = new FileDateFormatter(invoker);
+      results = new FileWalkResults(File.separatorChar, true);
+   }
+
+   /**
+    * Creates a new visitor for a file walk that only computes a
+    * digest of the files found. The files (with their attributes)
+    * are collected and the digest is written when finish() is
+    * called.
+    * @param invoker the application
+    * @param matcher the file name filter
+    * @param start the starting directory
+    * @param treeDigest the digest settings
+    * @param out the output
+    * @since 1.8
+    */ 
+   public FileWalkVisitor(TeXOSQuery invoker, FileNameMatcher matcher, 
+     Path start, FileTreeDigest treeDigest, Appendable out)
+   {
+      this(invoker, matcher, start, FileSortSpec.DEFAULT, out, "");
+      this.treeDigest = treeDigest;
+      results = new FileWalkResults(File.separatorChar, true);
    }
 
    /**
-    * Returns the list built during the file walk. 
-    * @return file list
+    * Adds a directory name pattern to the list of exclusions.
+    * Invalid patterns are ignored.
     */ 
-   public Vector<Path> getList()
+   private void addExclusion(String pattern)
    {
-      return result;
+      FileNameMatcher dirMatcher = invoker.createGlobMatcher(pattern);
+
+      if (dirMatcher != null)
+      {
+         excludeDirs.add(dirMatcher);
+      }
    }
 
    /**
-    * Invoked for a directory before entries in the directory are
-    * visited. 
+    * Reads the directory name patterns from the ignore file in the
+    * starting directory, if the file exists. Each line is a glob
+    * pattern. Blank lines and lines starting with <tt>#</tt> are
+    * ignored and a trailing slash is removed.
+    */ 
+   private void readIgnoreFile()
+   {
+      Path ignoreFile = start.resolve(TeXOSQuery.WALK_IGNORE_FILE);
+
+      if (!Files.isRegularFile(ignoreFile))
+      {
+         return;
+      }
+
+      List<String> lines;
+
+      try
+      {
+         lines = Files.readAllLines(ignoreFile, Charset.forName("UTF-8"));
+      }
+      catch (IOException e)
+      {
+         invoker.debug(String.format("Can't read %s", 
+           ignoreFile.toString()), e);
+         return;
+      }
+
+      for (String line : lines)
+      {
+         line = line.trim();
+
+         if ("".equals(line) || line.startsWith("#"))
+         {
+            continue;
+         }
+
+         if (line.endsWith("/") && line.length() > 1)
+         {
+            line = line.substring(0, line.length()-1);
+         }
+
+         addExclusion(line);
+      }
+   }
+
+   /**
+    * Determines whether or not the given directory may be
+    * descended. This may be called concurrently by FileWalkTask.
     *
     * Hidden directories are automatically skipped, even if
     * openin_any is <tt>a</tt>. Symbolic links and directories without 
-    * read access are also skipped.
+    * read access are also skipped, as are sub-directories beyond the
+    * maximum depth, that match an exclusion pattern or that can't
+    * contain a file matching the relative path filter.
     *
     * @param dir the directory about to be visited
-    * @param attrs the directory's basic attributes
-    * @return the visit result
+    * @param entry the directory's attributes
+    * @return true if the directory may be descended
+    * @since 1.8
     */ 
-   @Override
-   public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
-    throws IOException
+   boolean acceptDirectory(Path dir, FileAccessModel.Entry entry)
    {
-      if (Files.isHidden(dir) || !Files.isReadable(dir)
-        || Files.isSymbolicLink(dir))
+      if (!dir.equals(start))
+      {
+         // Check the depth and exclusions first, as they don't
+         // need to query the file system.
+
+         if (maxDepth > 0 && dir.getNameCount()-startDepth >= maxDepth)
+         {
+            invoker.info(String.format(
+              "Walk skipping directory (maximum depth): %s", dir.toString()));
+            return false;
+         }
+
+         if (pathMatcher != null 
+             && !pathMatcher.mayMatchWithin(getRelativePath(dir)))
+         {
+            invoker.info(String.format(
+              "Walk skipping directory (no possible match): %s",
+              dir.toString()));
+            return false;
+         }
+
+         if (!excludeDirs.isEmpty())
+         {
+            String name = dir.getName(dir.getNameCount()-1).toString();
+
+            for (FileNameMatcher dirMatcher : excludeDirs)
+            {
+               if (dirMatcher.matches(name))
+               {
+                  invoker.info(String.format(
+                    "Walk excluding directory: %s", dir.toString()));
+                  return false;
+               }
+            }
+         }
+      }
+
+      if (entry.isHidden() || entry.isSymbolicLink()
+        || !accessModel.isReadable(dir, entry))
       {
          invoker.info(String.format(
            "Walk skipping directory: %s", dir.toString()));
-         return FileVisitResult.SKIP_SUBTREE;
+         return false;
       }
 
       // We don't need to check openin_any here as the starting
       // directory of the walk should already have been checked to
       // ensure it's on the CWD path.
 
-      return FileVisitResult.CONTINUE;
+      return true;
    }
 
-
    /**
-    * Invoked for a file in a directory. 
+    * Determines whether or not the given file should be included
+    * in the results. This may be called concurrently by FileWalkTask.
     *
     * Hidden files are automatically skipped, regardless of
     * openin_any. Files that don't have read access are also skipped
     * and so are symbolic files.
     *
     * @param file a reference to the file
-    * @param attrs the file's basic attributes
-    * @return the visit result
+    * @param entry the file's attributes
+    * @return true if the file should be included
+    * @since 1.8
     */ 
-   @Override
-   public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
-    throws IOException
+   boolean acceptFile(Path file, FileAccessModel.Entry entry)
    {
-      if (Files.isHidden(file) || !Files.isReadable(file)
-          || attrs.isSymbolicLink())
+      if (entry.isHidden() || entry.isSymbolicLink()
+          || !accessModel.isReadable(file, entry))
       {
          invoker.info(String.format(
            "Walk skipping file: %s", file.toString()));
-         return FileVisitResult.CONTINUE;
+         return false;
+      }
+
+      // Does the file name (or path) match the supplied pattern?
+
+      String name = getName(file);
+
+      if (!matches(file, name) 
+          || invoker.isInternalFile(file.getParent().toFile(), name))
+      {
+         return false;
+      }
+
+      // The modification time and size limits (if any) are checked
+      // against the attributes already read for this entry.
+
+      return attributeFilter == null || attributeFilter.accept(
+        entry.lastModified(), entry.size(), false);
+   }
+
+   /**
+    * Tests a file against the name filter or, if the walk uses a
+    * relative path filter, the path filter.
+    * @param file the file
+    * @param name the file's name
+    * @return true if the file matches
+    */ 
+   private boolean matches(Path file, String name)
+   {
+      if (pathMatcher == null)
+      {
+         return matcher.matches(name);
+      }
+
+      return pathMatcher.matches(getRelativePath(file));
+   }
+
+   /**
+    * Gets the path relative to the starting directory with
+    * <tt>/</tt> as the separator, as used by the relative path
+    * filter.
+    * @param path the path
+    * @return the relative path
+    */ 
+   private String getRelativePath(Path path)
+   {
+      String relativePath = start.relativize(path).toString();
+
+      if (File.separatorChar != '/')
+      {
+         relativePath = relativePath.replace(File.separatorChar, '/');
+      }
+
+      return relativePath;
+   }
+
+   /**
+    * Reads the attributes required by the walk with a single call.
+    * This may be called concurrently by FileWalkTask.
+    * @param path the path
+    * @return the attributes (symbolic links aren't followed)
+    * @throws IOException if the attributes can't be read
+    * @since 1.8
+    */ 
+   FileAccessModel.Entry readEntry(Path path) throws IOException
+   {
+      return accessModel.read(path);
+   }
+
+   /**
+    * Walks the tree on the current thread. The order is the same
+    * as for Files.walkFileTree: each sub-directory is descended
+    * as soon as it's found in its parent's directory stream. An
+    * explicit stack of open directory streams is used rather than
+    * recursion, so deep trees don't overflow the call stack.
+    * Each entry only has its attributes read once. The walk stops
+    * early if the deadline passes.
+    * @throws IOException if a directory can't be read or if the
+    * results can't be written
+    */ 
+   private void walkTree() throws IOException
+   {
+      ArrayList<DirectoryStream<Path>> streams 
+        = new ArrayList<DirectoryStream<Path>>();
+      ArrayList<Iterator<Path>> iterators = new ArrayList<Iterator<Path>>();
+      ArrayList<Integer> directories = new ArrayList<Integer>();
+
+      try
+      {
+         DirectoryStream<Path> stream = Files.newDirectoryStream(start);
+         streams.add(stream);
+         iterators.add(stream.iterator());
+         directories.add(Integer.valueOf(FileWalkResults.ROOT));
+
+         while (!iterators.isEmpty() && !invoker.isDeadlineExpired())
+         {
+            int top = iterators.size()-1;
+            Iterator<Path> iterator = iterators.get(top);
+
+            if (!iterator.hasNext())
+            {
+               iterators.remove(top);
+               directories.remove(top);
+               streams.remove(top).close();
+               continue;
+            }
+
+            Path path = iterator.next();
+            FileAccessModel.Entry entry;
+
+            // Skip entries that have been removed since the
+            // directory listing was read.
+
+            try
+            {
+               entry = readEntry(path);
+            }
+            catch (NoSuchFileException e)
+            {
+               continue;
+            }
+
+            if (entry.isDirectory())
+            {
+               if (acceptDirectory(path, entry))
+               {
+                  try
+                  {
+                     stream = Files.newDirectoryStream(path);
+                  }
+                  catch (NoSuchFileException e)
+                  {
+                     continue;
+                  }
+
+                  streams.add(stream);
+                  iterators.add(stream.iterator());
+                  directories.add(Integer.valueOf(addDirectory(
+                    directories.get(top).intValue(), getName(path))));
+               }
+            }
+            else if (acceptFile(path, entry))
+            {
+               addFile(directories.get(top).intValue(), getName(path),
+                 entry.lastModified(), entry.size());
+            }
+         }
+      }
+      catch (DirectoryIteratorException e)
+      {
+         throw e.getCause();
+      }
+      finally
+      {
+         for (int i = streams.size()-1; i >= 0; i--)
+         {
+            try
+            {
+               streams.get(i).close();
+            }
+            catch (IOException e)
+            {
+            }
+         }
+      }
+   }
+
+   /**
+    * Walks the tree on the current thread using the given index.
+    * A directory is only read if its modification time doesn't
+    * match the index. Otherwise the entry names are taken from the
+    * index and only the sub-directories and the files that match the
+    * filter have their attributes read. The order is the same as
+    * for walkTree().
+    * @param index the walk index, which is updated with the
+    * directories visited by this walk
+    * @param startEntry the starting directory's attributes
+    * @throws IOException if a directory can't be read or if the
+    * results can't be written
+    * @since 1.8
+    */ 
+   private void walkTree(FileWalkIndex index, FileAccessModel.Entry startEntry)
+     throws IOException
+   {
+      ArrayList<IndexFrame> frames = new ArrayList<IndexFrame>();
+
+      frames.add(listDirectory(index, start, startEntry, 
+        FileWalkResults.ROOT));
+
+      while (!frames.isEmpty() && !invoker.isDeadlineExpired())
+      {
+         int top = frames.size()-1;
+         IndexFrame frame = frames.get(top);
+
+         if (frame.position == frame.listing.size())
+         {
+            frames.remove(top);
+            continue;
+         }
+
+         int i = frame.position++;
+
+         Path path = frame.paths[i];
+         FileAccessModel.Entry entry = null;
+
+         if (frame.entries != null)
+         {
+            entry = frame.entries[i];
+         }
+         else if (frame.listing.isHidden(i) || frame.listing.isSymbolicLink(i))
+         {
+            continue;
+         }
+         else if (!frame.listing.isDirectory(i) 
+               && !matches(path, frame.listing.getName(i)))
+         {
+            continue;
+         }
+         else
+         {
+            // The entry may have been removed since the directory
+            // was indexed if the directory was modified within the
+            // timestamp granularity.
+
+            try
+            {
+               entry = readEntry(path);
+            }
+            catch (NoSuchFileException e)
+            {
+               continue;
+            }
+         }
+
+         if (entry.isDirectory())
+         {
+            if (acceptDirectory(path, entry))
+            {
+               IndexFrame subframe;
+
+               try
+               {
+                  subframe = listDirectory(index, path, entry,
+                    addDirectory(frame.directory, frame.listing.getName(i)));
+               }
+               catch (NoSuchFileException e)
+               {
+                  continue;
+               }
+
+               frames.add(subframe);
+            }
+         }
+         else if (acceptFile(path, entry))
+         {
+            addFile(frame.directory, frame.listing.getName(i),
+              entry.lastModified(), entry.size());
+         }
+      }
+   }
+
+   /**
+    * Gets the listing for a directory from the index or, if the
+    * directory has been modified, by reading the directory.
+    */ 
+   private IndexFrame listDirectory(FileWalkIndex index, Path dir,
+     FileAccessModel.Entry dirEntry, int directory)
+    throws IOException
+   {
+      String key = start.relativize(dir).toString();
+
+      FileWalkIndex.Listing listing = index.get(key, dirEntry.lastModified());
+
+      if (listing != null)
+      {
+         Path[] paths = resolveAll(dir, listing);
+
+         if (paths != null)
+         {
+            return new IndexFrame(directory, listing, paths, null);
+         }
+      }
+
+      ArrayList<Path> paths = new ArrayList<Path>();
+      ArrayList<String> names = new ArrayList<String>();
+      ArrayList<FileAccessModel.Entry> entries 
+        = new ArrayList<FileAccessModel.Entry>();
+
+      // If a file name isn't valid in the current encoding, the
+      // name can't be converted back into the same path, so the
+      // directory can't be indexed.
+      boolean indexable = true;
+
+      DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
+
+      try
+      {
+         for (Path path : stream)
+         {
+            String name = path.getName(path.getNameCount()-1).toString();
+            FileAccessModel.Entry entry;
+
+            try
+            {
+               entry = readEntry(path);
+            }
+            catch (NoSuchFileException e)
+            {
+               // removed since the listing was read
+               continue;
+            }
+
+            if (indexable && !path.equals(resolve(dir, name)))
+            {
+               indexable = false;
+            }
+
+            paths.add(path);
+            names.add(name);
+            entries.add(entry);
+         }
+      }
+      catch (DirectoryIteratorException e)
+      {
+         throw e.getCause();
+      }
+      finally
+      {
+         stream.close();
+      }
+
+      int n = names.size();
+      byte[] flags = new byte[n];
+      FileAccessModel.Entry[] entryArray = new FileAccessModel.Entry[n];
+
+      for (int i = 0; i < n; i++)
+      {
+         entryArray[i] = entries.get(i);
+         flags[i] = FileWalkIndex.getFlags(entryArray[i]);
+      }
+
+      listing = new FileWalkIndex.Listing(dirEntry.lastModified(),
+         names.toArray(new String[n]), flags);
+
+      if (indexable)
+      {
+         index.put(key, listing);
+      }
+
+      return new IndexFrame(directory, listing, paths.toArray(new Path[n]),
+        entryArray);
+   }
+
+   /**
+    * Resolves a file name against a directory.
+    * @return the path or null if the name isn't valid
+    */ 
+   private static Path resolve(Path dir, String name)
+   {
+      try
+      {
+         return dir.resolve(name);
       }
+      catch (InvalidPathException e)
+      {
+         return null;
+      }
+   }
 
-      // Does the file name match the supplied pattern?
+   /**
+    * Resolves all the names in an indexed listing.
+    * @return the paths or null if any of the names isn't valid
+    */ 
+   private static Path[] resolveAll(Path dir, FileWalkIndex.Listing listing)
+   {
+      Path[] paths = new Path[listing.size()];
 
-      String name = file.getName(file.getNameCount()-1).toString();
+      for (int i = 0; i < paths.length; i++)
+      {
+         paths[i] = resolve(dir, listing.getName(i));
 
-      Matcher m = pattern.matcher(name);
+         if (paths[i] == null)
+         {
+            return null;
+         }
+      }
 
-      if (m.matches())
+      return paths;
+   }
+
+   /**
+    * A directory being walked by walkTree(FileWalkIndex,Entry).
+    * If the directory has just been read, the attributes of its
+    * entries are also available. The directory is identified by
+    * its index in the results.
+    */ 
+   private static class IndexFrame
+   {
+      IndexFrame(int directory, FileWalkIndex.Listing listing, Path[] paths,
+        FileAccessModel.Entry[] entries)
       {
-         addPath(file);
+         this.directory = directory;
+         this.listing = listing;
+         this.paths = paths;
+         this.entries = entries;
       }
 
-      return FileVisitResult.CONTINUE;
+      int directory;
+      FileWalkIndex.Listing listing;
+      Path[] paths;
+      FileAccessModel.Entry[] entries;
+      int position = 0;
+   }
+
+   /**
+    * Gets the name of the final element of a path.
+    * @param path the path
+    * @return the name
+    * @since 1.8
+    */ 
+   static String getName(Path path)
+   {
+      return path.getName(path.getNameCount()-1).toString();
+   }
+
+   /**
+    * Adds a directory that's about to be descended. Only the
+    * index of its parent and its name are kept. This must be
+    * called in walk order.
+    * @param parent the index of the parent directory
+    * @param name the directory's name
+    * @return the index of the directory
+    * @since 1.8
+    */ 
+   int addDirectory(int parent, String name)
+   {
+      return results.addDirectory(parent, name);
    }
 
    /**
-    * Inserts path into results list according to the comparator. 
-    * @param path the path to be added to the list
+    * Adds a file to the results. In the default order, the file's
+    * path relative to the starting directory is written straight
+    * away. Otherwise the file is appended to the compact,
+    * unsorted results. The attributes supplied by the walk are
+    * kept for sorting, so the file doesn't need to be queried
+    * again. This must be called in walk order.
+    * @param directory the index of the directory containing the
+    * file
+    * @param name the file's name
+    * @param lastModified the file's modification time
+    * @param size the file's size
+    * @since 1.8
     */ 
-   private void addPath(Path path)
+   void addFile(int directory, String name, long lastModified, long size)
+    throws IOException
    {
-      int n = result.size();
+      if (stats != null)
+      {
+         stats.add(name, lastModified, size);
+      }
+      else if (isStreamed())
+      {
+         String dirPath = results.getDirectoryPath(directory);
 
-      if (n == 0)
+         String path = (dirPath.length() == 0 ? name
+           : dirPath + File.separatorChar + name);
+
+         if (dateFormatter != null)
+         {
+            invoker.appendLongListEntry(out, dateFormatter, path, lastModified,
+              size, FileLongList.TYPE_FILE);
+         }
+         else
+         {
+            if (count > 0)
+            {
+               out.append(separator);
+            }
+
+            out.append(invoker.escapeFileName(path));
+         }
+      }
+      else
+      {
+         results.addFile(directory, name, lastModified, size);
+      }
+
+      count++;
+   }
+
+   /**
+    * Sorts and writes the collected files. This does nothing if
+    * the files have already been written. The relative paths are
+    * only created now. If the list is only sorted by date or
+    * size, the order is found without the paths, so each path is
+    * only created as it's written.
+    * @throws IOException if the output can't be written
+    * @since 1.8
+    */ 
+   public void finish() throws IOException
+   {
+      if (stats != null)
       {
-         result.add(path);
+         out.append(stats.format(invoker));
          return;
       }
 
+      if (treeDigest != null)
+      {
+         try
+         {
+            out.append(treeDigest.compute(invoker, results, start.toFile()));
+         }
+         catch (NoSuchAlgorithmException e)
+         {
+            throw new IOException(e.getMessage(), e);
+         }
+
+         return;
+      }
+
+      if (sortType.isDefault())
+      {
+         return;
+      }
+
+      int n = results.size();
+      String[] paths = null;
+      FileSortColumns columns;
+
+      if (sortType.usesNames())
+      {
+         paths = results.takePaths();
+         columns = new FileSortColumns(sortType, paths, File.separatorChar);
+      }
+      else
+      {
+         columns = new FileSortColumns(sortType, n);
+      }
+
+      if (columns.usesFileAttributes())
+      {
+         for (int i = 0; i < n; i++)
+         {
+            columns.setAttributes(i, results.getLastModified(i), 
+              results.getSize(i));
+         }
+      }
+
+      columns.setDeadline(invoker.getDeadline());
+
+      int[] order = columns.sort();
+
       for (int i = 0; i < n; i++)
       {
-         Path thisPath = result.get(i);
+         String path = (paths == null ? results.getPath(order[i]) 
+           : paths[order[i]]);
 
-         if (comparator.compare(thisPath, path) > 0)
+         if (dateFormatter != null)
          {
-            result.add(i, path);
-            return;
+            invoker.appendLongListEntry(out, dateFormatter, path,
+              results.getLastModified(order[i]), results.getSize(order[i]),
+              FileLongList.TYPE_FILE);
+            continue;
          }
+
+         if (i > 0)
+         {
+            out.append(separator);
+         }
+
+         out.append(invoker.escapeFileName(path));
       }
+   }
+
+   /**
+    * Gets the statistics if this visitor only gathers statistics.
+    * @return the statistics or null if the files are listed
+    * @since 1.8
+    */ 
+   public FileWalkStats getStatistics()
+   {
+      return stats;
+   }
+
+   /**
+    * Determines if the walk's time budget has run out. This may
+    * be called concurrently by FileWalkTask.
+    * @return true if the walk should stop
+    * @since 1.8
+    */ 
+   boolean isDeadlineExpired()
+   {
+      return invoker.isDeadlineExpired();
+   }
 
-      result.add(path);
+   /**
+    * Gets the number of files found.
+    * @return the number of files added to the list
+    * @since 1.8
+    */ 
+   public int getCount()
+   {
+      return count;
    }
 
    /**
@@ -163,7 +929,176 @@ public class FileWalkVisitor extends SimpleFileVisitor<Path>
         String separator,
         String regex, 
         File directory,
-        FileSortType sortType)
+        FileSortSpec sortType)
+   throws IOException
+   {
+      return walk(invoker, separator, 
+        FileNameMatcher.createRegexMatcher(invoker, regex), directory,
+        sortType);
+   }
+
+   /**
+    *Walks the path starting from the given directory, which must be the 
+    *current working directory or a descendent. Only files with a
+    *basename accepted by the matcher are included.
+    *@since 1.8
+    */ 
+   public static String walk(TeXOSQuery invoker, 
+        String separator,
+        FileNameMatcher matcher, 
+        File directory,
+        FileSortSpec sortType)
+   throws IOException
+   {
+      StringBuilder builder = new StringBuilder();
+
+      walk(invoker, builder, separator, matcher, directory, sortType);
+
+      return builder.toString();
+   }
+
+   /**
+    *Walks the path starting from the given directory, which must be the 
+    *current working directory or a descendent, and writes the list
+    *of files to the given output. Only files with a basename accepted
+    *by the matcher are included.
+    *@since 1.8
+    */ 
+   public static void walk(TeXOSQuery invoker, 
+        Appendable out,
+        String separator,
+        FileNameMatcher matcher, 
+        File directory,
+        FileSortSpec sortType)
+   throws IOException
+   {
+      directory = getStartDirectory(invoker, directory);
+
+      FileWalkVisitor visitor = new FileWalkVisitor(invoker, matcher,
+       directory.toPath(), sortType, out, separator);
+
+      visitor.run(directory);
+   }
+
+   /**
+    *Walks the path starting from the given directory, which must be the 
+    *current working directory or a descendent, and writes the list
+    *of files to the given output. Only files with a path relative to
+    *the starting directory accepted by the matcher are included.
+    *@since 1.8
+    */ 
+   public static void walk(TeXOSQuery invoker, 
+        Appendable out,
+        String separator,
+        FilePathMatcher pathMatcher, 
+        File directory,
+        FileSortSpec sortType)
+   throws IOException
+   {
+      directory = getStartDirectory(invoker, directory);
+
+      FileWalkVisitor visitor = new FileWalkVisitor(invoker, pathMatcher,
+       directory.toPath(), sortType, out, separator);
+
+      visitor.run(directory);
+   }
+
+   /**
+    *Walks the path starting from the given directory, which must be the 
+    *current working directory or a descendent, and writes a long
+    *format list of the files with a basename accepted by the matcher.
+    *@since 1.8
+    */ 
+   public static void walkLong(TeXOSQuery invoker, 
+        Appendable out,
+        FileNameMatcher matcher, 
+        File directory,
+        FileSortSpec sortType)
+   throws IOException
+   {
+      directory = getStartDirectory(invoker, directory);
+
+      FileWalkVisitor visitor = new FileWalkVisitor(invoker, matcher,
+       directory.toPath(), sortType, out);
+
+      visitor.run(directory);
+   }
+
+   /**
+    *Walks the path starting from the given directory, which must be the 
+    *current working directory or a descendent, and writes the
+    *statistics for the files with a basename accepted by the matcher.
+    *@since 1.8
+    */ 
+   public static void walkStatistics(TeXOSQuery invoker, 
+        Appendable out,
+        FileNameMatcher matcher, 
+        File directory,
+        boolean histogram)
+   throws IOException
+   {
+      directory = getStartDirectory(invoker, directory);
+
+      FileWalkVisitor visitor = new FileWalkVisitor(invoker, matcher,
+       directory.toPath(), new FileWalkStats(histogram), out);
+
+      visitor.run(directory);
+   }
+
+   /**
+    *Walks the path starting from the given directory, which must be the 
+    *current working directory or a descendent, and writes a single
+    *digest for the files with a basename accepted by the matcher.
+    *@since 1.8
+    */ 
+   public static void walkDigest(TeXOSQuery invoker, 
+        Appendable out,
+        FileNameMatcher matcher, 
+        File directory,
+        boolean content)
+   throws IOException
+   {
+      directory = getStartDirectory(invoker, directory);
+
+      FileWalkVisitor visitor = new FileWalkVisitor(invoker, matcher,
+       directory.toPath(), new FileTreeDigest(content), out);
+
+      visitor.run(directory);
+   }
+
+   /**
+    *Walks the path starting from the given directory, which must be the 
+    *current working directory or a descendent, and writes the
+    *directory structure as nested groups, where only files with a
+    *basename accepted by the matcher are included.
+    *@since 1.8
+    */ 
+   public static void writeTree(TeXOSQuery invoker, 
+        Appendable out,
+        FileNameMatcher matcher, 
+        File directory,
+        FileSortSpec sortType)
+   throws IOException
+   {
+      directory = getStartDirectory(invoker, directory);
+
+      Path start = directory.toPath();
+
+      FileWalkVisitor visitor = new FileWalkVisitor(invoker, matcher,
+       start, FileSortSpec.DEFAULT, out, "");
+
+      if (visitor.acceptDirectory(start, visitor.readEntry(start)))
+      {
+         new FileTreeWriter(invoker, visitor, sortType, out).write(start);
+      }
+   }
+
+   /**
+    * Checks that the starting directory exists and is in the
+    * current working directory's path.
+    * @return the canonical starting directory
+    */ 
+   private static File getStartDirectory(TeXOSQuery invoker, File directory)
    throws IOException
    {
       if (!directory.exists())
@@ -189,33 +1124,95 @@ public class FileWalkVisitor extends SimpleFileVisitor<Path>
            cwd.toString()));
       }
 
-      Path start = directory.toPath();
-
-      FileWalkVisitor visitor = new FileWalkVisitor(invoker, regex,
-       new FilePathSortComparator(sortType));
-
-      Files.walkFileTree(start, visitor);
+      return directory;
+   }
 
-      Vector<Path> result = visitor.getList();
+   /**
+    * Determines whether the matches are written as soon as they're
+    * found rather than being collected first. This is the case for
+    * the default order, unless the statistics or a digest are
+    * required.
+    * @return true if the matches are written in walk order
+    * @since 1.8
+    */ 
+   private boolean isStreamed()
+   {
+      return stats == null && treeDigest == null && sortType.isDefault();
+   }
 
-      StringBuilder builder = new StringBuilder();
+   /**
+    * Walks the tree from the starting directory and writes the
+    * results.
+    * @param directory the canonical starting directory
+    */ 
+   private void run(File directory) throws IOException
+   {
+      FileAccessModel.Entry startEntry = readEntry(start);
 
-      for (Path path : result)
+      if (acceptDirectory(start, startEntry))
       {
-         if (builder.length() > 0)
+         int numThreads = invoker.getMaxThreads();
+
+         try
          {
-            builder.append(separator);
+            if (invoker.isWalkIndexEnabled())
+            {
+               // The index is only used by the sequential walk, as
+               // the unchanged directories don't need to be read.
+
+               FileWalkIndex index = FileWalkIndex.load(invoker, directory);
+
+               walkTree(index, startEntry);
+
+               if (invoker.isDeadlineExpired())
+               {
+                  index.retainUnvisited();
+               }
+
+               index.save();
+            }
+            else if (numThreads > 1 && !isStreamed())
+            {
+               // The parallel walk only finishes once the whole tree
+               // has been read, so it isn't used when the matches can
+               // be written as soon as they're found.
+
+               FileWalkTask.walk(this, start, numThreads);
+            }
+            else
+            {
+               walkTree();
+            }
          }
+         catch (IOException e)
+         {
+            // Some of the results may already have been written,
+            // so finish with what's been found so far, as for the
+            // deadline, and mark the result as truncated.
 
-         builder.append(
-           invoker.escapeFileName(start.relativize(path).toString()));
+            invoker.debug(String.format("Walk stopped early: %s",
+              e.getMessage()), e);
+            invoker.setTruncated();
+         }
       }
 
-      return builder.toString();
+      finish();
    }
 
    private TeXOSQuery invoker;
-   private Pattern pattern;
-   private Vector<Path> result;
-   private Comparator<Path> comparator;
+   private FileNameMatcher matcher;
+   private FilePathMatcher pathMatcher;
+   private Path start;
+   private FileSortSpec sortType;
+   private Appendable out;
+   private String separator;
+   private ArrayList<FileNameMatcher> excludeDirs;
+   private int maxDepth, startDepth;
+   private FileAccessModel accessModel;
+   private FileAttributeFilter attributeFilter;
+   private FileWalkStats stats;
+   private FileTreeDigest treeDigest;
+   private FileDateFormatter dateFormatter;
+   private FileWalkResults results;
+   private int count=0;
 }
@@ -13,6 +13,7 @@
 package com.dickimawbooks.texosquery;
 
 import java.io.Serializable;
+import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ByteArrayOutputStream;
@@ -367,8 +368,43 @@ public abstract class QueryAction implements Serializable
       return action();
    }
 
+   /**
+    * Performs this action and writes the result to the given
+    * output.
+    * @param compatible the compatibility setting
+    * @param out the output
+    * @throws IOException if the output can't be written
+    * @since 1.8
+    */ 
+   public void doAction(int compatible, Appendable out) 
+     throws IllegalArgumentException,IOException
+   {
+      if (compatible < minCompatibility)
+      {
+         throw new IllegalArgumentException(String.format(
+         "'%s' option not available in compatibility mode %d",
+         invokedName, compatible));
+      }
+
+      writeAction(out);
+   }
+
    protected abstract String action();
 
+   /**
+    * Writes the result of this action. By default this just writes
+    * the result of action(). Actions that may produce a large
+    * result can override this method to write the result as it's
+    * obtained rather than building the whole result first.
+    * @param out the output
+    * @throws IOException if the output can't be written
+    * @since 1.8
+    */ 
+   protected void writeAction(Appendable out) throws IOException
+   {
+      out.append(action());
+   }
+
    /**
     * Make a copy of this object.
     */ 
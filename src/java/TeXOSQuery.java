@@ -18,7 +18,11 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.TimeZone;
 import java.util.Vector;
-import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.text.DecimalFormatSymbols;
@@ -28,7 +32,10 @@ import java.text.SimpleDateFormat;
 import java.text.DateFormatSymbols;
 import java.text.NumberFormat;
 import java.text.DecimalFormat;
+import java.lang.reflect.Method;
 import java.nio.charset.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * Application functions. These methods need to be Java version 1.5
@@ -1147,6 +1154,11 @@ public class TeXOSQuery implements Serializable
 
       for (int i = 0; i < zones.length; i++)
       {
+         if (isDeadlineExpired())
+         {
+            break;
+         }
+
          TimeZone tz = TimeZone.getTimeZone(zones[i]);
 
          builder.append(String.format("{{%s}{%s}{%s}{%s}{%s}}",
@@ -1265,6 +1277,194 @@ public class TeXOSQuery implements Serializable
       return "";
    }
 
+   /**
+    * Gets the maximum number of threads that may be used for walks
+    * and other concurrent file operations.
+    * @return the value of the --threads option or the number of
+    * available processors if not set
+    * @since 1.8
+    */ 
+   public int getMaxThreads()
+   {
+      return maxThreads > 0 ? maxThreads
+        : Runtime.getRuntime().availableProcessors();
+   }
+
+   /**
+    * Gets the maximum depth for walks.
+    * @return the maximum depth or 0 if there's no limit
+    * @since 1.8
+    */ 
+   public int getWalkMaxDepth()
+   {
+      return walkMaxDepth;
+   }
+
+   /**
+    * Gets the glob patterns identifying sub-directories that walks
+    * should skip. This doesn't include the patterns listed in
+    * the starting directory's ignore file.
+    * @return the list of patterns (may be empty)
+    * @since 1.8
+    */ 
+   public Vector<String> getWalkExcludeDirs()
+   {
+      return walkExcludeDirs;
+   }
+
+   /**
+    * Determines whether or not walks should use a persistent
+    * index.
+    * @return true if the index should be used
+    * @since 1.8
+    */ 
+   public boolean isWalkIndexEnabled()
+   {
+      return walkIndex;
+   }
+
+   /**
+    * Determines whether or not file digests should use a
+    * persistent cache.
+    * @return true if the cache should be used
+    * @since 1.8
+    */ 
+   public boolean isDigestCacheEnabled()
+   {
+      return digestCache;
+   }
+
+   /**
+    * Gets the modification time and size limits for listings and
+    * walks.
+    * @return the limits or null if no limits have been set
+    * @since 1.8
+    */ 
+   public FileAttributeFilter getFileAttributeFilter()
+   {
+      return attributeFilter.isActive() ? attributeFilter : null;
+   }
+
+   /**
+    * Gets the time budget for the current action, as set by
+    * --deadline and --action-deadline.
+    * @return the deadline or null if there's no time limit
+    * @since 1.8
+    */ 
+   public FileDeadline getDeadline()
+   {
+      return deadline;
+   }
+
+   /**
+    * Determines if the current action's time budget has run out.
+    * Long running actions call this periodically and, if it
+    * returns true, stop early and return what they've found so far.
+    * @return true if the deadline has passed
+    * @since 1.8
+    */ 
+   public boolean isDeadlineExpired()
+   {
+      return deadline != null && deadline.isExpired();
+   }
+
+   /**
+    * Indicates that the current action had to stop before it was
+    * finished, for example, because a directory couldn't be read
+    * part-way through a walk. The result is then marked as
+    * truncated in the same way as when the deadline is reached.
+    * @since 1.8
+    */ 
+   public void setTruncated()
+   {
+      truncated = true;
+   }
+
+   /**
+    * Gets the time given by the argument of --newer-than or
+    * --older-than. If the argument starts with "D:", it's a PDF
+    * date-time. Otherwise it's the name of a reference file (found
+    * in the same way as for --pdfdate), whose modification time is
+    * read once.
+    * @param value the option argument
+    * @return the time in milliseconds since the epoch
+    * @throws IllegalArgumentException if the argument isn't a
+    * valid date or the file can't be read
+    * @since 1.8
+    */ 
+   protected long getReferenceTime(String value)
+   {
+      if (value.startsWith("D:"))
+      {
+         return FileAttributeFilter.parsePdfDate(value);
+      }
+
+      // The reference file is found in the same way as for the
+      // file actions, so kpsewhich is used if it's not in the
+      // current directory.
+
+      File file = fileFromTeXPath(value);
+
+      if (!file.exists())
+      {
+         throw new IllegalArgumentException(String.format(
+           "No such file: %s", value));
+      }
+
+      if (!isReadPermitted(file))
+      {
+         throw new IllegalArgumentException(String.format(
+           "No read access for file: %s", value));
+      }
+
+      return file.lastModified();
+   }
+
+   /**
+    * Parses the argument of --min-size or --max-size.
+    * @param option the option
+    * @param value the option argument
+    * @return the size in bytes
+    * @throws IllegalArgumentException if the argument isn't a
+    * non-negative integer
+    * @since 1.8
+    */ 
+   private static long parseSizeLimit(String option, String value)
+   {
+      long size;
+
+      try
+      {
+         size = Long.parseLong(value);
+      }
+      catch (NumberFormatException e)
+      {
+         throw new IllegalArgumentException(String.format(
+           "Invalid '%s' value: %s", option, value), e);
+      }
+
+      if (size < 0)
+      {
+         throw new IllegalArgumentException(String.format(
+           "Invalid '%s' value: %s", option, value));
+      }
+
+      return size;
+   }
+
+   /**
+    * Gets the thread limit for a task that's limited by the file
+    * system latency rather than the number of processors.
+    * @param defaultLimit the limit to use if --threads hasn't been
+    * set
+    * @return the thread limit
+    * @since 1.8
+    */ 
+   public int getIOThreadLimit(int defaultLimit)
+   {
+      return maxThreads > 0 ? maxThreads : defaultLimit;
+   }
+
     /**
      * Gets the file length in bytes.
      * @param file The file.
@@ -1306,636 +1506,3118 @@ public class TeXOSQuery implements Serializable
    }
 
    /**
-    * Sort the given list of file names. Java 8 has a better sort
-    * method so this is overridden in the TeXOSQueryJRE8 class.
-    * @param list The list of file names to be sorted
-    * @param directory The directory in which the files are
-    * contained
-    * @param sortType How to order the list
-    */ 
-    public void sortFileList(String[] list, File directory, 
-      FileSortType sortType)
-    {
-       Arrays.sort(list, new FileSortComparator(directory, sortType));
-    }
+    * Gets the modification date and size of several files. Each
+    * file is looked up and checked in the same way as pdfDate(File)
+    * and getFileLength(File), but the files are queried concurrently
+    * and only one calendar is needed to format the dates. The result
+    * has a group for each file (in the same order as the supplied
+    * names) containing three groups: 1 if the file exists and may be
+    * read (otherwise 0), the date in PDF format and the size in
+    * bytes. The date and size are empty if the flag is 0.
+    * @param filenames The file names (TeX paths).
+    * @return The grouped file information.
+    * @since 1.8
+    */
+   public String getFileStats(String[] filenames)
+   {
+      int n = filenames.length;
 
-    /**
-     * Checks the directory used for file listings. The JRE5 version
-     * just returns the argument. The other versions convert the
-     * directory to a canonical path and check it's permitted. (The
-     * JRE7 and 8 versions are more restrictive.)
-     */ 
-    protected File checkDirectoryListing(File dir) throws IOException
-    {
-       return dir;
-    }
+      long[] dates = new long[n];
+      long[] sizes = new long[n];
+      boolean[] found = new boolean[n];
 
-    /**
-     * Gets the list of files from a directory. This uses
-     * getFilterFileList to filter out files prohibited by the
-     * openin_any setting. Note that the separator isn't escaped as
-     * the user may want some actual TeX code. For example, the
-     * separator might need to be a double backslash.
-     * The user will need to take the appropriate precautions
-     * to protect it from expansion during the shell escape.
-     * @param separator Separator.
-     * @param directory Directory (root not permitted).
-     * @param sortType How to sort the file list
-     * @param listType The type of files to include in the list
-     * @return List as a string.
-     */
-   public String getFileList(String separator, File directory, 
-            FileSortType sortType, FileListType listType)
-   {
-      return getFilterFileList(separator, ".*", directory, sortType, listType);
-   }
+      fetchFileStats(filenames, dates, sizes, found);
 
-    /**
-     * Gets a filtered list of files from directory.
-     * Files with read access prohibited by openin_any or the OS are
-     * omitted from the list. The regular expression is anchored,
-     * so ".*foo" will only match file names that end with "foo".
-     *
-     * For security reasons, as from v1.2, the directory must have a
-     * parent (otherwise malicious code could try to perform a
-     * recursive search across the filing system, which would hog
-     * resources). To allow for backward compatibility, the insecure
-     * JRE5 version doesn't have this new restriction.
-     *
-     * @param separator Separator.
-     * @param regex Regular expression.
-     * @param directory Directory.
-     * @param sortType How to sort the file list
-     * @param listType The type of files to include in the list
-     * @return Filtered list as string.
-     */
-   public String getFilterFileList(String separator,
-            final String regex, File directory, 
-            FileSortType sortType, final FileListType listType)
-   {
-      if (directory == null)
+      StringBuilder builder = new StringBuilder();
+      Calendar calendar = Calendar.getInstance();
+
+      for (int i = 0; i < n; i++)
       {
-         // shouldn't happen, but just in case...
+         if (!found[i])
+         {
+            builder.append("{{0}{}{}}");
+            continue;
+         }
 
-         debug("Unable to list contents (null directory)");
-         return "";
-      }
+         String date = "";
 
-      // Check for existence and that the given File is actually a directory.
+         if (dates[i] > ZERO)
+         {
+            calendar.setTimeInMillis(dates[i]);
+            date = pdfDate(calendar);
+         }
+         else
+         {
+            debug(String.format(
+               "Unable to get timestamp for file (I/O error): %s",
+               filenames[i]));
+         }
 
-      if (!directory.exists())
-      {
-         debug(String.format(
-               "Unable to list contents (no such directory): %s",
-               directory.toString()));
-         return "";
+         builder.append(String.format("{{1}{%s}{%d}}", date, sizes[i]));
       }
 
-      if (!directory.isDirectory())
+      return builder.toString();
+   }
+
+   /**
+    * Fetches the modification date and size of each of the given
+    * files. The files are looked up and checked on this thread,
+    * as this may need kpsewhich. The attributes are then divided
+    * into blocks, which are fetched by a bounded number of tasks,
+    * unless there are only a few files.
+    * @param filenames The file names (TeX paths).
+    * @param dates Array in which to store the modification dates.
+    * @param sizes Array in which to store the sizes.
+    * @param found Array in which to store whether or not each file
+    * exists and may be read.
+    * @since 1.8
+    */
+   protected void fetchFileStats(String[] filenames,
+      final long[] dates, final long[] sizes, final boolean[] found)
+   {
+      final int n = filenames.length;
+
+      if (n == 0)
       {
-         debug(String.format(
-               "Unable to list contents (not a directory): %s",
-               directory.toString()));
-         return "";
+         return;
       }
 
-      try
-      {
-         // security check (converts to full canonical path with JRE7 or 8)
+      final File[] files = new File[n];
 
-         directory = checkDirectoryListing(directory);
-      }
-      catch (Exception e)
+      for (int i = 0; i < n; i++)
       {
-         debug(String.format("Unable to list contents of: %s",
-                directory.getAbsolutePath()), e);
-         return "";
+         File file = null;
+
+         try
+         {
+            file = fileFromTeXPath(filenames[i]);
+
+            if (isReadPermitted(file))
+            {
+               files[i] = file;
+            }
+            else
+            {
+               debug(String.format("No read access for file: %s", file));
+            }
+         }
+         catch (Exception exception)
+         {
+            // Catch all possible exceptions, including security
+            // exceptions.
+
+            debug(String.format("Unable to get file information: %s",
+                  file == null ? filenames[i] : file.toString()),
+                  exception);
+         }
       }
 
-      if (!isReadPermitted(directory))
+      int maxPoolSize = getIOThreadLimit(PREFETCH_MAX_THREADS);
+
+      if (n < FILE_STATS_THRESHOLD || maxPoolSize <= 1)
       {
-         debug(String.format("No read access for directory: %s", directory));
-         return "";
+         fetchFileStats(files, dates, sizes, found, 0, n);
+         return;
       }
 
-      if ((regex == null) || ("".equals(regex)))
-      {
-         // null or empty regular expression forbidden (use ".*" for
-         // all files, "" means only match a file with an empty
-         // filename, which doesn't make much sense).
+      int numBlocks = (n + FILE_STATS_BLOCK_SIZE - 1) / FILE_STATS_BLOCK_SIZE;
+      int numTasks = Math.min(numBlocks, maxPoolSize);
 
-         debug("Null or empty regular expression in getFilterFileList");
-         return "";
-      }
+      // Each task takes the next unclaimed block until there are
+      // none left, so no more than numTasks blocks are fetched at
+      // the same time, even with virtual threads.
+
+      final AtomicInteger nextBlock = new AtomicInteger(0);
+
+      ExecutorService executor = createIOExecutor(numTasks);
 
-      StringBuilder builder = new StringBuilder();
-        
       try
       {
-         String[] list = directory.list(
-            new FilenameFilter()
+         Vector<Future<Object>> futures = new Vector<Future<Object>>();
+
+         for (int i = 0; i < numTasks; i++)
+         {
+            futures.add(executor.submit(new Callable<Object>()
             {
-               @Override
-               public boolean accept(File dir, String name)
+               public Object call()
                {
-                  File file = new File(dir, name);
- 
-                  if (!isReadPermitted(file))
-                  {
-                     debug(String.format("No read access for file: %s", file));
-                     return false;
-                  }
+                  int start;
 
-                  switch (listType)
+                  while ((start = FILE_STATS_BLOCK_SIZE
+                          * nextBlock.getAndIncrement()) < n)
                   {
-                     case FILE_LIST_DIRECTORIES_ONLY:
-
-                        if (!file.isDirectory()) return false;
-
-                     break;
-                     case FILE_LIST_REGULAR_FILES_ONLY:
-
-                        if (file.isDirectory()) return false;
-
-                     break;
+                     fetchFileStats(files, dates, sizes, found, start,
+                       Math.min(start + FILE_STATS_BLOCK_SIZE, n));
                   }
 
-                  return name.matches(regex);
+                  return null;
                }
-            });
+            }));
+         }
 
-         if (list != null)
+         for (Future<Object> future : futures)
          {
-            if (sortType != FileSortType.FILE_SORT_DEFAULT)
+            try
             {
-               sortFileList(list, directory, sortType);
+               future.get();
             }
-
-            for (int i = 0; i < list.length; i++)
+            catch (Exception e)
             {
-               if (i > 0)
-               {
-                  builder.append(separator);
-               }
-                            
-               if (list[i].contains(separator))
-               {
-                  builder.append(String.format("{%s}", escapeFileName(list[i])));
-               }
-               else
-               {
-                  builder.append(escapeFileName(list[i]));
-               }
+               debug("Unable to fetch file attributes", e);
             }
-                        
          }
-
-         return builder.toString();
       }
-      catch (Exception exception)
+      finally
       {
-         // Catch all possible exceptions
-         debug(String.format("Unable to list contents of '%s' using regex: %s",
-               directory.toString(), regex),
-               exception);
+         executor.shutdown();
       }
-
-      // Unsuccessful
-      return "";
-   }
+   }
 
    /**
-    * Recursive file listing. This method must have the CWD or a
-    * descendent as the starting directory. It will return list of
-    * files relative to the starting directory where the basename
-    * matches the supplied regular expression. Hidden files/directories 
-    * and symbolic links are skipped regardless of the openin_any setting.
-    * Files without read access are also omitted from the list.
-    *
-    * This method requires the java.nio.file library, which was
-    * introduced in Java 7, so this isn't available for the JRE5
-    * version.
-    *
-    * @param separator separator to use in returned list
-    * @param regex regular expression used to match file basenames
-    * @param directory starting directory (must be cwd or a
-    * descendent of cwd)
-    * @return list of relative paths
-    */ 
-   public String walk(String separator,
-            String regex, File directory, 
-            FileSortType sortType)
+    * Fetches the modification date and size of a block of the
+    * given files, which must already have been checked. This may
+    * be called concurrently for different blocks.
+    * @param files The files (null elements are skipped).
+    * @param dates Array in which to store the modification dates.
+    * @param sizes Array in which to store the sizes.
+    * @param found Array in which to store whether or not each file
+    * exists and may be read.
+    * @param start The index of the first file in the block
+    * @param end The index after the last file in the block
+    * @since 1.8
+    */
+   protected void fetchFileStats(File[] files, long[] dates,
+      long[] sizes, boolean[] found, int start, int end)
    {
-      debug("walk requires at least JRE 7 version");
-      return "";
+      for (int i = start; i < end; i++)
+      {
+         File file = files[i];
+
+         if (file == null)
+         {
+            continue;
+         }
+
+         try
+         {
+            if (!file.exists())
+            {
+               debug(String.format(
+                 "Unable to get file information (no such file): %s",
+                 file.toString()));
+               continue;
+            }
+
+            dates[i] = file.lastModified();
+            sizes[i] = file.length();
+            found[i] = true;
+         }
+         catch (Exception exception)
+         {
+            // Catch all possible exceptions, including security
+            // exceptions.
+
+            debug(String.format("Unable to get file information: %s",
+                  file.toString()), exception);
+         }
+      }
    }
 
-    /**
-     * Gets the file URI. 
-     * @param file The file.
-     * @return The URI.
-     */
-   public String fileURI(File file)
+   /**
+    * Gets the digest of each of the given files. Each file is
+    * looked up and checked in the same way as getFileLength(File).
+    * If --digest-cache is set, the cached digest is used for any
+    * file that hasn't changed since it was last read. The other
+    * files are read concurrently. The result has a group for each
+    * file (in the same order as the supplied names) containing the
+    * digest as upper case hexadecimal digits. The group is empty if
+    * the file doesn't exist, may not be read or wasn't read before
+    * the deadline.
+    * @param filenames The file names (TeX paths).
+    * @param algorithm The digest algorithm (MD5, SHA-1 or SHA-256).
+    * @return The grouped digests.
+    * @since 1.8
+    */
+   public String getFileDigests(String[] filenames, String algorithm)
    {
-      if (file == null)
-      {
-         // This shouldn't happen, but just in case...
-         debug("null file passed to fileURI");
-         return "";
-      }
+      int n = filenames.length;
 
-      if (!file.exists())
-      {
-         debug(String.format("can't obtain URI of file (no such file): %s",
-            file.toString()));
-         return "";
-      }
-        
-      if (!isReadPermitted(file))
-      {
-         debug(String.format("No read access for file: %s", file));
-         return "";
-      }
-        
-      try
+      File[] files = new File[n];
+
+      // The files are looked up and checked on this thread, as
+      // this may need kpsewhich.
+
+      for (int i = 0; i < n; i++)
       {
-         String uri = file.getCanonicalFile().toURI().toString();
+         File file = fileFromTeXPath(filenames[i]);
 
-         if (stripURIPrefix != null && uri.startsWith("file:/"+stripURIPrefix))
+         if (!file.exists())
          {
-            uri = "file:/"+uri.substring(6+stripURIPrefix.length());
+            debug(String.format(
+              "Unable to get the digest of file (no such file): %s",
+              file.toString()));
+            continue;
          }
-         else if (uriRegExp != null && uriReplacement != null)
+
+         if (!isReadPermitted(file))
          {
-            uri = uri.replaceFirst(uriRegExp, uriReplacement);
+            debug(String.format("No read access for file: %s", file));
+            continue;
          }
 
-         return escapeFileName(uri);
+         files[i] = file;
       }
-      catch (Exception exception)
+
+      String[] digests = getFileDigests(files, algorithm);
+
+      StringBuilder builder = new StringBuilder();
+
+      for (int i = 0; i < n; i++)
       {
-         debug(String.format("Can't obtain URI of file: %s", file.toString()),
-          exception);
+         builder.append(String.format("{%s}",
+           digests[i] == null ? "" : digests[i]));
       }
 
-      // Unsuccessful
-      return "";
-    }
+      return builder.toString();
+   }
 
-    /**
-     * Gets the full TeX file path name from File object.
-     * @param file The file.
-     * @return The path.
-     */
-   public String filePath(File file)
+   /**
+    * Gets the digest of each of the given files, which must
+    * already have been checked. If --digest-cache is set, the
+    * cached digest is used for any file that hasn't changed since
+    * it was last read and the cache is updated. The other files
+    * are read concurrently.
+    * @param files The files (null elements are skipped).
+    * @param algorithm The digest algorithm (MD5, SHA-1 or SHA-256).
+    * @return The digests as upper case hexadecimal digits, with
+    * null for each file that was skipped or couldn't be read
+    * before the deadline.
+    * @since 1.8
+    */
+   protected String[] getFileDigests(final File[] files,
+     final String algorithm)
    {
-      if (file == null)
-      {
-         // This shouldn't happen, but just in case...
-         debug("null file passed to filePath");
-         return "";
-      }
+      int n = files.length;
 
-      if (!file.exists())
+      final String[] digests = new String[n];
+      FileDigestCache.Key[] keys = new FileDigestCache.Key[n];
+
+      FileDigestCache cache = (digestCache ? loadDigestCache() : null);
+
+      if (cache != null)
       {
-         debug(String.format(
-           "Can't obtain full file path (no such file): %s",
-           file.toString()));
-         return "";
+         for (int i = 0; i < n; i++)
+         {
+            if (files[i] == null)
+            {
+               continue;
+            }
+
+            try
+            {
+               keys[i] = cache.getKey(files[i], algorithm);
+               digests[i] = cache.get(keys[i]);
+            }
+            catch (Exception e)
+            {
+               debug(String.format("Unable to read attributes of file: %s",
+                 files[i].toString()), e);
+            }
+         }
       }
 
-      if (!isReadPermitted(file))
+      // Files that still need to be read.
+
+      final Vector<Integer> pending = new Vector<Integer>();
+
+      for (int i = 0; i < n; i++)
       {
-          debug(String.format(
-            "Can't obtain full file path (no read access): %s",
-            file.toString()));
-          return "";
+         if (files[i] != null && digests[i] == null)
+         {
+            pending.add(Integer.valueOf(i));
+         }
       }
 
-      try
+      int numTasks = Math.min(pending.size(), getMaxThreads());
+
+      if (numTasks <= 1)
       {
-         return toTeXPath(file.getCanonicalPath());
+         for (Integer i : pending)
+         {
+            digests[i.intValue()] = getFileDigest(files[i.intValue()],
+              algorithm);
+         }
       }
-      catch (Exception exception)
+      else
       {
-         debug(String.format(
-           "Can't obtain full path for file: %s", file.toString()),
-            exception);
-      }
+         // Each task takes the next unclaimed file until there are
+         // none left.
 
-      // Unsuccessful
-      return "";
-    }
+         final AtomicInteger next = new AtomicInteger(0);
 
-    /**
-     * Gets the path for the file's parent.
-     * @param file The file.
-     * @return The path.
-     * @since 1.1
-     */
-   public String parentPath(File file)
-   {
-      if (file == null)
-      {
-         // This shouldn't happen, but just in case...
-         debug("null file passed to filePath");
-         return "";
+         ExecutorService executor = createIOExecutor(numTasks);
+
+         try
+         {
+            Vector<Future<Object>> futures = new Vector<Future<Object>>();
+
+            for (int j = 0; j < numTasks; j++)
+            {
+               futures.add(executor.submit(new Callable<Object>()
+               {
+                  public Object call()
+                  {
+                     int k;
+
+                     while ((k = next.getAndIncrement()) < pending.size())
+                     {
+                        int i = pending.get(k).intValue();
+
+                        digests[i] = getFileDigest(files[i], algorithm);
+                     }
+
+                     return null;
+                  }
+               }));
+            }
+
+            for (Future<Object> future : futures)
+            {
+               try
+               {
+                  future.get();
+               }
+               catch (Exception e)
+               {
+                  debug("Unable to compute file digests", e);
+               }
+            }
+         }
+         finally
+         {
+            executor.shutdown();
+         }
       }
 
-      if (!file.exists())
+      if (cache != null)
       {
-         debug(String.format(
-           "Can't obtain full parent path for file (no such file): %s",
-           file.toString()));
-         return "";
+         for (int i = 0; i < n; i++)
+         {
+            if (keys[i] != null && digests[i] != null)
+            {
+               cache.put(keys[i], digests[i]);
+            }
+         }
+
+         cache.save();
       }
 
-      if (!isReadPermitted(file))
+      return digests;
+   }
+
+   /**
+    * Computes the digest of a file that has already been checked.
+    * This may be called concurrently.
+    * @param file The file.
+    * @param algorithm The digest algorithm.
+    * @return The digest or null if unsuccessful or if the deadline
+    * has passed.
+    * @since 1.8
+    */
+   protected String getFileDigest(File file, String algorithm)
+   {
+      if (isDeadlineExpired())
       {
-          debug(String.format(
-            "Can't obtain full path for file (no read access): %s",
-            file.toString()));
-          return "";
+         return null;
       }
 
       try
       {
-         File parent = file.getCanonicalFile().getParentFile();
-
-         if (parent == null)
-         {
-            // No parent? If getCanonicalFile fails it throws an
-            // exception, so no parent would presumably mean the
-            // file's in the root directory.
-
-            debug(String.format(
-              "No parent found for file: %s", file.toString()));
-            return "";
-         }
-
-         return toTeXPath(parent.getAbsolutePath());
-
-      } 
+         return FileDigest.digest(file, algorithm, getDeadline());
+      }
       catch (Exception exception)
       {
-         debug(String.format(
-           "Can't obtain full parent path for file: %s", file.toString()),
-           exception);
+         // Catch all possible exceptions, including security
+         // exceptions.
+
+         debug(String.format("Unable to get the digest of file: %s",
+               file.toString()),
+               exception);
       }
 
-      // Unsuccessful
-      return "";
+      return null;
    }
 
    /**
-    * Gets the script for the given locale. Java only introduced
-    * support for language scripts in version 1.7, so this returns
-    * null here. The Java 7 and 8 support needs to override this method.
-    * @param locale The locale
-    * @return The language script associated with the given locale or 
-    * null if not available
-    * @since 1.2
-    */ 
-   public String getScript(Locale locale)
+    * Loads the persistent digest cache. The cache requires the
+    * java.nio.file library, which was introduced in Java 7, so this
+    * isn't available for the JRE5 version. This method needs to be
+    * overridden in TeXOSQueryJRE7 and TeXOSQueryJRE8.
+    * @return the cache or null if not available
+    * @since 1.8
+    */
+   protected FileDigestCache loadDigestCache()
    {
+      debug("digest cache requires at least JRE 7 version");
       return null;
    }
 
    /**
-    * Gets the language tag for the given locale.
-    * @param locale The locale or null for the default locale
-    * @return The language tag
-    * @since 1.2
-    */ 
-   public String getLanguageTag(Locale locale)
+    * Determines whether the given directory entry is one of the
+    * files written by texosquery itself. This is the case for the
+    * walk index, if --walk-index is on, or the digest cache, if
+    * --digest-cache is on, in the directory where they're saved.
+    * These are left out of file listings and walks, so that the
+    * results don't depend on whether they've been saved. They're
+    * only written by the JRE7 and JRE8 versions, which override
+    * this method.
+    * @param directory the directory containing the entry
+    * @param name the entry's name
+    * @return true if the entry is a texosquery file
+    * @since 1.8
+    */
+   protected boolean isInternalFile(File directory, String name)
    {
-      if (locale == null)
-      {
-         locale = Locale.getDefault();
-      }
-
-      String tag = locale.getLanguage();
-
-      String country = locale.getCountry();
+      return false;
+   }
 
-      if (country != null && !"".equals(country))
+   /**
+    * Creates an executor for concurrent file system queries. Where
+    * the JVM supports them (Java 21 onwards), virtual threads are
+    * used, as the tasks spend most of their time waiting for the
+    * file system. The method is looked up by reflection, as it's
+    * not available when compiling for earlier versions. Otherwise
+    * a fixed pool of the given size is used. Either way, the caller
+    * needs to limit the number of tasks submitted.
+    * @param numThreads The number of threads in the fixed pool.
+    * @return The executor.
+    * @since 1.8
+    */
+   protected ExecutorService createIOExecutor(int numThreads)
+   {
+      try
       {
-         tag = String.format("%s-%s", tag, country);
-      }
-
-      String variant = locale.getVariant();
+         Method method = Executors.class.getMethod(
+           "newVirtualThreadPerTaskExecutor");
 
-      if (variant != null && !"".equals(variant))
-      {
-         tag = String.format("%s-%s", tag, variant);
+         return (ExecutorService)method.invoke(null);
+      }
+      catch (Exception e)
+      {// virtual threads not supported by this JVM
       }
 
-      return tag;
+      return Executors.newFixedThreadPool(numThreads);
    }
 
-    /**
-     * Gets a string representation of the provided locale.
-     * @param locale The provided locale.
-     * @return String representation.
-     */
-   public String getLocale(Locale locale)
+   /**
+    * Dumps byte ranges of a file. The file is checked in the same
+    * way as pdfDate(File). Each range is read with a single
+    * positional read, so only the requested bytes are read
+    * however large the file is. The result has a group for each
+    * range (in the same order as the supplied ranges) containing
+    * the bytes either as upper case hexadecimal digits (as
+    * \pdffiledump) or, if escaped, as text where any printable
+    * ASCII character is escaped as for file names and any other
+    * byte is written as \fbyt{XX}. A range that extends beyond the
+    * end of the file only contains the bytes that exist.
+    * @param file The file.
+    * @param ranges The offset and length of each range (as
+    * returned by FileDump.parseRanges(String)).
+    * @param escape true if the bytes should be written as escaped
+    * text rather than hexadecimal digits
+    * @return The grouped bytes or an empty string if unsuccessful.
+    * @since 1.8
+    */
+   public String getFileDump(File file, long[] ranges, boolean escape)
    {
-      return getLocale(locale, false);
-   }
+      try
+      {
+         if (!file.exists())
+         {
+            debug(String.format(
+                 "Unable to dump file (no such file): %s",
+                 file.toString()));
+            return "";
+         }
 
-    /**
-     * Gets a POSIX representation of the provided locale, converting the code
-     * set if possible. If the boolean argument is true, this
-     * attempts to convert the code set to a identifier that stands
-     * a better chance of being recognised by inputenc.sty. For
-     * example, UTF-8 will be converted to utf8. None of TeX's
-     * special characters should occur in any of the locale
-     * information, but we'd better treat it like a file name just in
-     * case.
-     * @param locale The provided locale.
-     * @param convertCodeset Boolean value to convert the code set.
-     * @return String representation.
-     */
-   public String getLocale(Locale locale, boolean convertCodeset)
-   {
-      String identifier = "";
+         if (!isReadPermitted(file))
+         {
+            debug(String.format("No read access for file: %s", file));
+            return "";
+         }
 
-      if (locale == null)
-      {
-         // No locale provided, return empty string
-         debug("null locale");
-         return "";
-      }
+         StringBuilder builder = new StringBuilder();
+         FileDump dump = new FileDump(FileDump.getMaxLength(ranges));
 
-      String language = locale.getLanguage();
+         FileInputStream in = new FileInputStream(file);
 
-      if (language == null)
-      {
-          // No language provided for the locale. The language
-          // part will be omitted from the returned string.
-         debug(String.format("No language for locale: %s", locale.toString()));
+         try
+         {
+            FileChannel channel = in.getChannel();
+
+            for (int i = 0; i < ranges.length && !isDeadlineExpired(); 
+                 i += 2)
+            {
+               ByteBuffer bytes = dump.read(channel, ranges[i], 
+                 (int)ranges[i+1]);
+
+               builder.append('{');
+
+               if (escape)
+               {
+                  appendEscapedBytes(bytes, builder);
+               }
+               else
+               {
+                  FileDump.appendHex(bytes, builder);
+               }
+
+               builder.append('}');
+            }
+         }
+         finally
+         {
+            in.close();
+         }
+
+         return builder.toString();
       }
-      else
+      catch (Exception exception)
       {
-         identifier = language;
+         // Catch all possible exceptions, including security
+         // exceptions.
+
+         debug(String.format("Unable to dump file: %s",
+               file.toString()),
+               exception);
       }
 
-      String country = locale.getCountry();
+      // Unsuccessful
+      return "";
+   }
 
-      if (country == null || "".equals(country))
+   /**
+    * Appends the remaining bytes in the buffer as escaped text.
+    * Printable ASCII characters are escaped as for file names and
+    * any other byte is written as \fbyt{XX} where XX is its
+    * upper case hexadecimal value.
+    * @param bytes the buffer
+    * @param builder the output
+    * @since 1.8
+    */
+   protected void appendEscapedBytes(ByteBuffer bytes, StringBuilder builder)
+   {
+      while (bytes.hasRemaining())
       {
-         // No country is associated with the locale. The
-         // country part will be omitted from the returned
-         // string. This is just information, not an error.
+         int b = bytes.get() & 0xFF;
 
-         info(String.format("No region for locale: %s", locale.toString()));
-      }
-      else
-      {
-         if ("".equals(identifier))
+         if (b >= 32 && b <= 126)
          {
-            // The identifier hasn't been set (no language
-            // provided), so just set it to the country code.
-            identifier = country;
+            builder.append(escapeSpChars(b, false));
          }
          else
          {
-            // Append the country code to the identifier.
-            identifier = identifier.concat("-").concat(country);
+            builder.append(String.format("\\fbyt{%02X}", b));
          }
       }
+   }
 
-      String codeset = getCodeSet(convertCodeset);
-
-      identifier = identifier.concat(".").concat(codeset);
-
-      // Find the script if available. This is used as the modifier part
-      // but it's better to use a language tag if the script is
-      // needed.
-
-      String script = getScript(locale);
-
-      if (script == null || "".equals(script))
+   /**
+    * Parses the optional format argument of the file dump action.
+    * @param arg the argument (may be null)
+    * @return true if the bytes should be written as escaped text
+    * @throws IllegalArgumentException if the argument is invalid
+    * @since 1.8
+    */ 
+   public static boolean isDumpEscaped(String arg)
+   {
+      if (arg == null || arg.equals("hex"))
       {
-         // Script information is missing. Ignore it.
-         // This is just an advisory message.
-
-         info(String.format("No script available for locale: %s",
-             locale.toString()));
+         return false;
       }
-      else
+
+      if (arg.equals("esc"))
       {
-         // Append the script. This will be a four letter string 
-         // (if it's not empty).
-         identifier = identifier.concat("@").concat(script);
+         return true;
       }
 
-      return escapeFileName(identifier);
+      throw new IllegalArgumentException(
+        "Invalid dump format: "+arg);
    }
 
    /**
-    * Gets default file encoding. (Don't escape it here or it will cause
-    * a problem when called in getLocale.)
-    * @param convertCodeset If true convert codeset to fit
-    * inputenc.sty
-    * @return the file encoding.
-    * @since 1.2
+    * Sort the given list of file names. The sort keys for each file
+    * (such as its modification date or collation key) are computed
+    * once before sorting rather than on every comparison, and are
+    * stored in columns rather than as an object per file.
+    * @param list The list of file names to be sorted
+    * @param directory The directory in which the files are
+    * contained
+    * @param sortType How to order the list
     */ 
-   public String getCodeSet(boolean convertCodeset)
-   {
-      String codeset;
+    public void sortFileList(String[] list, File directory, 
+      FileSortSpec sortType)
+    {
+       if (sortType.isDefault())
+       {
+          return;
+       }
 
-      if (fileEncoding != null)
-      {
-         codeset = fileEncoding;
-      }
-      else
-      {
-         // Get the OS default file encoding or "UTF-8" if not set.
+       FileSortColumns columns = new FileSortColumns(sortType, list, 
+         File.separatorChar);
 
-         codeset = getSystemProperty("file.encoding", "UTF-8");
+       if (columns.usesFileAttributes())
+       {
+          fetchSortAttributes(columns, directory);
+       }
 
-         // The codeset should not be null here as a default has
-         // been provided if the property is missing.
-      }
+       // If the time ran out while the attributes were being
+       // fetched, the list is left in its original order.
 
-      if (convertCodeset)
-      {
-         // If conversion is required, change to lower case
-         // and remove any hyphens.
-         codeset = codeset.toLowerCase().replaceAll("-", "");
-      }
+       if (isDeadlineExpired())
+       {
+          return;
+       }
 
-      return codeset;
-   }
+       columns.setDeadline(getDeadline());
+       columns.sortNames();
+    }
 
    /**
-    * Gets the two-letter alpha region code from the numeric code.
-    * (Java doesn't seem to recognise the numeric codes.)
-    * @param ISO 3166-1 numeric code
-    * @return ISO 3166-1 alpha code
-    * @since 1.2
+    * Fetches the modification date and size of each file in the
+    * sort columns. Small lists are dealt with on this thread. For
+    * larger lists, where the file system latency would dominate
+    * (for example, on a network file system), the list is split into
+    * blocks that are fetched concurrently on a small pool of
+    * threads.
+    * @param columns The sort columns
+    * @param directory The directory in which the files are
+    * contained
+    * @since 1.8
     */ 
-   public String getRegionAlpha2Code(int code)
-   {
-      switch (code)
-      {
-         case 4: return "AF";
-         case 8: return "AL";
-         case 10: return "AQ";
-         case 12: return "DZ";
-         case 16: return "AS";
-         case 20: return "AD";
-         case 24: return "AO";
-         case 28: return "AG";
-         case 31: return "AZ";
-         case 32: return "AR";
-         case 36: return "AU";
-         case 40: return "AT";
-         case 44: return "BS";
-         case 48: return "BH";
-         case 50: return "BD";
-         case 51: return "AM";
-         case 52: return "BB";
-         case 56: return "BE";
-         case 60: return "BM";
-         case 64: return "BT";
-         case 68: return "BO";
-         case 70: return "BA";
-         case 72: return "BW";
-         case 74: return "BV";
-         case 76: return "BR";
-         case 84: return "BZ";
-         case 86: return "IO";
-         case 90: return "SB";
-         case 92: return "VG";
-         case 96: return "BN";
-         case 100: return "BG";
-         case 104: return "MM";
-         case 108: return "BI";
-         case 112: return "BY";
-         case 116: return "KH";
-         case 120: return "CM";
-         case 124: return "CA";
-         case 132: return "CV";
-         case 136: return "KY";
-         case 140: return "CF";
-         case 144: return "LK";
-         case 148: return "TD";
-         case 152: return "CL";
-         case 156: return "CN";
-         case 158: return "TW";
-         case 162: return "CX";
-         case 166: return "CC";
-         case 170: return "CO";
-         case 174: return "KM";
-         case 175: return "YT";
-         case 178: return "CG";
-         case 180: return "CD";
-         case 184: return "CK";
-         case 188: return "CR";
-         case 191: return "HR";
-         case 192: return "CU";
+    protected void fetchSortAttributes(final FileSortColumns columns, 
+      final File directory)
+    {
+       final int n = columns.size();
+
+       int maxPoolSize = getIOThreadLimit(PREFETCH_MAX_THREADS);
+
+       if (n < PREFETCH_THRESHOLD || maxPoolSize <= 1)
+       {
+          fetchSortAttributes(columns, directory, 0, n);
+          return;
+       }
+
+       int numBlocks = (n + PREFETCH_BLOCK_SIZE - 1) / PREFETCH_BLOCK_SIZE;
+       int numTasks = Math.min(numBlocks, maxPoolSize);
+
+       // As for fetchFileStats, each task takes the next unclaimed
+       // block, so that no more than numTasks blocks are fetched at
+       // the same time.
+
+       final AtomicInteger nextBlock = new AtomicInteger(0);
+
+       ExecutorService executor = createIOExecutor(numTasks);
+
+       try
+       {
+          Vector<Future<Object>> futures = new Vector<Future<Object>>();
+
+          for (int i = 0; i < numTasks; i++)
+          {
+             futures.add(executor.submit(new Callable<Object>()
+             {
+                public Object call()
+                {
+                   int start;
+
+                   while ((start = PREFETCH_BLOCK_SIZE
+                           * nextBlock.getAndIncrement()) < n)
+                   {
+                      fetchSortAttributes(columns, directory, start,
+                        Math.min(start + PREFETCH_BLOCK_SIZE, n));
+                   }
+
+                   return null;
+                }
+             }));
+          }
+
+          for (Future<Object> future : futures)
+          {
+             try
+             {
+                future.get();
+             }
+             catch (Exception e)
+             {
+                debug(String.format(
+                  "Unable to fetch file attributes in: %s", directory), e);
+             }
+          }
+       }
+       finally
+       {
+          executor.shutdown();
+       }
+    }
+
+   /**
+    * Fetches the modification date and size of a block of files in
+    * the sort columns. This may be called concurrently for
+    * different blocks. The JRE7 and JRE8 versions override this to
+    * fetch both attributes together.
+    * @param columns The sort columns
+    * @param directory The directory in which the files are
+    * contained
+    * @param start The index of the first file in the block
+    * @param end The index after the last file in the block
+    * @since 1.8
+    */ 
+    protected void fetchSortAttributes(FileSortColumns columns, 
+      File directory, int start, int end)
+    {
+       for (int i = start; i < end; i++)
+       {
+          if (isDeadlineExpired())
+          {
+             break;
+          }
+
+          File file = new File(directory, columns.getName(i));
+
+          long lastModified = 0L;
+          long size = 0L;
+
+          try
+          {
+             lastModified = file.lastModified();
+             size = file.length();
+          }
+          catch (Exception e)
+          {// no read access or for some other reason the attributes
+           // can't be obtained.
+          }
+
+          columns.setAttributes(i, lastModified, size);
+       }
+    }
+
+   /**
+    * Gets the sort specification from the sort argument supplied
+    * in the command line invocation. Multiple sort types may be
+    * separated by commas. Collated sort types may be followed by a
+    * colon and a language tag.
+    * @param spec the sort argument (may be null)
+    * @return the sort specification
+    * @throws IllegalArgumentException if the sort argument is invalid
+    * @since 1.8
+    */ 
+    public FileSortSpec getFileSortSpec(String spec)
+    {
+       if (spec == null)
+       {
+          return FileSortSpec.DEFAULT;
+       }
+
+       // Keep trailing empty keys, so that they are rejected in
+       // the same way as any other invalid key.
+       String[] split = spec.split(",", -1);
+
+       FileSortType[] types = new FileSortType[split.length];
+       Locale[] locales = new Locale[split.length];
+
+       for (int i = 0; i < split.length; i++)
+       {
+          String key = split[i];
+
+          int idx = key.indexOf(':');
+
+          if (idx == -1)
+          {
+             types[i] = FileSortType.getFileSortType(key);
+          }
+          else
+          {
+             types[i] = FileSortType.getFileSortType(key.substring(0, idx));
+
+             if (!types[i].isCollated())
+             {
+                throw new IllegalArgumentException(String.format(
+                  "Sort type '%s' doesn't take a locale", types[i]));
+             }
+
+             String tag = key.substring(idx+1);
+
+             locales[i] = ("".equals(tag) ? null : getLocale(tag));
+          }
+
+          if (types[i] == FileSortType.FILE_SORT_DEFAULT && split.length > 1)
+          {
+             throw new IllegalArgumentException(String.format(
+               "Sort type '%s' can't be combined with other sort types",
+               types[i]));
+          }
+       }
+
+       return new FileSortSpec(types, locales);
+    }
+
+    /**
+     * Checks the directory used for file listings. The JRE5 version
+     * just returns the argument. The other versions convert the
+     * directory to a canonical path and check it's permitted. (The
+     * JRE7 and 8 versions are more restrictive.)
+     */ 
+    protected File checkDirectoryListing(File dir) throws IOException
+    {
+       return dir;
+    }
+
+    /**
+     * Gets the list of files from a directory. This uses
+     * getFilterFileList to filter out files prohibited by the
+     * openin_any setting. Note that the separator isn't escaped as
+     * the user may want some actual TeX code. For example, the
+     * separator might need to be a double backslash.
+     * The user will need to take the appropriate precautions
+     * to protect it from expansion during the shell escape.
+     * @param separator Separator.
+     * @param directory Directory (root not permitted).
+     * @param sortType How to sort the file list
+     * @param listType The type of files to include in the list
+     * @return List as a string.
+     */
+   public String getFileList(String separator, File directory, 
+            FileSortSpec sortType, FileListType listType)
+   {
+      return getFilterFileList(separator, ".*", directory, sortType, listType);
+   }
+
+    /**
+     * Gets a filtered list of files from directory.
+     * Files with read access prohibited by openin_any or the OS are
+     * omitted from the list. The regular expression is anchored,
+     * so ".*foo" will only match file names that end with "foo".
+     *
+     * For security reasons, as from v1.2, the directory must have a
+     * parent (otherwise malicious code could try to perform a
+     * recursive search across the filing system, which would hog
+     * resources). To allow for backward compatibility, the insecure
+     * JRE5 version doesn't have this new restriction.
+     *
+     * @param separator Separator.
+     * @param regex Regular expression.
+     * @param directory Directory.
+     * @param sortType How to sort the file list
+     * @param listType The type of files to include in the list
+     * @return Filtered list as string.
+     */
+   public String getFilterFileList(String separator,
+            String regex, File directory, 
+            FileSortSpec sortType, FileListType listType)
+   {
+      FileNameMatcher matcher = createRegexMatcher(regex);
+
+      if (matcher == null)
+      {
+         return "";
+      }
+
+      return getFilterFileList(separator, matcher, directory,
+        sortType, listType);
+   }
+
+    /**
+     * Creates a matcher for the given regular expression. The
+     * expression is compiled once rather than for every file name.
+     * @param regex the regular expression
+     * @return the matcher or null if the expression is empty or
+     * invalid
+     * @since 1.8
+     */
+   protected FileNameMatcher createRegexMatcher(String regex)
+   {
+      if ((regex == null) || ("".equals(regex)))
+      {
+         // null or empty regular expression forbidden (use ".*" for
+         // all files, "" means only match a file with an empty
+         // filename, which doesn't make much sense).
+
+         debug("Null or empty regular expression in file listing");
+         return null;
+      }
+
+      try
+      {
+         return FileNameMatcher.createRegexMatcher(this, regex);
+      }
+      catch (Exception e)
+      {
+         debug(String.format("Invalid regular expression: %s", regex), e);
+         return null;
+      }
+   }
+
+    /**
+     * Gets a list of files from directory where the file name
+     * matches the given glob pattern. This requires the
+     * java.nio.file library, so it's not available for the JRE5
+     * version.
+     * @param separator Separator.
+     * @param glob Glob pattern.
+     * @param directory Directory.
+     * @param sortType How to sort the file list
+     * @param listType The type of files to include in the list
+     * @return Filtered list as string.
+     * @since 1.8
+     */
+   public String getGlobFileList(String separator,
+            String glob, File directory, 
+            FileSortSpec sortType, FileListType listType)
+   {
+      FileNameMatcher matcher = createGlobMatcher(glob);
+
+      if (matcher == null)
+      {
+         return "";
+      }
+
+      return getFilterFileList(separator, matcher, directory,
+        sortType, listType);
+   }
+
+    /**
+     * Creates a matcher for the given glob pattern. Glob patterns
+     * require the java.nio.file library, which was introduced in
+     * Java 7, so this isn't available for the JRE5 version. This
+     * method needs to be overridden in TeXOSQueryJRE7 and
+     * TeXOSQueryJRE8.
+     * @param glob the glob pattern
+     * @return the matcher or null if not available
+     * @since 1.8
+     */
+   protected FileNameMatcher createGlobMatcher(String glob)
+   {
+      debug("glob patterns require at least JRE 7 version");
+      return null;
+   }
+
+    /**
+     * Gets a filtered list of files from directory.
+     * Files with read access prohibited by openin_any or the OS are
+     * omitted from the list.
+     * @param separator Separator.
+     * @param matcher The file name filter.
+     * @param directory Directory.
+     * @param sortType How to sort the file list
+     * @param listType The type of files to include in the list
+     * @return Filtered list as string.
+     * @since 1.8
+     */
+   public String getFilterFileList(String separator,
+            FileNameMatcher matcher, File directory, 
+            FileSortSpec sortType, FileListType listType)
+   {
+      StringBuilder builder = new StringBuilder();
+
+      try
+      {
+         writeFilterFileList(builder, separator, matcher, directory,
+           sortType, listType);
+      }
+      catch (IOException e)
+      {
+         // shouldn't happen when writing to a StringBuilder
+         debug(String.format("Unable to list contents of: %s", directory), e);
+         return "";
+      }
+
+      return builder.toString();
+   }
+
+    /**
+     * Writes the list of files from a directory. As
+     * getFileList but the list is written to the given output.
+     * @param out The output.
+     * @param separator Separator.
+     * @param directory Directory.
+     * @param sortType How to sort the file list
+     * @param listType The type of files to include in the list
+     * @throws IOException if the output can't be written
+     * @since 1.8
+     */
+   public void writeFileList(Appendable out, String separator,
+            File directory, FileSortSpec sortType, FileListType listType)
+     throws IOException
+   {
+      writeFilterFileList(out, separator, ".*", directory, sortType, listType);
+   }
+
+    /**
+     * Writes a filtered list of files from a directory. As
+     * getFilterFileList but the list is written to the given output.
+     * @param out The output.
+     * @param separator Separator.
+     * @param regex Regular expression.
+     * @param directory Directory.
+     * @param sortType How to sort the file list
+     * @param listType The type of files to include in the list
+     * @throws IOException if the output can't be written
+     * @since 1.8
+     */
+   public void writeFilterFileList(Appendable out, String separator,
+            String regex, File directory, 
+            FileSortSpec sortType, FileListType listType)
+     throws IOException
+   {
+      FileNameMatcher matcher = createRegexMatcher(regex);
+
+      if (matcher != null)
+      {
+         writeFilterFileList(out, separator, matcher, directory,
+           sortType, listType);
+      }
+   }
+
+    /**
+     * Writes a list of files from a directory where the file name
+     * matches the given glob pattern. As getGlobFileList but the
+     * list is written to the given output.
+     * @param out The output.
+     * @param separator Separator.
+     * @param glob Glob pattern.
+     * @param directory Directory.
+     * @param sortType How to sort the file list
+     * @param listType The type of files to include in the list
+     * @throws IOException if the output can't be written
+     * @since 1.8
+     */
+   public void writeGlobFileList(Appendable out, String separator,
+            String glob, File directory, 
+            FileSortSpec sortType, FileListType listType)
+     throws IOException
+   {
+      FileNameMatcher matcher = createGlobMatcher(glob);
+
+      if (matcher != null)
+      {
+         writeFilterFileList(out, separator, matcher, directory,
+           sortType, listType);
+      }
+   }
+
+    /**
+     * Writes a filtered list of files from a directory. If the
+     * default order is requested, each name is written as soon as
+     * it has been read, so the whole list doesn't need to be held
+     * in memory. Otherwise the list is read and sorted first.
+     * @param out The output.
+     * @param separator Separator.
+     * @param matcher The file name filter.
+     * @param directory Directory.
+     * @param sortType How to sort the file list
+     * @param listType The type of files to include in the list
+     * @throws IOException if the output can't be written
+     * @since 1.8
+     */
+   public void writeFilterFileList(Appendable out, String separator,
+            FileNameMatcher matcher, File directory, 
+            FileSortSpec sortType, FileListType listType)
+     throws IOException
+   {
+      directory = checkListingDirectory(directory);
+
+      if (directory == null)
+      {
+         return;
+      }
+
+      if (sortType.isDefault())
+      {
+         writeDirectoryList(out, separator, matcher, directory, listType);
+         return;
+      }
+
+      String[] list = listDirectory(matcher, directory, listType);
+
+      if (list != null)
+      {
+         sortFileList(list, directory, sortType);
+         appendFileList(out, separator, list);
+      }
+   }
+
+    /**
+     * Writes the names of the files in the given directory that
+     * match the filter, in the default order. The directory should
+     * already have been checked with checkListingDirectory. The
+     * JRE5 version has to read the entire directory first. The JRE7
+     * and JRE8 versions override this method to read the directory
+     * as it's written.
+     * @param out The output.
+     * @param separator Separator.
+     * @param matcher The file name filter.
+     * @param directory Directory.
+     * @param listType The type of files to include in the list
+     * @throws IOException if the output can't be written
+     * @since 1.8
+     */
+   protected void writeDirectoryList(Appendable out, String separator,
+            FileNameMatcher matcher, File directory, FileListType listType)
+     throws IOException
+   {
+      String[] list = listDirectory(matcher, directory, listType);
+
+      if (list != null)
+      {
+         appendFileList(out, separator, list);
+      }
+   }
+
+    /**
+     * Checks if a directory entry should be included in a listing.
+     * The name is tested first, as that doesn't require access to
+     * the file system. No more entries are accepted once the
+     * deadline has passed.
+     * @param directory The directory containing the entry.
+     * @param name The entry's name.
+     * @param matcher The file name filter.
+     * @param listType The type of files to include in the list
+     * @return true if the entry should be included
+     * @since 1.8
+     */
+   public boolean acceptListEntry(File directory, String name,
+            FileNameMatcher matcher, FileListType listType)
+   {
+      if (isDeadlineExpired() || !matcher.matches(name)
+           || isInternalFile(directory, name))
+      {
+         return false;
+      }
+
+      File file = new File(directory, name);
+ 
+      if (!isReadPermitted(file))
+      {
+         debug(String.format("No read access for file: %s", file));
+         return false;
+      }
+
+      switch (listType)
+      {
+         case FILE_LIST_DIRECTORIES_ONLY:
+
+            if (!file.isDirectory()) return false;
+
+         break;
+         case FILE_LIST_REGULAR_FILES_ONLY:
+
+            if (file.isDirectory()) return false;
+
+         break;
+      }
+
+      FileAttributeFilter filter = getFileAttributeFilter();
+
+      if (filter != null && !acceptListAttributes(file, filter))
+      {
+         return false;
+      }
+
+      return true;
+   }
+
+    /**
+     * Checks a directory entry's modification time and size
+     * against the limits set by --newer-than, --older-than,
+     * --min-size and --max-size. The JRE7 and JRE8 versions
+     * override this to read the attributes with a single call.
+     * @param file The entry.
+     * @param filter The limits.
+     * @return true if the entry is within the limits
+     * @since 1.8
+     */
+   protected boolean acceptListAttributes(File file, 
+            FileAttributeFilter filter)
+   {
+      boolean isDirectory = file.isDirectory();
+
+      return filter.accept(file.lastModified(), 
+        filter.usesSize() && !isDirectory ? file.length() : 0L,
+        isDirectory);
+   }
+
+    /**
+     * Checks that the given directory exists and may be listed.
+     * @param directory Directory.
+     * @return the directory to list (converted to its canonical
+     * path with JRE7 or 8) or null if the directory can't be listed
+     * @since 1.8
+     */
+   protected File checkListingDirectory(File directory)
+   {
+      if (directory == null)
+      {
+         // shouldn't happen, but just in case...
+
+         debug("Unable to list contents (null directory)");
+         return null;
+      }
+
+      // Check for existence and that the given File is actually a directory.
+
+      if (!directory.exists())
+      {
+         debug(String.format(
+               "Unable to list contents (no such directory): %s",
+               directory.toString()));
+         return null;
+      }
+
+      if (!directory.isDirectory())
+      {
+         debug(String.format(
+               "Unable to list contents (not a directory): %s",
+               directory.toString()));
+         return null;
+      }
+
+      try
+      {
+         // security check (converts to full canonical path with JRE7 or 8)
+
+         directory = checkDirectoryListing(directory);
+      }
+      catch (Exception e)
+      {
+         debug(String.format("Unable to list contents of: %s",
+                directory.getAbsolutePath()), e);
+         return null;
+      }
+
+      if (!isReadPermitted(directory))
+      {
+         debug(String.format("No read access for directory: %s", directory));
+         return null;
+      }
+
+      return directory;
+   }
+
+    /**
+     * Gets the unsorted names of the files in the given directory
+     * that match the filter. The directory should already have
+     * been checked with checkListingDirectory.
+     * @param matcher The file name filter.
+     * @param directory Directory.
+     * @param listType The type of files to include in the list
+     * @return array of file names or null if unsuccessful
+     * @since 1.8
+     */
+   protected String[] listDirectory(final FileNameMatcher matcher,
+            File directory, final FileListType listType)
+   {
+      try
+      {
+         return directory.list(
+            new FilenameFilter()
+            {
+               @Override
+               public boolean accept(File dir, String name)
+               {
+                  return acceptListEntry(dir, name, matcher, listType);
+               }
+            });
+      }
+      catch (Exception exception)
+      {
+         // Catch all possible exceptions
+         debug(String.format("Unable to list contents of '%s' using filter: %s",
+               directory.toString(), matcher),
+               exception);
+      }
+
+      // Unsuccessful
+      return null;
+   }
+
+    /**
+     * Joins the given file names into a list. Any names that
+     * contain the separator are grouped.
+     * @param separator Separator.
+     * @param list the file names
+     * @return the list as a string
+     * @since 1.8
+     */
+   protected String formatFileList(String separator, String[] list)
+   {
+      StringBuilder builder = new StringBuilder();
+
+      try
+      {
+         appendFileList(builder, separator, list);
+      }
+      catch (IOException e)
+      {
+         // shouldn't happen when writing to a StringBuilder
+         debug("Unable to format file list", e);
+      }
+
+      return builder.toString();
+   }
+
+    /**
+     * Writes the given file names as a list.
+     * @param out The output.
+     * @param separator Separator.
+     * @param list the file names
+     * @throws IOException if the output can't be written
+     * @since 1.8
+     */
+   public void appendFileList(Appendable out, String separator, 
+      String[] list)
+     throws IOException
+   {
+      for (int i = 0; i < list.length; i++)
+      {
+         appendFileListEntry(out, separator, list[i], i == 0);
+      }
+   }
+
+    /**
+     * Writes a file name as an element of a list. A name that
+     * contains the separator is grouped.
+     * @param out The output.
+     * @param separator Separator.
+     * @param name the file name
+     * @param first true if this is the first element of the list
+     * @throws IOException if the output can't be written
+     * @since 1.8
+     */
+   public void appendFileListEntry(Appendable out, String separator, 
+      String name, boolean first)
+     throws IOException
+   {
+      if (!first)
+      {
+         out.append(separator);
+      }
+                            
+      if (name.contains(separator))
+      {
+         out.append('{');
+         out.append(escapeFileName(name));
+         out.append('}');
+      }
+      else
+      {
+         out.append(escapeFileName(name));
+      }
+   }
+
+    /**
+     * Gets a filtered long format list of the entries in a
+     * directory. Each entry is a group containing the escaped
+     * name, the size in bytes (0 for a directory), the
+     * modification date in PDF format and the type (f for a
+     * regular file, d for a directory or o for anything else), so
+     * the size and date don't need to be queried separately for
+     * each entry. The same entries are included as for
+     * getFilterFileList with FILE_LIST_ANY.
+     * @param regex Regular expression.
+     * @param directory Directory.
+     * @param sortType How to sort the list
+     * @return Filtered list as string.
+     * @since 1.8
+     */
+   public String getLongFileList(String regex, File directory, 
+            FileSortSpec sortType)
+   {
+      FileNameMatcher matcher = createRegexMatcher(regex);
+
+      if (matcher == null)
+      {
+         return "";
+      }
+
+      return getLongFileList(matcher, directory, sortType);
+   }
+
+    /**
+     * Gets a filtered long format list of the entries in a
+     * directory. The attributes of each entry are read once while
+     * the directory is scanned and are used for filtering, sorting
+     * and the listing.
+     * @param matcher The file name filter.
+     * @param directory Directory.
+     * @param sortType How to sort the list
+     * @return Filtered list as string.
+     * @since 1.8
+     */
+   public String getLongFileList(FileNameMatcher matcher, File directory, 
+            FileSortSpec sortType)
+   {
+      directory = checkListingDirectory(directory);
+
+      if (directory == null)
+      {
+         return "";
+      }
+
+      FileLongList list = listDirectoryLong(matcher, directory);
+
+      if (list == null)
+      {
+         return "";
+      }
+
+      int[] order = list.sort(sortType, getDeadline());
+
+      StringBuilder builder = new StringBuilder();
+      FileDateFormatter dateFormatter = new FileDateFormatter(this);
+
+      try
+      {
+         for (int i = 0; i < order.length; i++)
+         {
+            int j = order[i];
+
+            appendLongListEntry(builder, dateFormatter, list.getName(j),
+              list.getLastModified(j), list.getSize(j), list.getType(j));
+         }
+      }
+      catch (IOException e)
+      {
+         // shouldn't happen when writing to a StringBuilder
+         debug(String.format("Unable to list contents of: %s", directory), e);
+         return "";
+      }
+
+      return builder.toString();
+   }
+
+    /**
+     * Gets the entries in the given directory that match the
+     * filter together with their attributes. The directory should
+     * already have been checked with checkListingDirectory. Each
+     * entry is subject to the same checks as acceptListEntry.
+     * @param matcher The file name filter.
+     * @param directory Directory.
+     * @return the entries or null if unsuccessful
+     * @since 1.8
+     */
+   protected FileLongList listDirectoryLong(FileNameMatcher matcher,
+            File directory)
+   {
+      String[] names;
+
+      try
+      {
+         names = directory.list();
+      }
+      catch (Exception exception)
+      {
+         // Catch all possible exceptions
+         debug(String.format("Unable to list contents of: %s",
+               directory.toString()), exception);
+         return null;
+      }
+
+      if (names == null)
+      {
+         debug(String.format("Unable to list contents of: %s",
+               directory.toString()));
+         return null;
+      }
+
+      FileLongList list = new FileLongList();
+
+      for (int i = 0; i < names.length && !isDeadlineExpired(); i++)
+      {
+         if (!matcher.matches(names[i]) 
+              || isInternalFile(directory, names[i]))
+         {
+            continue;
+         }
+
+         File file = new File(directory, names[i]);
+
+         if (!isReadPermitted(file))
+         {
+            debug(String.format("No read access for file: %s", file));
+            continue;
+         }
+
+         addLongListEntry(list, file, names[i]);
+      }
+
+      return list;
+   }
+
+    /**
+     * Reads the attributes of a directory entry and adds it to the
+     * long format list if it's within the limits set by
+     * --newer-than, --older-than, --min-size and --max-size. The
+     * JRE7 and JRE8 versions override this to read the attributes
+     * with a single call.
+     * @param list The list.
+     * @param file The entry.
+     * @param name The entry's name.
+     * @since 1.8
+     */
+   protected void addLongListEntry(FileLongList list, File file,
+            String name)
+   {
+      try
+      {
+         boolean isDirectory = file.isDirectory();
+
+         char type = (isDirectory ? FileLongList.TYPE_DIRECTORY
+           : (file.isFile() ? FileLongList.TYPE_FILE 
+                            : FileLongList.TYPE_OTHER));
+
+         addLongListEntry(list, name, file.lastModified(), 
+           isDirectory ? 0L : file.length(), type);
+      }
+      catch (Exception e)
+      {
+         debug(String.format("Unable to read attributes of: %s", file), e);
+      }
+   }
+
+    /**
+     * Adds an entry to the long format list if it's within the
+     * limits set by --newer-than, --older-than, --min-size and
+     * --max-size.
+     * @param list The list.
+     * @param name The entry's name.
+     * @param lastModified The entry's modification date.
+     * @param size The entry's size.
+     * @param type The entry's type.
+     * @since 1.8
+     */
+   protected void addLongListEntry(FileLongList list, String name,
+            long lastModified, long size, char type)
+   {
+      FileAttributeFilter filter = getFileAttributeFilter();
+
+      if (filter == null || filter.accept(lastModified, size,
+            type == FileLongList.TYPE_DIRECTORY))
+      {
+         list.add(name, lastModified, size, type);
+      }
+   }
+
+    /**
+     * Writes an entry of a long format list as a group containing
+     * the escaped name, the size, the modification date in PDF
+     * format (empty if not known) and the type.
+     * @param out The output.
+     * @param dateFormatter The formatter used for the date.
+     * @param name The entry's name (or path).
+     * @param lastModified The entry's modification date.
+     * @param size The entry's size.
+     * @param type The entry's type.
+     * @throws IOException if the output can't be written
+     * @since 1.8
+     */
+   public void appendLongListEntry(Appendable out, 
+      FileDateFormatter dateFormatter,
+      String name, long lastModified, long size, char type)
+     throws IOException
+   {
+      out.append("{{");
+      out.append(escapeFileName(name));
+      out.append("}{");
+      out.append(String.valueOf(size));
+      out.append("}{");
+
+      if (lastModified > ZERO)
+      {
+         out.append(dateFormatter.format(lastModified));
+      }
+
+      out.append("}{");
+      out.append(type);
+      out.append("}}");
+   }
+
+    /**
+     * Gets a filtered list of files from several directories. The
+     * regular expression is only compiled once and the directories
+     * are scanned concurrently. Each directory is subject to the
+     * same security checks as getFilterFileList.
+     *
+     * If the list is merged, each name is prefixed with its
+     * directory (as supplied) and the combined list is sorted.
+     * Otherwise each directory's list is sorted separately and
+     * grouped (in the same order as the supplied directories).
+     * Directories that can't be listed are omitted from a merged
+     * list and give an empty group otherwise.
+     * @param separator Separator.
+     * @param regex Regular expression.
+     * @param directories The directories (TeX paths).
+     * @param sortType How to sort the file list
+     * @param merge true if the lists should be merged
+     * @return Filtered list as string.
+     * @since 1.8
+     */
+   public String getMultiFilterFileList(String separator, String regex,
+            String[] directories, FileSortSpec sortType, boolean merge)
+   {
+      FileNameMatcher matcher = createRegexMatcher(regex);
+
+      if (matcher == null)
+      {
+         return "";
+      }
+
+      int n = directories.length;
+
+      // The security checks are performed first, on this thread,
+      // as they may need to query kpsewhich.
+
+      File[] dirs = new File[n];
+
+      for (int i = 0; i < n; i++)
+      {
+         dirs[i] = checkListingDirectory(
+           new File(fromTeXPath(directories[i])));
+      }
+
+      String[][] lists = listDirectories(matcher, dirs,
+        FileListType.FILE_LIST_ANY, merge ? null : sortType);
+
+      if (!merge)
+      {
+         StringBuilder builder = new StringBuilder();
+
+         for (int i = 0; i < n; i++)
+         {
+            builder.append(String.format("{%s}",
+              lists[i] == null ? "" : formatFileList(separator, lists[i])));
+         }
+
+         return builder.toString();
+      }
+
+      // Prefix each name with its directory path (as supplied,
+      // rather than the canonical path) and sort the combined list.
+
+      Vector<String> paths = new Vector<String>();
+
+      for (int i = 0; i < n; i++)
+      {
+         if (lists[i] == null) continue;
+
+         File dir = new File(fromTeXPath(directories[i]));
+
+         for (int j = 0; j < lists[i].length; j++)
+         {
+            paths.add(new File(dir, lists[i][j]).getPath());
+         }
+      }
+
+      String[] list = paths.toArray(new String[paths.size()]);
+
+      if (!sortType.isDefault())
+      {
+         sortFileList(list, null, sortType);
+      }
+
+      for (int i = 0; i < list.length; i++)
+      {
+         list[i] = list[i].replace(File.separatorChar, '/');
+      }
+
+      return formatFileList(separator, list);
+   }
+
+    /**
+     * Lists the given directories concurrently.
+     * @param matcher The file name filter.
+     * @param dirs the checked directories (null elements are
+     * skipped)
+     * @param listType The type of files to include in the list
+     * @param sortType How to sort each list or null if the lists
+     * shouldn't be sorted
+     * @return array of lists of file names (elements are null if
+     * unsuccessful)
+     * @since 1.8
+     */
+   protected String[][] listDirectories(final FileNameMatcher matcher,
+      final File[] dirs, final FileListType listType,
+      final FileSortSpec sortType)
+   {
+      final String[][] lists = new String[dirs.length][];
+
+      int numThreads = Math.min(dirs.length, getMaxThreads());
+
+      if (numThreads <= 1)
+      {
+         for (int i = 0; i < dirs.length; i++)
+         {
+            if (dirs[i] != null)
+            {
+               lists[i] = listSortedDirectory(matcher, dirs[i], listType,
+                 sortType);
+            }
+         }
+
+         return lists;
+      }
+
+      // Each task lists the next unclaimed directory until there
+      // are none left, so no more than numThreads directories are
+      // listed at the same time.
+
+      final AtomicInteger nextDir = new AtomicInteger(0);
+
+      ExecutorService executor = createIOExecutor(numThreads);
+
+      try
+      {
+         Vector<Future<Object>> futures = new Vector<Future<Object>>();
+
+         for (int i = 0; i < numThreads; i++)
+         {
+            futures.add(executor.submit(new Callable<Object>()
+            {
+               public Object call()
+               {
+                  int index;
+
+                  while ((index = nextDir.getAndIncrement()) < dirs.length)
+                  {
+                     if (dirs[index] == null) continue;
+
+                     try
+                     {
+                        lists[index] = listSortedDirectory(matcher,
+                          dirs[index], listType, sortType);
+                     }
+                     catch (RuntimeException e)
+                     {
+                        debug(String.format(
+                          "Unable to list contents of: %s", dirs[index]), e);
+                     }
+                  }
+
+                  return null;
+               }
+            }));
+         }
+
+         for (Future<Object> future : futures)
+         {
+            try
+            {
+               future.get();
+            }
+            catch (Exception e)
+            {
+               debug("Unable to list directories", e);
+            }
+         }
+      }
+      finally
+      {
+         executor.shutdown();
+      }
+
+      return lists;
+   }
+
+   private String[] listSortedDirectory(FileNameMatcher matcher,
+      File directory, FileListType listType, FileSortSpec sortType)
+   {
+      String[] list = listDirectory(matcher, directory, listType);
+
+      if (list != null && sortType != null
+           && !sortType.isDefault())
+      {
+         sortFileList(list, directory, sortType);
+      }
+
+      return list;
+   }
+
+   /**
+    * Recursive file listing. This method must have the CWD or a
+    * descendent as the starting directory. It will return list of
+    * files relative to the starting directory where the basename
+    * matches the supplied regular expression. Hidden files/directories 
+    * and symbolic links are skipped regardless of the openin_any setting.
+    * Files without read access are also omitted from the list.
+    *
+    * This method requires the java.nio.file library, which was
+    * introduced in Java 7, so this isn't available for the JRE5
+    * version.
+    *
+    * @param separator separator to use in returned list
+    * @param regex regular expression used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @return list of relative paths
+    */ 
+   public String walk(String separator,
+            String regex, File directory, 
+            FileSortSpec sortType)
+   {
+      FileNameMatcher matcher;
+
+      try
+      {
+         matcher = FileNameMatcher.createRegexMatcher(this, regex);
+      }
+      catch (Exception e)
+      {
+         debug(String.format("Invalid regular expression: %s", regex), e);
+         return "";
+      }
+
+      return walk(separator, matcher, directory, sortType);
+   }
+
+   /**
+    * Recursive file listing where the file basenames match the
+    * given glob pattern. As walk(String,String,File,FileSortSpec)
+    * but with a glob instead of a regular expression.
+    *
+    * @param separator separator to use in returned list
+    * @param glob glob pattern used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @return list of relative paths
+    * @since 1.8
+    */ 
+   public String walkGlob(String separator,
+            String glob, File directory, 
+            FileSortSpec sortType)
+   {
+      FileNameMatcher matcher = createGlobMatcher(glob);
+
+      if (matcher == null)
+      {
+         return "";
+      }
+
+      return walk(separator, matcher, directory, sortType);
+   }
+
+   /**
+    * Recursive file listing using the given file name filter.
+    * This method requires the java.nio.file library, which was
+    * introduced in Java 7, so this needs to be overridden by
+    * TeXOSQueryJRE7 and TeXOSQueryJRE8.
+    *
+    * @param separator separator to use in returned list
+    * @param matcher used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @return list of relative paths
+    * @since 1.8
+    */ 
+   public String walk(String separator,
+            FileNameMatcher matcher, File directory, 
+            FileSortSpec sortType)
+   {
+      StringBuilder builder = new StringBuilder();
+
+      try
+      {
+         writeWalk(builder, separator, matcher, directory, sortType);
+      }
+      catch (IOException e)
+      {
+         debug(String.format("Can't walk directory: %s",
+           directory.toString()), e);
+         return "";
+      }
+
+      return builder.toString();
+   }
+
+   /**
+    * Writes a recursive file listing. As walk(String,String,File,FileSortSpec)
+    * but the list is written to the given output.
+    *
+    * @param out the output
+    * @param separator separator to use in the list
+    * @param regex regular expression used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param sortType how to order the list
+    * @throws IOException if the output can't be written
+    * @since 1.8
+    */ 
+   public void writeWalk(Appendable out, String separator,
+            String regex, File directory, 
+            FileSortSpec sortType)
+     throws IOException
+   {
+      FileNameMatcher matcher;
+
+      try
+      {
+         matcher = FileNameMatcher.createRegexMatcher(this, regex);
+      }
+      catch (Exception e)
+      {
+         debug(String.format("Invalid regular expression: %s", regex), e);
+         return;
+      }
+
+      writeWalk(out, separator, matcher, directory, sortType);
+   }
+
+   /**
+    * Writes a recursive file listing where the file basenames match the
+    * given glob pattern.
+    *
+    * @param out the output
+    * @param separator separator to use in the list
+    * @param glob glob pattern used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param sortType how to order the list
+    * @throws IOException if the output can't be written
+    * @since 1.8
+    */ 
+   public void writeWalkGlob(Appendable out, String separator,
+            String glob, File directory, 
+            FileSortSpec sortType)
+     throws IOException
+   {
+      FileNameMatcher matcher = createGlobMatcher(glob);
+
+      if (matcher != null)
+      {
+         writeWalk(out, separator, matcher, directory, sortType);
+      }
+   }
+
+   /**
+    * Writes a recursive file listing using the given file name filter.
+    * If the default order is requested, each file is written as
+    * soon as it's found. Otherwise the matching paths are collected
+    * and sorted once at the end.
+    * This method requires the java.nio.file library, which was
+    * introduced in Java 7, so this needs to be overridden by
+    * TeXOSQueryJRE7 and TeXOSQueryJRE8.
+    *
+    * @param out the output
+    * @param separator separator to use in the list
+    * @param matcher used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param sortType how to order the list
+    * @throws IOException if the output can't be written
+    * @since 1.8
+    */ 
+   public void writeWalk(Appendable out, String separator,
+            FileNameMatcher matcher, File directory, 
+            FileSortSpec sortType)
+     throws IOException
+   {
+      debug("walk requires at least JRE 7 version");
+   }
+
+   /**
+    * Recursive file listing where each file's path relative to
+    * the starting directory (using / as the separator) matches the
+    * given regular expression. Sub-directories that can't contain
+    * a match aren't descended.
+    *
+    * @param separator separator to use in returned list
+    * @param regex regular expression used to match relative paths
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param sortType how to order the list
+    * @return list of relative paths
+    * @since 1.8
+    */ 
+   public String walkPath(String separator,
+            String regex, File directory, 
+            FileSortSpec sortType)
+   {
+      StringBuilder builder = new StringBuilder();
+
+      try
+      {
+         writeWalkPath(builder, separator, regex, directory, sortType);
+      }
+      catch (IOException e)
+      {
+         debug(String.format("Can't walk directory: %s",
+           directory.toString()), e);
+         return "";
+      }
+
+      return builder.toString();
+   }
+
+   /**
+    * Recursive file listing where each file's path relative to
+    * the starting directory matches the given glob pattern. As
+    * walkPath(String,String,File,FileSortSpec) but with a glob
+    * instead of a regular expression.
+    *
+    * @param separator separator to use in returned list
+    * @param glob glob pattern used to match relative paths
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param sortType how to order the list
+    * @return list of relative paths
+    * @since 1.8
+    */ 
+   public String walkPathGlob(String separator,
+            String glob, File directory, 
+            FileSortSpec sortType)
+   {
+      StringBuilder builder = new StringBuilder();
+
+      try
+      {
+         writeWalkPathGlob(builder, separator, glob, directory, sortType);
+      }
+      catch (IOException e)
+      {
+         debug(String.format("Can't walk directory: %s",
+           directory.toString()), e);
+         return "";
+      }
+
+      return builder.toString();
+   }
+
+   /**
+    * Writes a recursive file listing where each file's relative
+    * path matches the given regular expression. As 
+    * walkPath(String,String,File,FileSortSpec) but the list is
+    * written to the given output.
+    *
+    * @param out the output
+    * @param separator separator to use in the list
+    * @param regex regular expression used to match relative paths
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param sortType how to order the list
+    * @throws IOException if the output can't be written
+    * @since 1.8
+    */ 
+   public void writeWalkPath(Appendable out, String separator,
+            String regex, File directory, 
+            FileSortSpec sortType)
+     throws IOException
+   {
+      if ((regex == null) || ("".equals(regex)))
+      {
+         debug("Null or empty regular expression in file walk");
+         return;
+      }
+
+      FilePathMatcher matcher;
+
+      try
+      {
+         matcher = FilePathMatcher.createRegexMatcher(this, regex);
+      }
+      catch (Exception e)
+      {
+         debug(String.format("Invalid regular expression: %s", regex), e);
+         return;
+      }
+
+      writeWalk(out, separator, matcher, directory, sortType);
+   }
+
+   /**
+    * Writes a recursive file listing where each file's relative
+    * path matches the given glob pattern. Within the pattern,
+    * a path element that's just ** matches any number of
+    * sub-directories.
+    *
+    * @param out the output
+    * @param separator separator to use in the list
+    * @param glob glob pattern used to match relative paths
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param sortType how to order the list
+    * @throws IOException if the output can't be written
+    * @since 1.8
+    */ 
+   public void writeWalkPathGlob(Appendable out, String separator,
+            String glob, File directory, 
+            FileSortSpec sortType)
+     throws IOException
+   {
+      if ((glob == null) || ("".equals(glob)))
+      {
+         debug("Null or empty glob pattern in file walk");
+         return;
+      }
+
+      FilePathMatcher matcher;
+
+      try
+      {
+         matcher = FilePathMatcher.createGlobMatcher(this, glob);
+      }
+      catch (Exception e)
+      {
+         debug(String.format("Invalid glob pattern: %s", glob), e);
+         return;
+      }
+
+      writeWalk(out, separator, matcher, directory, sortType);
+   }
+
+   /**
+    * Writes a recursive file listing using the given relative
+    * path filter. This method requires the java.nio.file library,
+    * which was introduced in Java 7, so this needs to be overridden
+    * by TeXOSQueryJRE7 and TeXOSQueryJRE8.
+    *
+    * @param out the output
+    * @param separator separator to use in the list
+    * @param matcher used to match relative paths
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param sortType how to order the list
+    * @throws IOException if the output can't be written
+    * @since 1.8
+    */ 
+   public void writeWalk(Appendable out, String separator,
+            FilePathMatcher matcher, File directory, 
+            FileSortSpec sortType)
+     throws IOException
+   {
+      debug("walk requires at least JRE 7 version");
+   }
+
+   /**
+    * Gets a long format list of the files in a recursive walk,
+    * where the file basenames match the given regular expression.
+    * The same files are included as for
+    * walk(String,String,File,FileSortSpec) but each file is a
+    * group containing its path relative to the starting directory,
+    * its size, its modification date in PDF format and its type,
+    * as for getLongFileList(String,File,FileSortSpec). The
+    * attributes are those read by the walk.
+    *
+    * @param regex regular expression used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param sortType how to order the list
+    * @return the list
+    * @since 1.8
+    */ 
+   public String walkLong(String regex, File directory,
+            FileSortSpec sortType)
+   {
+      StringBuilder builder = new StringBuilder();
+
+      try
+      {
+         writeWalkLong(builder, regex, directory, sortType);
+      }
+      catch (IOException e)
+      {
+         debug(String.format("Can't walk directory: %s",
+           directory.toString()), e);
+         return "";
+      }
+
+      return builder.toString();
+   }
+
+   /**
+    * Writes a long format list of the files in a recursive walk.
+    * As walkLong(String,File,FileSortSpec) but the list is written
+    * to the given output.
+    *
+    * @param out the output
+    * @param regex regular expression used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param sortType how to order the list
+    * @throws IOException if the output can't be written
+    * @since 1.8
+    */ 
+   public void writeWalkLong(Appendable out, String regex, 
+            File directory, FileSortSpec sortType)
+     throws IOException
+   {
+      FileNameMatcher matcher;
+
+      try
+      {
+         matcher = FileNameMatcher.createRegexMatcher(this, regex);
+      }
+      catch (Exception e)
+      {
+         debug(String.format("Invalid regular expression: %s", regex), e);
+         return;
+      }
+
+      writeWalkLong(out, matcher, directory, sortType);
+   }
+
+   /**
+    * Writes a long format list of the files in a recursive walk
+    * using the given file name filter. This method requires the
+    * java.nio.file library, which was introduced in Java 7, so
+    * this needs to be overridden by TeXOSQueryJRE7 and
+    * TeXOSQueryJRE8.
+    *
+    * @param out the output
+    * @param matcher used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param sortType how to order the list
+    * @throws IOException if the output can't be written
+    * @since 1.8
+    */ 
+   public void writeWalkLong(Appendable out, FileNameMatcher matcher,
+            File directory, FileSortSpec sortType)
+     throws IOException
+   {
+      debug("walk requires at least JRE 7 version");
+   }
+
+   /**
+    * Gets the directory structure of a recursive walk as nested
+    * groups, where the file basenames match the given regular
+    * expression. The same files and sub-directories are included
+    * as for walk(String,String,File,FileSortSpec) but the result is
+    * {<files>}{<sub-directories>} where <files> contains a group
+    * for each file name and <sub-directories> contains
+    * {{<name>}{<files>}{<sub-directories>}} for each
+    * sub-directory. Sub-directories are included even if they
+    * don't contain any matching files.
+    *
+    * @param regex regular expression used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param sortType how to order the files and sub-directories
+    * in each directory
+    * @return the tree
+    * @since 1.8
+    */ 
+   public String walkTree(String regex, File directory,
+            FileSortSpec sortType)
+   {
+      StringBuilder builder = new StringBuilder();
+
+      try
+      {
+         writeWalkTree(builder, regex, directory, sortType);
+      }
+      catch (IOException e)
+      {
+         debug(String.format("Can't walk directory: %s",
+           directory.toString()), e);
+         return "";
+      }
+
+      return builder.toString();
+   }
+
+   /**
+    * Gets the directory structure of a recursive walk as nested
+    * groups, where the file basenames match the given glob pattern.
+    *
+    * @param glob glob pattern used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param sortType how to order the files and sub-directories
+    * in each directory
+    * @return the tree
+    * @since 1.8
+    */ 
+   public String walkGlobTree(String glob, File directory,
+            FileSortSpec sortType)
+   {
+      StringBuilder builder = new StringBuilder();
+
+      try
+      {
+         writeWalkGlobTree(builder, glob, directory, sortType);
+      }
+      catch (IOException e)
+      {
+         debug(String.format("Can't walk directory: %s",
+           directory.toString()), e);
+         return "";
+      }
+
+      return builder.toString();
+   }
+
+   /**
+    * Writes the directory structure of a recursive walk. As
+    * walkTree(String,File,FileSortSpec) but the tree is written to
+    * the given output.
+    *
+    * @param out the output
+    * @param regex regular expression used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param sortType how to order the files and sub-directories
+    * in each directory
+    * @throws IOException if the output can't be written
+    * @since 1.8
+    */ 
+   public void writeWalkTree(Appendable out, String regex, 
+            File directory, FileSortSpec sortType)
+     throws IOException
+   {
+      FileNameMatcher matcher;
+
+      try
+      {
+         matcher = FileNameMatcher.createRegexMatcher(this, regex);
+      }
+      catch (Exception e)
+      {
+         debug(String.format("Invalid regular expression: %s", regex), e);
+         return;
+      }
+
+      writeWalkTree(out, matcher, directory, sortType);
+   }
+
+   /**
+    * Writes the directory structure of a recursive walk where the
+    * file basenames match the given glob pattern.
+    *
+    * @param out the output
+    * @param glob glob pattern used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param sortType how to order the files and sub-directories
+    * in each directory
+    * @throws IOException if the output can't be written
+    * @since 1.8
+    */ 
+   public void writeWalkGlobTree(Appendable out, String glob, 
+            File directory, FileSortSpec sortType)
+     throws IOException
+   {
+      FileNameMatcher matcher = createGlobMatcher(glob);
+
+      if (matcher != null)
+      {
+         writeWalkTree(out, matcher, directory, sortType);
+      }
+   }
+
+   /**
+    * Writes the directory structure of a recursive walk using the
+    * given file name filter. The tree is written in a single pass
+    * as it's walked, so only the sub-directories of the
+    * directories on the current path need to be held in memory.
+    * This method requires the java.nio.file library, which was
+    * introduced in Java 7, so this needs to be overridden by
+    * TeXOSQueryJRE7 and TeXOSQueryJRE8.
+    *
+    * @param out the output
+    * @param matcher used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param sortType how to order the files and sub-directories
+    * in each directory
+    * @throws IOException if the output can't be written
+    * @since 1.8
+    */ 
+   public void writeWalkTree(Appendable out, FileNameMatcher matcher,
+            File directory, FileSortSpec sortType)
+     throws IOException
+   {
+      debug("walk requires at least JRE 7 version");
+   }
+
+   /**
+    * Gets aggregate statistics for the files in a recursive walk,
+    * where the file basenames match the given regular expression.
+    * The same files are included as for
+    * walk(String,String,File,FileSortSpec) but they aren't listed.
+    *
+    * @param regex regular expression used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param histogram true if the totals for each file extension
+    * should also be included
+    * @return the statistics
+    * @since 1.8
+    */ 
+   public String walkStatistics(String regex, File directory, 
+            boolean histogram)
+   {
+      FileNameMatcher matcher;
+
+      try
+      {
+         matcher = FileNameMatcher.createRegexMatcher(this, regex);
+      }
+      catch (Exception e)
+      {
+         debug(String.format("Invalid regular expression: %s", regex), e);
+         return "";
+      }
+
+      return walkStatistics(matcher, directory, histogram);
+   }
+
+   /**
+    * Gets aggregate statistics for the files in a recursive walk,
+    * where the file basenames match the given glob pattern.
+    *
+    * @param glob glob pattern used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param histogram true if the totals for each file extension
+    * should also be included
+    * @return the statistics
+    * @since 1.8
+    */ 
+   public String walkGlobStatistics(String glob, File directory, 
+            boolean histogram)
+   {
+      FileNameMatcher matcher = createGlobMatcher(glob);
+
+      if (matcher == null)
+      {
+         return "";
+      }
+
+      return walkStatistics(matcher, directory, histogram);
+   }
+
+   /**
+    * Gets aggregate statistics for the files in a recursive walk
+    * using the given file name filter.
+    *
+    * @param matcher used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param histogram true if the totals for each file extension
+    * should also be included
+    * @return the statistics
+    * @since 1.8
+    */ 
+   public String walkStatistics(FileNameMatcher matcher, File directory,
+            boolean histogram)
+   {
+      StringBuilder builder = new StringBuilder();
+
+      try
+      {
+         writeWalkStatistics(builder, matcher, directory, histogram);
+      }
+      catch (IOException e)
+      {
+         debug(String.format("Can't walk directory: %s",
+           directory.toString()), e);
+         return "";
+      }
+
+      return builder.toString();
+   }
+
+   /**
+    * Writes aggregate statistics for the files in a recursive walk
+    * using the given file name filter. The files aren't collected
+    * or sorted, so the memory used doesn't depend on the number of
+    * files. This method requires the java.nio.file library, which
+    * was introduced in Java 7, so this needs to be overridden by
+    * TeXOSQueryJRE7 and TeXOSQueryJRE8.
+    *
+    * @param out the output
+    * @param matcher used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param histogram true if the totals for each file extension
+    * should also be included
+    * @throws IOException if the output can't be written
+    * @since 1.8
+    */ 
+   public void writeWalkStatistics(Appendable out, 
+            FileNameMatcher matcher, File directory, boolean histogram)
+     throws IOException
+   {
+      debug("walk requires at least JRE 7 version");
+   }
+
+   /**
+    * Gets a single digest for the files in a recursive walk,
+    * where the file basenames match the given regular expression.
+    * The same files are included as for
+    * walk(String,String,File,FileSortSpec) but they aren't listed.
+    *
+    * @param regex regular expression used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param content true if the file contents should be read
+    * rather than just their sizes and modification dates
+    * @return the digest as upper case hexadecimal digits
+    * @since 1.8
+    */ 
+   public String walkDigest(String regex, File directory, boolean content)
+   {
+      FileNameMatcher matcher;
+
+      try
+      {
+         matcher = FileNameMatcher.createRegexMatcher(this, regex);
+      }
+      catch (Exception e)
+      {
+         debug(String.format("Invalid regular expression: %s", regex), e);
+         return "";
+      }
+
+      return walkDigest(matcher, directory, content);
+   }
+
+   /**
+    * Gets a single digest for the files in a recursive walk,
+    * where the file basenames match the given glob pattern.
+    *
+    * @param glob glob pattern used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param content true if the file contents should be read
+    * rather than just their sizes and modification dates
+    * @return the digest as upper case hexadecimal digits
+    * @since 1.8
+    */ 
+   public String walkGlobDigest(String glob, File directory, boolean content)
+   {
+      FileNameMatcher matcher = createGlobMatcher(glob);
+
+      if (matcher == null)
+      {
+         return "";
+      }
+
+      return walkDigest(matcher, directory, content);
+   }
+
+   /**
+    * Gets a single digest for the files in a recursive walk
+    * using the given file name filter.
+    *
+    * @param matcher used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param content true if the file contents should be read
+    * rather than just their sizes and modification dates
+    * @return the digest as upper case hexadecimal digits
+    * @since 1.8
+    */ 
+   public String walkDigest(FileNameMatcher matcher, File directory,
+            boolean content)
+   {
+      StringBuilder builder = new StringBuilder();
+
+      try
+      {
+         writeWalkDigest(builder, matcher, directory, content);
+      }
+      catch (IOException e)
+      {
+         debug(String.format("Can't walk directory: %s",
+           directory.toString()), e);
+         return "";
+      }
+
+      return builder.toString();
+   }
+
+   /**
+    * Writes a single digest for the files in a recursive walk
+    * using the given file name filter. Each directory's digest is
+    * computed from the names of its files and sub-directories
+    * together with the size and modification date (or the content
+    * digest) of each file and the digest of each sub-directory, so
+    * the result changes if any of the files found by the walk
+    * change. This method requires the java.nio.file library, which
+    * was introduced in Java 7, so this needs to be overridden by
+    * TeXOSQueryJRE7 and TeXOSQueryJRE8.
+    *
+    * @param out the output
+    * @param matcher used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param content true if the file contents should be read
+    * rather than just their sizes and modification dates
+    * @throws IOException if the output can't be written
+    * @since 1.8
+    */ 
+   public void writeWalkDigest(Appendable out, 
+            FileNameMatcher matcher, File directory, boolean content)
+     throws IOException
+   {
+      debug("walk requires at least JRE 7 version");
+   }
+
+   /**
+    * Parses the optional mode argument of the walk digest actions.
+    * @param arg the argument (may be null)
+    * @return true if the file contents should be read
+    * @throws IllegalArgumentException if the argument is invalid
+    * @since 1.8
+    */ 
+   public static boolean isDigestContentMode(String arg)
+   {
+      if (arg == null || arg.equals("meta"))
+      {
+         return false;
+      }
+
+      if (arg.equals("content"))
+      {
+         return true;
+      }
+
+      throw new IllegalArgumentException(
+        "Invalid digest mode: "+arg);
+   }
+
+   /**
+    * Parses the optional histogram argument of the walk
+    * statistics actions.
+    * @param arg the argument (may be null)
+    * @return true if the totals for each file extension are
+    * required
+    * @throws IllegalArgumentException if the argument is invalid
+    * @since 1.8
+    */ 
+   public static boolean isStatisticsHistogram(String arg)
+   {
+      if (arg == null || arg.equals("none"))
+      {
+         return false;
+      }
+
+      if (arg.equals("ext"))
+      {
+         return true;
+      }
+
+      throw new IllegalArgumentException(
+        "Invalid statistics mode: "+arg);
+   }
+
+    /**
+     * Gets the file URI. 
+     * @param file The file.
+     * @return The URI.
+     */
+   public String fileURI(File file)
+   {
+      if (file == null)
+      {
+         // This shouldn't happen, but just in case...
+         debug("null file passed to fileURI");
+         return "";
+      }
+
+      if (!file.exists())
+      {
+         debug(String.format("can't obtain URI of file (no such file): %s",
+            file.toString()));
+         return "";
+      }
+        
+      if (!isReadPermitted(file))
+      {
+         debug(String.format("No read access for file: %s", file));
+         return "";
+      }
+        
+      try
+      {
+         String uri = file.getCanonicalFile().toURI().toString();
+
+         if (stripURIPrefix != null && uri.startsWith("file:/"+stripURIPrefix))
+         {
+            uri = "file:/"+uri.substring(6+stripURIPrefix.length());
+         }
+         else if (uriRegExp != null && uriReplacement != null)
+         {
+            uri = uri.replaceFirst(uriRegExp, uriReplacement);
+         }
+
+         return escapeFileName(uri);
+      }
+      catch (Exception exception)
+      {
+         debug(String.format("Can't obtain URI of file: %s", file.toString()),
+          exception);
+      }
+
+      // Unsuccessful
+      return "";
+    }
+
+    /**
+     * Gets the full TeX file path name from File object.
+     * @param file The file.
+     * @return The path.
+     */
+   public String filePath(File file)
+   {
+      if (file == null)
+      {
+         // This shouldn't happen, but just in case...
+         debug("null file passed to filePath");
+         return "";
+      }
+
+      if (!file.exists())
+      {
+         debug(String.format(
+           "Can't obtain full file path (no such file): %s",
+           file.toString()));
+         return "";
+      }
+
+      if (!isReadPermitted(file))
+      {
+          debug(String.format(
+            "Can't obtain full file path (no read access): %s",
+            file.toString()));
+          return "";
+      }
+
+      try
+      {
+         return toTeXPath(file.getCanonicalPath());
+      }
+      catch (Exception exception)
+      {
+         debug(String.format(
+           "Can't obtain full path for file: %s", file.toString()),
+            exception);
+      }
+
+      // Unsuccessful
+      return "";
+    }
+
+    /**
+     * Gets the path for the file's parent.
+     * @param file The file.
+     * @return The path.
+     * @since 1.1
+     */
+   public String parentPath(File file)
+   {
+      if (file == null)
+      {
+         // This shouldn't happen, but just in case...
+         debug("null file passed to filePath");
+         return "";
+      }
+
+      if (!file.exists())
+      {
+         debug(String.format(
+           "Can't obtain full parent path for file (no such file): %s",
+           file.toString()));
+         return "";
+      }
+
+      if (!isReadPermitted(file))
+      {
+          debug(String.format(
+            "Can't obtain full path for file (no read access): %s",
+            file.toString()));
+          return "";
+      }
+
+      try
+      {
+         File parent = file.getCanonicalFile().getParentFile();
+
+         if (parent == null)
+         {
+            // No parent? If getCanonicalFile fails it throws an
+            // exception, so no parent would presumably mean the
+            // file's in the root directory.
+
+            debug(String.format(
+              "No parent found for file: %s", file.toString()));
+            return "";
+         }
+
+         return toTeXPath(parent.getAbsolutePath());
+
+      } 
+      catch (Exception exception)
+      {
+         debug(String.format(
+           "Can't obtain full parent path for file: %s", file.toString()),
+           exception);
+      }
+
+      // Unsuccessful
+      return "";
+   }
+
+   /**
+    * Gets the script for the given locale. Java only introduced
+    * support for language scripts in version 1.7, so this returns
+    * null here. The Java 7 and 8 support needs to override this method.
+    * @param locale The locale
+    * @return The language script associated with the given locale or 
+    * null if not available
+    * @since 1.2
+    */ 
+   public String getScript(Locale locale)
+   {
+      return null;
+   }
+
+   /**
+    * Gets the language tag for the given locale.
+    * @param locale The locale or null for the default locale
+    * @return The language tag
+    * @since 1.2
+    */ 
+   public String getLanguageTag(Locale locale)
+   {
+      if (locale == null)
+      {
+         locale = Locale.getDefault();
+      }
+
+      String tag = locale.getLanguage();
+
+      String country = locale.getCountry();
+
+      if (country != null && !"".equals(country))
+      {
+         tag = String.format("%s-%s", tag, country);
+      }
+
+      String variant = locale.getVariant();
+
+      if (variant != null && !"".equals(variant))
+      {
+         tag = String.format("%s-%s", tag, variant);
+      }
+
+      return tag;
+   }
+
+    /**
+     * Gets a string representation of the provided locale.
+     * @param locale The provided locale.
+     * @return String representation.
+     */
+   public String getLocale(Locale locale)
+   {
+      return getLocale(locale, false);
+   }
+
+    /**
+     * Gets a POSIX representation of the provided locale, converting the code
+     * set if possible. If the boolean argument is true, this
+     * attempts to convert the code set to a identifier that stands
+     * a better chance of being recognised by inputenc.sty. For
+     * example, UTF-8 will be converted to utf8. None of TeX's
+     * special characters should occur in any of the locale
+     * information, but we'd better treat it like a file name just in
+     * case.
+     * @param locale The provided locale.
+     * @param convertCodeset Boolean value to convert the code set.
+     * @return String representation.
+     */
+   public String getLocale(Locale locale, boolean convertCodeset)
+   {
+      String identifier = "";
+
+      if (locale == null)
+      {
+         // No locale provided, return empty string
+         debug("null locale");
+         return "";
+      }
+
+      String language = locale.getLanguage();
+
+      if (language == null)
+      {
+          // No language provided for the locale. The language
+          // part will be omitted from the returned string.
+         debug(String.format("No language for locale: %s", locale.toString()));
+      }
+      else
+      {
+         identifier = language;
+      }
+
+      String country = locale.getCountry();
+
+      if (country == null || "".equals(country))
+      {
+         // No country is associated with the locale. The
+         // country part will be omitted from the returned
+         // string. This is just information, not an error.
+
+         info(String.format("No region for locale: %s", locale.toString()));
+      }
+      else
+      {
+         if ("".equals(identifier))
+         {
+            // The identifier hasn't been set (no language
+            // provided), so just set it to the country code.
+            identifier = country;
+         }
+         else
+         {
+            // Append the country code to the identifier.
+            identifier = identifier.concat("-").concat(country);
+         }
+      }
+
+      String codeset = getCodeSet(convertCodeset);
+
+      identifier = identifier.concat(".").concat(codeset);
+
+      // Find the script if available. This is used as the modifier part
+      // but it's better to use a language tag if the script is
+      // needed.
+
+      String script = getScript(locale);
+
+      if (script == null || "".equals(script))
+      {
+         // Script information is missing. Ignore it.
+         // This is just an advisory message.
+
+         info(String.format("No script available for locale: %s",
+             locale.toString()));
+      }
+      else
+      {
+         // Append the script. This will be a four letter string 
+         // (if it's not empty).
+         identifier = identifier.concat("@").concat(script);
+      }
+
+      return escapeFileName(identifier);
+   }
+
+   /**
+    * Gets default file encoding. (Don't escape it here or it will cause
+    * a problem when called in getLocale.)
+    * @param convertCodeset If true convert codeset to fit
+    * inputenc.sty
+    * @return the file encoding.
+    * @since 1.2
+    */ 
+   public String getCodeSet(boolean convertCodeset)
+   {
+      String codeset;
+
+      if (fileEncoding != null)
+      {
+         codeset = fileEncoding;
+      }
+      else
+      {
+         // Get the OS default file encoding or "UTF-8" if not set.
+
+         codeset = getSystemProperty("file.encoding", "UTF-8");
+
+         // The codeset should not be null here as a default has
+         // been provided if the property is missing.
+      }
+
+      if (convertCodeset)
+      {
+         // If conversion is required, change to lower case
+         // and remove any hyphens.
+         codeset = codeset.toLowerCase().replaceAll("-", "");
+      }
+
+      return codeset;
+   }
+
+   /**
+    * Gets the two-letter alpha region code from the numeric code.
+    * (Java doesn't seem to recognise the numeric codes.)
+    * @param ISO 3166-1 numeric code
+    * @return ISO 3166-1 alpha code
+    * @since 1.2
+    */ 
+   public String getRegionAlpha2Code(int code)
+   {
+      switch (code)
+      {
+         case 4: return "AF";
+         case 8: return "AL";
+         case 10: return "AQ";
+         case 12: return "DZ";
+         case 16: return "AS";
+         case 20: return "AD";
+         case 24: return "AO";
+         case 28: return "AG";
+         case 31: return "AZ";
+         case 32: return "AR";
+         case 36: return "AU";
+         case 40: return "AT";
+         case 44: return "BS";
+         case 48: return "BH";
+         case 50: return "BD";
+         case 51: return "AM";
+         case 52: return "BB";
+         case 56: return "BE";
+         case 60: return "BM";
+         case 64: return "BT";
+         case 68: return "BO";
+         case 70: return "BA";
+         case 72: return "BW";
+         case 74: return "BV";
+         case 76: return "BR";
+         case 84: return "BZ";
+         case 86: return "IO";
+         case 90: return "SB";
+         case 92: return "VG";
+         case 96: return "BN";
+         case 100: return "BG";
+         case 104: return "MM";
+         case 108: return "BI";
+         case 112: return "BY";
+         case 116: return "KH";
+         case 120: return "CM";
+         case 124: return "CA";
+         case 132: return "CV";
+         case 136: return "KY";
+         case 140: return "CF";
+         case 144: return "LK";
+         case 148: return "TD";
+         case 152: return "CL";
+         case 156: return "CN";
+         case 158: return "TW";
+         case 162: return "CX";
+         case 166: return "CC";
+         case 170: return "CO";
+         case 174: return "KM";
+         case 175: return "YT";
+         case 178: return "CG";
+         case 180: return "CD";
+         case 184: return "CK";
+         case 188: return "CR";
+         case 191: return "HR";
+         case 192: return "CU";
          case 196: return "CY";
          case 203: return "CZ";
          case 204: return "BJ";
@@ -3751,6 +6433,102 @@ public class TeXOSQuery implements Serializable
 
       System.out.println();
 
+      System.out.println("--threads <n>");
+      System.out.println("\tUse at most <n> threads for walks and other");
+      System.out.println("\tconcurrent file operations. If <n> is 0,");
+      System.out.println("\tthe number of available processors is used");
+      System.out.println("\t(default).");
+
+      System.out.println();
+
+      System.out.println("--max-depth <n>");
+      System.out.println("\tWalks don't descend more than <n> levels.");
+      System.out.println("\tIf <n> is 1, only files in the starting");
+      System.out.println("\tdirectory are included. If <n> is 0, there's");
+      System.out.println("\tno limit (default).");
+
+      System.out.println();
+
+      System.out.println("--exclude-dir <glob>");
+      System.out.println("\tWalks skip any sub-directory whose name matches");
+      System.out.println("\t<glob>. May be used multiple times. Patterns");
+      System.out.println(String.format(
+                         "\tlisted in a %s file in the", WALK_IGNORE_FILE));
+      System.out.println("\tstarting directory are also excluded.");
+
+      System.out.println();
+
+      System.out.println("--noexclude-dir");
+      System.out.println("\tCancel the effect of --exclude-dir.");
+
+      System.out.println();
+
+      System.out.println("--walk-index");
+      System.out.println("\tKeep an index of each walk, so that later");
+      System.out.println("\twalks from the same directory only need to");
+      System.out.println("\tread modified directories. The index is saved");
+      System.out.println("\tin TEXMFOUTPUT, if set, or the current directory.");
+
+      System.out.println();
+
+      System.out.println("--nowalk-index");
+      System.out.println("\tDon't use a walk index (default).");
+
+      System.out.println();
+
+      System.out.println("--digest-cache");
+      System.out.println("\tKeep a cache of file digests, so that unchanged");
+      System.out.println("\tfiles don't need to be read again. The cache is");
+      System.out.println("\tsaved in TEXMFOUTPUT, if set, or the current directory.");
+
+      System.out.println();
+
+      System.out.println("--nodigest-cache");
+      System.out.println("\tDon't use a digest cache (default).");
+
+      System.out.println();
+
+      System.out.println("--newer-than <file or date>");
+      System.out.println("\tListings and walks only include files modified");
+      System.out.println("\tafter <file> or after the PDF date-time <date>");
+      System.out.println("\t(which must start with D:).");
+
+      System.out.println();
+
+      System.out.println("--older-than <file or date>");
+      System.out.println("\tListings and walks only include files modified");
+      System.out.println("\tbefore <file> or before the PDF date-time <date>.");
+
+      System.out.println();
+
+      System.out.println("--min-size <bytes>");
+      System.out.println("\tListings and walks only include files that are");
+      System.out.println("\tat least <bytes> in size. (Directories aren't");
+      System.out.println("\tchecked.)");
+
+      System.out.println();
+
+      System.out.println("--max-size <bytes>");
+      System.out.println("\tListings and walks only include files that are");
+      System.out.println("\tat most <bytes> in size. (Directories aren't");
+      System.out.println("\tchecked.)");
+
+      System.out.println();
+
+      System.out.println("--deadline <ms>");
+      System.out.println("\tStop walks, listings, sorts and time zone queries");
+      System.out.println("\tonce <ms> milliseconds have passed since the");
+      System.out.println("\tfirst action started. The partial result is");
+      System.out.println("\tfollowed by \\ftrn. (0 means no limit, default.)");
+
+      System.out.println();
+
+      System.out.println("--action-deadline <ms>");
+      System.out.println("\tAs --deadline but the time is measured from the");
+      System.out.println("\tstart of each action.");
+
+      System.out.println();
+
       System.out.println("--strip-path-prefix <prefix> or -sp <prefix>");
       System.out.println("\tStrip the given prefix from returned path names.");
       System.out.println("\tCan't be used with --replace-path.");
@@ -3864,9 +6642,111 @@ public class TeXOSQuery implements Serializable
          }
          else
          {
-            System.out.println(info);
+            System.out.println(info);
+         }
+      }
+   }
+
+    /**
+     * Performs the action and prints the result with optional
+     * grouping. The result is written to STDOUT as it's obtained,
+     * so actions that write their result as they go don't need to
+     * hold the whole result in memory.
+     * @param numActions Add grouping if number of actions &gt; 1
+     * @param action The action
+     * @throws IOException if the output can't be written
+     * @since 1.8
+     */ 
+   protected void print(int numActions, QueryAction action)
+     throws IOException
+   {
+      // version 1.0 didn't use grouping
+      boolean group = (compatible != 0 && numActions > 1);
+
+      OutputBuffer out = new OutputBuffer(System.out);
+
+      if (group)
+      {
+         out.append('{');
+      }
+
+      action.doAction(compatible, out);
+
+      boolean expired = (deadline != null && deadline.hasExpired());
+
+      if (expired || truncated)
+      {
+         info(String.format(expired ? "Deadline reached, result truncated: %s"
+            : "Action stopped early, result truncated: %s",
+           action.getInvokedName()));
+
+         if (compatible >= 2)
+         {
+            out.append(TRUNCATED_MARKER);
+         }
+      }
+
+      if (group)
+      {
+         out.append('}');
+      }
+
+      out.flush();
+
+      System.out.println();
+   }
+
+   /**
+    * Buffer that's written to a print stream whenever it's full.
+    * This keeps the memory bounded for long results without
+    * writing each small piece separately.
+    * @since 1.8
+    */ 
+   private static class OutputBuffer implements Appendable
+   {
+      OutputBuffer(PrintStream stream)
+      {
+         this.stream = stream;
+      }
+
+      public Appendable append(CharSequence csq)
+      {
+         builder.append(csq);
+         checkFull();
+         return this;
+      }
+
+      public Appendable append(CharSequence csq, int start, int end)
+      {
+         builder.append(csq, start, end);
+         checkFull();
+         return this;
+      }
+
+      public Appendable append(char c)
+      {
+         builder.append(c);
+         checkFull();
+         return this;
+      }
+
+      private void checkFull()
+      {
+         if (builder.length() >= BUFFER_SIZE)
+         {
+            flush();
          }
       }
+
+      public void flush()
+      {
+         stream.print(builder);
+         builder.setLength(0);
+      }
+
+      private PrintStream stream;
+      private StringBuilder builder = new StringBuilder(BUFFER_SIZE);
+      private static final int BUFFER_SIZE=8192;
    }
 
    /**
@@ -4113,34 +6993,316 @@ public class TeXOSQuery implements Serializable
                 "Options must come before actions. Found option: %s", args[i]));
             }
 
-            if (stripFilePrefix != null)
+            if (stripFilePrefix != null)
+            {
+               throw new IllegalArgumentException(String.format(
+                 "Option clash: --strip-path-prefix and %s", args[i]));
+            }
+
+            i = parseArgVal(args, i, argVal);
+
+            pathRegExp = (String)argVal[1];
+
+            if (pathRegExp == null)
+            {
+               throw new IllegalArgumentException(String.format(
+                 "<regex> <replacement> expected after: %s", args[i]));
+            }
+
+            i = parseArgVal(args, i, argVal);
+
+            pathReplacement = (String)argVal[1];
+
+            if (pathReplacement == null)
+            {
+               throw new IllegalArgumentException(String.format(
+                 "<replacement> expected after: %s %s", args[i], pathRegExp));
+            }
+
+         }
+         else if (isArg(args[i], "noreplace-path"))
+         {
+            if (actions.size() > 0)
+            {
+               throw new IllegalArgumentException(String.format(
+                "Options must come before actions. Found option: %s", args[i]));
+            }
+
+            pathRegExp = null;
+            pathReplacement = null;
+         }
+         else if (isArg(args[i], "su", "strip-uri-prefix"))
+         {
+            if (actions.size() > 0)
+            {
+               throw new IllegalArgumentException(String.format(
+                "Options must come before actions. Found option: %s", args[i]));
+            }
+
+            if (uriRegExp != null)
+            {
+               throw new IllegalArgumentException(String.format(
+                 "Option clash: %s and --replace-uri", args[i]));
+            }
+
+            i = parseArgVal(args, i, argVal);
+
+            if (argVal[1] == null)
+            {
+               throw new IllegalArgumentException(String.format(
+                 "<prefix> expected after: %s", args[i]));
+            }
+
+            stripURIPrefix = (String)argVal[1];
+         }
+         else if (isArg(args[i], "nostrip-uri-prefix"))
+         {
+            if (actions.size() > 0)
+            {
+               throw new IllegalArgumentException(String.format(
+                "Options must come before actions. Found option: %s", args[i]));
+            }
+
+            stripURIPrefix = null;
+         }
+         else if (isArg(args[i], "ru", "replace-uri"))
+         {
+            if (actions.size() > 0)
+            {
+               throw new IllegalArgumentException(String.format(
+                "Options must come before actions. Found option: %s", args[i]));
+            }
+
+            if (stripURIPrefix != null)
+            {
+               throw new IllegalArgumentException(String.format(
+                 "Option clash: --strip-uri-prefix and %s", args[i]));
+            }
+
+            i = parseArgVal(args, i, argVal);
+
+            uriRegExp = (String)argVal[1];
+
+            if (uriRegExp == null)
+            {
+               throw new IllegalArgumentException(String.format(
+                 "<regex> <replacement> expected after: %s", args[i]));
+            }
+
+            i = parseArgVal(args, i, argVal);
+
+            uriReplacement = (String)argVal[1];
+
+            if (uriReplacement == null)
+            {
+               throw new IllegalArgumentException(String.format(
+                 "<replacement> expected after: %s %s", args[i], uriRegExp));
+            }
+
+         }
+         else if (isArg(args[i], "noreplace-uri"))
+         {
+            if (actions.size() > 0)
+            {
+               throw new IllegalArgumentException(String.format(
+                "Options must come before actions. Found option: %s", args[i]));
+            }
+
+            uriRegExp = null;
+            uriReplacement = null;
+         }
+         else if (isArg(args[i], "enc", "encoding"))
+         {
+            if (actions.size() > 0)
+            {
+               throw new IllegalArgumentException(String.format(
+                "Options must come before actions. Found option: %s", args[i]));
+            }
+
+            i = parseArgVal(args, i, argVal);
+
+            if (argVal[1] == null)
+            {
+               throw new IllegalArgumentException(String.format(
+                 "<charset> expected after: %s", args[i]));
+            }
+
+            fileEncoding = (String)argVal[1];
+         }
+         else if (isArg(args[i], "threads"))
+         {
+            if (actions.size() > 0)
+            {
+               throw new IllegalArgumentException(String.format(
+                "Options must come before actions. Found option: %s", args[i]));
+            }
+
+            i = parseArgInt(args, i, argVal);
+
+            if (argVal[1] == null)
+            {
+               throw new IllegalArgumentException(String.format(
+                 "<n> expected after: %s", args[i]));
+            }
+
+            maxThreads = ((Integer)argVal[1]).intValue();
+
+            if (maxThreads < 0)
+            {
+               throw new IllegalArgumentException(String.format(
+                 "Invalid number of threads: %s", args[i]));
+            }
+         }
+         else if (isArg(args[i], "max-depth"))
+         {
+            if (actions.size() > 0)
+            {
+               throw new IllegalArgumentException(String.format(
+                "Options must come before actions. Found option: %s", args[i]));
+            }
+
+            i = parseArgInt(args, i, argVal);
+
+            if (argVal[1] == null)
+            {
+               throw new IllegalArgumentException(String.format(
+                 "<n> expected after: %s", args[i]));
+            }
+
+            walkMaxDepth = ((Integer)argVal[1]).intValue();
+
+            if (walkMaxDepth < 0)
+            {
+               throw new IllegalArgumentException(String.format(
+                 "Invalid maximum depth: %s", args[i]));
+            }
+         }
+         else if (isArg(args[i], "exclude-dir"))
+         {
+            if (actions.size() > 0)
+            {
+               throw new IllegalArgumentException(String.format(
+                "Options must come before actions. Found option: %s", args[i]));
+            }
+
+            i = parseArgVal(args, i, argVal);
+
+            if (argVal[1] == null)
+            {
+               throw new IllegalArgumentException(String.format(
+                 "<glob> expected after: %s", args[i]));
+            }
+
+            walkExcludeDirs.add((String)argVal[1]);
+         }
+         else if (isArg(args[i], "noexclude-dir"))
+         {
+            if (actions.size() > 0)
+            {
+               throw new IllegalArgumentException(String.format(
+                "Options must come before actions. Found option: %s", args[i]));
+            }
+
+            walkExcludeDirs.clear();
+         }
+         else if (isArg(args[i], "walk-index"))
+         {
+            if (actions.size() > 0)
+            {
+               throw new IllegalArgumentException(String.format(
+                "Options must come before actions. Found option: %s", args[i]));
+            }
+
+            walkIndex = true;
+         }
+         else if (isArg(args[i], "nowalk-index"))
+         {
+            if (actions.size() > 0)
+            {
+               throw new IllegalArgumentException(String.format(
+                "Options must come before actions. Found option: %s", args[i]));
+            }
+
+            walkIndex = false;
+         }
+         else if (isArg(args[i], "digest-cache"))
+         {
+            if (actions.size() > 0)
+            {
+               throw new IllegalArgumentException(String.format(
+                "Options must come before actions. Found option: %s", args[i]));
+            }
+
+            digestCache = true;
+         }
+         else if (isArg(args[i], "nodigest-cache"))
+         {
+            if (actions.size() > 0)
+            {
+               throw new IllegalArgumentException(String.format(
+                "Options must come before actions. Found option: %s", args[i]));
+            }
+
+            digestCache = false;
+         }
+         else if (isArg(args[i], "newer-than"))
+         {
+            if (actions.size() > 0)
+            {
+               throw new IllegalArgumentException(String.format(
+                "Options must come before actions. Found option: %s", args[i]));
+            }
+
+            i = parseArgVal(args, i, argVal);
+
+            if (argVal[1] == null)
+            {
+               throw new IllegalArgumentException(String.format(
+                 "<file or date> expected after: %s", args[i]));
+            }
+
+            attributeFilter.setNewerThan(
+              getReferenceTime((String)argVal[1]));
+         }
+         else if (isArg(args[i], "older-than"))
+         {
+            if (actions.size() > 0)
+            {
+               throw new IllegalArgumentException(String.format(
+                "Options must come before actions. Found option: %s", args[i]));
+            }
+
+            i = parseArgVal(args, i, argVal);
+
+            if (argVal[1] == null)
             {
                throw new IllegalArgumentException(String.format(
-                 "Option clash: --strip-path-prefix and %s", args[i]));
+                 "<file or date> expected after: %s", args[i]));
             }
 
-            i = parseArgVal(args, i, argVal);
-
-            pathRegExp = (String)argVal[1];
-
-            if (pathRegExp == null)
+            attributeFilter.setOlderThan(
+              getReferenceTime((String)argVal[1]));
+         }
+         else if (isArg(args[i], "min-size"))
+         {
+            if (actions.size() > 0)
             {
                throw new IllegalArgumentException(String.format(
-                 "<regex> <replacement> expected after: %s", args[i]));
+                "Options must come before actions. Found option: %s", args[i]));
             }
 
             i = parseArgVal(args, i, argVal);
 
-            pathReplacement = (String)argVal[1];
-
-            if (pathReplacement == null)
+            if (argVal[1] == null)
             {
                throw new IllegalArgumentException(String.format(
-                 "<replacement> expected after: %s %s", args[i], pathRegExp));
+                 "<bytes> expected after: %s", args[i]));
             }
 
+            attributeFilter.setMinSize(
+              parseSizeLimit((String)argVal[0], (String)argVal[1]));
          }
-         else if (isArg(args[i], "noreplace-path"))
+         else if (isArg(args[i], "max-size"))
          {
             if (actions.size() > 0)
             {
@@ -4148,10 +7310,18 @@ public class TeXOSQuery implements Serializable
                 "Options must come before actions. Found option: %s", args[i]));
             }
 
-            pathRegExp = null;
-            pathReplacement = null;
+            i = parseArgVal(args, i, argVal);
+
+            if (argVal[1] == null)
+            {
+               throw new IllegalArgumentException(String.format(
+                 "<bytes> expected after: %s", args[i]));
+            }
+
+            attributeFilter.setMaxSize(
+              parseSizeLimit((String)argVal[0], (String)argVal[1]));
          }
-         else if (isArg(args[i], "su", "strip-uri-prefix"))
+         else if (isArg(args[i], "deadline"))
          {
             if (actions.size() > 0)
             {
@@ -4159,23 +7329,23 @@ public class TeXOSQuery implements Serializable
                 "Options must come before actions. Found option: %s", args[i]));
             }
 
-            if (uriRegExp != null)
+            i = parseArgInt(args, i, argVal);
+
+            if (argVal[1] == null)
             {
                throw new IllegalArgumentException(String.format(
-                 "Option clash: %s and --replace-uri", args[i]));
+                 "<ms> expected after: %s", args[i]));
             }
 
-            i = parseArgVal(args, i, argVal);
+            deadlineMillis = ((Integer)argVal[1]).intValue();
 
-            if (argVal[1] == null)
+            if (deadlineMillis < 0L)
             {
                throw new IllegalArgumentException(String.format(
-                 "<prefix> expected after: %s", args[i]));
+                 "Invalid deadline: %s", args[i]));
             }
-
-            stripURIPrefix = (String)argVal[1];
          }
-         else if (isArg(args[i], "nostrip-uri-prefix"))
+         else if (isArg(args[i], "action-deadline"))
          {
             if (actions.size() > 0)
             {
@@ -4183,9 +7353,23 @@ public class TeXOSQuery implements Serializable
                 "Options must come before actions. Found option: %s", args[i]));
             }
 
-            stripURIPrefix = null;
+            i = parseArgInt(args, i, argVal);
+
+            if (argVal[1] == null)
+            {
+               throw new IllegalArgumentException(String.format(
+                 "<ms> expected after: %s", args[i]));
+            }
+
+            actionDeadlineMillis = ((Integer)argVal[1]).intValue();
+
+            if (actionDeadlineMillis < 0L)
+            {
+               throw new IllegalArgumentException(String.format(
+                 "Invalid action deadline: %s", args[i]));
+            }
          }
-         else if (isArg(args[i], "ru", "replace-uri"))
+         else if (isArg(args[i], "defenc", "default-encoding"))
          {
             if (actions.size() > 0)
             {
@@ -4193,392 +7377,745 @@ public class TeXOSQuery implements Serializable
                 "Options must come before actions. Found option: %s", args[i]));
             }
 
-            if (stripURIPrefix != null)
-            {
-               throw new IllegalArgumentException(String.format(
-                 "Option clash: --strip-uri-prefix and %s", args[i]));
-            }
+            fileEncoding = null;
+         }
+         else
+         {
+             throw new IllegalArgumentException(String.format(
+               "Unknown option: %s%nTry %s --help", args[i], name));
+         }
+      }
 
-            i = parseArgVal(args, i, argVal);
+      int numActions = actions.size();
 
-            uriRegExp = (String)argVal[1];
+      if (numActions == 0)
+      {
+         throw new IllegalArgumentException(String.format(
+           "One or more actions required.%nTry %s --help", name));
+      }
 
-            if (uriRegExp == null)
-            {
-               throw new IllegalArgumentException(String.format(
-                 "<regex> <replacement> expected after: %s", args[i]));
-            }
+      if (fileEncoding != null)
+      {
+         // new to v1.6
+         try
+         {
+            // Change the encoding of STDOUT.
+            // This is done by setting STDOUT to the original system
+            // STDOUT (FileDescription.out) within a print stream that 
+            // has the appropriate file encoding.
 
-            i = parseArgVal(args, i, argVal);
+            // (This is more useful that setting file.encoding when
+            // the Java virtual machine starts up as this can be done on
+            // a per-document basis. Otherwise it requires editing
+            // the script that invokes the JVM.)
 
-            uriReplacement = (String)argVal[1];
+            PrintStream stream = new PrintStream(
+                new FileOutputStream(FileDescriptor.out),
+                true, // auto flush
+                fileEncoding);
 
-            if (uriReplacement == null)
+            System.setOut(stream);
+         }
+         catch (UnsupportedEncodingException e)
+         {
+            throw new IllegalArgumentException("VM does not support encoding "
+             +fileEncoding, e);
+         }
+      }
+
+      // The overall deadline is measured from the start of the
+      // first action.
+
+      long startTime = System.nanoTime();
+
+      for (QueryAction action : actions)
+      {
+         deadline = FileDeadline.create(startTime, deadlineMillis, 
+           actionDeadlineMillis);
+         truncated = false;
+
+         try
+         {
+            print(numActions, action);
+         }
+         catch (Throwable e)
+         {
+            // Any errors should've been picked up by the action, 
+            // so this is most likely a runtime error that needs
+            // to be reported.
+
+            System.err.println("Fatal error: "+e.getMessage());
+
+            if (debugLevel < DEBUG_STACK_TRACE_LEVEL)
             {
-               throw new IllegalArgumentException(String.format(
-                 "<replacement> expected after: %s %s", args[i], uriRegExp));
+               System.err.println(String.format(
+                 "Use --debug %d to obtain stack trace", 
+                 DEBUG_STACK_TRACE_LEVEL));
             }
 
+            debug(String.format("Action failed: %s", action.getInvocation()),
+              e);
+            System.exit(1);
+         }
+      }
+   }
+
+   private final QueryAction[] AVAILABLE_ACTIONS = new QueryAction[]
+   {
+      new QueryAction("cwd", "c", QueryActionType.FILE_ACTION, 
+        "Display current working directory")
+      {
+         public String action()
+         {
+            return getCwd();
+         }
+      },
+      new QueryAction("userhome", "m", QueryActionType.FILE_ACTION,
+         "Display user's home directory")
+      {
+         public String action()
+         {
+            return getUserHome();
+         }
+      },
+      new QueryAction("tmpdir", "t", QueryActionType.FILE_ACTION,
+         "Display temporary directory")
+      {
+         public String action()
+         {
+            return getTmpDir();
+         }
+      },
+      new QueryAction("osname", "o", QueryActionType.GENERAL_ACTION,
+        "Display OS name")
+      {
+         public String action()
+         {
+            return getOSname();
+         }
+      },
+      new QueryAction("osversion", "r", QueryActionType.GENERAL_ACTION, 
+        "Display OS version")
+      {
+         public String action()
+         {
+            return getOSversion();
+         }
+      },
+      new QueryAction("osarch", "a", QueryActionType.GENERAL_ACTION, 
+        "Display OS architecture")
+      {
+         public String action()
+         {
+            return getOSarch();
+         }
+      },
+      new QueryAction("pdfnow", "n", QueryActionType.GENERAL_ACTION, 
+        "Display current date-time in PDF format")
+      {
+         public String action()
+         {
+            return pdfnow();
+         }
+      },
+      new QueryAction("locale", "L", QueryActionType.LOCALE_ACTION,
+         "Display POSIX locale information")
+      {
+         public String action()
+         {
+            return getLocale(Locale.getDefault());
+         }
+      },
+      new QueryAction("locale-lcs", "l", QueryActionType.LOCALE_ACTION,
+         "Display POSIX style locale information with lower case codeset")
+      {
+         public String action()
+         {
+            return getLocale(Locale.getDefault(), true);
+         }
+      },
+      new QueryAction("codeset", "cs", QueryActionType.GENERAL_ACTION, 
+         "Display the codeset", 2)
+      {// new to v1.6
+         public String action()
+         {
+            return escapeFileName(getCodeSet(false));
+         }
+      },
+      new QueryAction("codeset-lcs", "C", QueryActionType.GENERAL_ACTION, 
+         "Lower case codeset with hyphens stripped", 2)
+      {
+         public String action()
+         {
+            return escapeFileName(getCodeSet(true));
+         }
+      },
+      new QueryAction("bcp47", "b", QueryActionType.LOCALE_ACTION,
+         "Display locale as BCP47 tag", 2)
+      {
+         public String action()
+         {
+            return escapeFileName(getLanguageTag(null));
+         }
+      },
+      new QueryAction("numeric", "N", 1, 0, "[locale]",
+          QueryActionType.LOCALE_ACTION,
+          "Display locale numeric information", 2)
+      {
+         public String action()
+         {
+            return getNumericalInfo(getOptionalArgument(0));
+         }
+      },
+      new QueryAction("locale-data", "D", 1, 0, "[locale]",
+         QueryActionType.LOCALE_ACTION,
+         "Display all available locale information", 2)
+      {
+         public String action()
+         {
+            return getLocaleData(getOptionalArgument(0));
+         }
+      },
+      new QueryAction("date-time", "M", 
+         QueryActionType.GENERAL_ACTION,
+         "Display all the current date-time data", 2)
+      {
+         public String action()
+         {
+            return getDateTimeData();
          }
-         else if (isArg(args[i], "noreplace-uri"))
+      },
+      new QueryAction("time-zones", "Z", 1, 0, "[locale]",
+         QueryActionType.LOCALE_ACTION,
+         "Display all available time zone information", 2)
+      {
+         public String action()
          {
-            if (actions.size() > 0)
-            {
-               throw new IllegalArgumentException(String.format(
-                "Options must come before actions. Found option: %s", args[i]));
-            }
-
-            uriRegExp = null;
-            uriReplacement = null;
+            return getTimeZones(getOptionalArgument(0));
          }
-         else if (isArg(args[i], "enc", "encoding"))
+      },
+      new QueryAction("pdfdate", "d", 0, 1, "<file>",
+         QueryActionType.FILE_ACTION, 
+         "Display date stamp of <file> in PDF format")
+      {
+         public String action()
          {
-            if (actions.size() > 0)
-            {
-               throw new IllegalArgumentException(String.format(
-                "Options must come before actions. Found option: %s", args[i]));
-            }
-
-            i = parseArgVal(args, i, argVal);
-
-            if (argVal[1] == null)
-            {
-               throw new IllegalArgumentException(String.format(
-                 "<charset> expected after: %s", args[i]));
-            }
-
-            fileEncoding = (String)argVal[1];
+            return pdfDate(fileFromTeXPath(getRequiredArgument(0)));
          }
-         else if (isArg(args[i], "defenc", "default-encoding"))
+      },
+      new QueryAction("filesize", "s", 0, 1, "<file>",
+         QueryActionType.FILE_ACTION,
+         "Display size of <file> in bytes")
+      {
+         public String action()
          {
-            if (actions.size() > 0)
-            {
-               throw new IllegalArgumentException(String.format(
-                "Options must come before actions. Found option: %s", args[i]));
-            }
-
-            fileEncoding = null;
+            return getFileLength(fileFromTeXPath(getRequiredArgument(0)));
          }
-         else
+      },
+      new QueryAction("file-stats", "fs", 0, 1, "<files>",
+         QueryActionType.FILE_ACTION, 
+         "Display the information for each of the comma-separated <files> as a group containing 1 if the file exists and may be read (otherwise 0), the date stamp in PDF format and the size in bytes",
+         2)
+      {// new to v1.8
+         public String action()
          {
-             throw new IllegalArgumentException(String.format(
-               "Unknown option: %s%nTry %s --help", args[i], name));
+            return getFileStats(getRequiredArgument(0).split(","));
          }
-      }
-
-      int numActions = actions.size();
-
-      if (numActions == 0)
+      },
+      new QueryAction("file-hash", "fh", 1, 1, "<files> [<algorithm>]",
+         QueryActionType.FILE_ACTION, 
+         "Display the digest of each of the comma-separated <files> as a group containing upper case hexadecimal digits (empty if the file doesn't exist or may not be read). The <algorithm> may be 'md5' (default), 'sha1' or 'sha256'",
+         2)
+      {// new to v1.8
+         public String action()
+         {
+            return getFileDigests(getRequiredArgument(0).split(","),
+              FileDigest.getAlgorithm(getOptionalArgument(0)));
+         }
+      },
+      new QueryAction("file-dump", "fdu", 1, 2, "<file> <ranges> [<format>]",
+         QueryActionType.FILE_ACTION, 
+         "Display a group for each of the comma-separated <ranges> of <file>, where each range is in the form <offset>:<length>, containing the bytes as upper case hexadecimal digits. If <format> is \"esc\", the bytes are shown as escaped text with \\fbyt{<hex>} for any byte that isn't a printable ASCII character. The length of a range may not exceed "+FileDump.MAX_LENGTH,
+         2)
+      {// new to v1.8
+         public String action()
+         {
+            return getFileDump(fileFromTeXPath(getRequiredArgument(0)),
+              FileDump.parseRanges(getRequiredArgument(1)),
+              isDumpEscaped(getOptionalArgument(0)));
+         }
+      },
+      new QueryAction("list", "i", 1, 2, "<sep> <dir> [<sort>]",
+         QueryActionType.FILE_ACTION,
+         String.format("Display list of all files in <dir> separated by <sep>. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s",
+           FileSortType.getFileSortOptions()))
       {
-         throw new IllegalArgumentException(String.format(
-           "One or more actions required.%nTry %s --help", name));
-      }
+         public String action()
+         {
+            return getFileList(getRequiredArgument(0),
+              new File(fromTeXPath(getRequiredArgument(1))),
+                  getFileSortSpec(getOptionalArgument(0)),
+                  FileListType.FILE_LIST_ANY);
+         }
 
-      if (fileEncoding != null)
+         protected void writeAction(Appendable out) throws IOException
+         {
+            writeFileList(out, getRequiredArgument(0),
+              new File(fromTeXPath(getRequiredArgument(1))),
+                  getFileSortSpec(getOptionalArgument(0)),
+                  FileListType.FILE_LIST_ANY);
+         }
+      },
+      new QueryAction("filterlist", "f", 1, 3, "<sep> <regex> <dir> [<sort>]",
+         QueryActionType.FILE_ACTION, 
+         String.format("Display list of files in <dir> that fully match <regex> separated by <sep>. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s", 
+           FileSortType.getFileSortOptions()))
       {
-         // new to v1.6
-         try
+         public String action()
          {
-            // Change the encoding of STDOUT.
-            // This is done by setting STDOUT to the original system
-            // STDOUT (FileDescription.out) within a print stream that 
-            // has the appropriate file encoding.
-
-            // (This is more useful that setting file.encoding when
-            // the Java virtual machine starts up as this can be done on
-            // a per-document basis. Otherwise it requires editing
-            // the script that invokes the JVM.)
-
-            PrintStream stream = new PrintStream(
-                new FileOutputStream(FileDescriptor.out),
-                true, // auto flush
-                fileEncoding);
+            return getFilterFileList(
+                  getRequiredArgument(0), 
+                  getRequiredArgument(1), 
+                  new File(fromTeXPath(getRequiredArgument(2))),
+                  getFileSortSpec(getOptionalArgument(0)),
+                  FileListType.FILE_LIST_ANY);
+         }
 
-            System.setOut(stream);
+         protected void writeAction(Appendable out) throws IOException
+         {
+            writeFilterFileList(out,
+                  getRequiredArgument(0), 
+                  getRequiredArgument(1), 
+                  new File(fromTeXPath(getRequiredArgument(2))),
+                  getFileSortSpec(getOptionalArgument(0)),
+                  FileListType.FILE_LIST_ANY);
          }
-         catch (UnsupportedEncodingException e)
+      },
+      new QueryAction("list-long", "il", 1, 1, "<dir> [<sort>]",
+         QueryActionType.FILE_ACTION,
+         String.format("Display the entries in <dir> in long format, where each entry is a group containing {<name>}{<size>}{<date>}{<type>}. The <size> is in bytes (0 for a directory), <date> is the modification date in PDF format and <type> is f (regular file), d (directory) or o (other). If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s",
+           FileSortType.getFileSortOptions()), 2)
+      {// new to v1.8
+         public String action()
          {
-            throw new IllegalArgumentException("VM does not support encoding "
-             +fileEncoding, e);
+            return getLongFileList(".*",
+              new File(fromTeXPath(getRequiredArgument(0))),
+                  getFileSortSpec(getOptionalArgument(0)));
          }
-      }
-
-      for (QueryAction action : actions)
-      {
-         try
+      },
+      new QueryAction("filterlist-long", "fl", 1, 2, "<regex> <dir> [<sort>]",
+         QueryActionType.FILE_ACTION, 
+         String.format("As list-long but only includes the entries in <dir> that fully match <regex>. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s", 
+           FileSortType.getFileSortOptions()), 2)
+      {// new to v1.8
+         public String action()
          {
-            print(numActions, action.doAction(compatible));
+            return getLongFileList(
+                  getRequiredArgument(0), 
+                  new File(fromTeXPath(getRequiredArgument(1))),
+                  getFileSortSpec(getOptionalArgument(0)));
          }
-         catch (Throwable e)
+      },
+      new QueryAction("list-dir", "id", 1, 2, "<sep> <dir> [<sort>]",
+         QueryActionType.FILE_ACTION,
+         String.format("Display list of all sub-directories in <dir> separated by <sep>. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s",
+           FileSortType.getFileSortOptions()))
+      {
+         public String action()
          {
-            // Any errors should've been picked up by the action, 
-            // so this is most likely a runtime error that needs
-            // to be reported.
-
-            System.err.println("Fatal error: "+e.getMessage());
-
-            if (debugLevel < DEBUG_STACK_TRACE_LEVEL)
-            {
-               System.err.println(String.format(
-                 "Use --debug %d to obtain stack trace", 
-                 DEBUG_STACK_TRACE_LEVEL));
-            }
-
-            debug(String.format("Action failed: %s", action.getInvocation()),
-              e);
-            System.exit(1);
+            return getFileList(getRequiredArgument(0),
+              new File(fromTeXPath(getRequiredArgument(1))),
+                  getFileSortSpec(getOptionalArgument(0)),
+                  FileListType.FILE_LIST_DIRECTORIES_ONLY);
          }
-      }
-   }
 
-   private final QueryAction[] AVAILABLE_ACTIONS = new QueryAction[]
-   {
-      new QueryAction("cwd", "c", QueryActionType.FILE_ACTION, 
-        "Display current working directory")
+         protected void writeAction(Appendable out) throws IOException
+         {
+            writeFileList(out, getRequiredArgument(0),
+              new File(fromTeXPath(getRequiredArgument(1))),
+                  getFileSortSpec(getOptionalArgument(0)),
+                  FileListType.FILE_LIST_DIRECTORIES_ONLY);
+         }
+      },
+      new QueryAction("filterlist-dir", "fd", 1, 3, "<sep> <regex> <dir> [<sort>]",
+         QueryActionType.FILE_ACTION, 
+         String.format("Display list of sub-directories in <dir> that fully match <regex> separated by <sep>. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s", 
+           FileSortType.getFileSortOptions()))
       {
          public String action()
          {
-            return getCwd();
+            return getFilterFileList(
+                  getRequiredArgument(0), 
+                  getRequiredArgument(1), 
+                  new File(fromTeXPath(getRequiredArgument(2))),
+                  getFileSortSpec(getOptionalArgument(0)),
+                  FileListType.FILE_LIST_DIRECTORIES_ONLY);
+         }
+
+         protected void writeAction(Appendable out) throws IOException
+         {
+            writeFilterFileList(out,
+                  getRequiredArgument(0), 
+                  getRequiredArgument(1), 
+                  new File(fromTeXPath(getRequiredArgument(2))),
+                  getFileSortSpec(getOptionalArgument(0)),
+                  FileListType.FILE_LIST_DIRECTORIES_ONLY);
          }
       },
-      new QueryAction("userhome", "m", QueryActionType.FILE_ACTION,
-         "Display user's home directory")
+      new QueryAction("list-regular", "ir", 1, 2, "<sep> <dir> [<sort>]",
+         QueryActionType.FILE_ACTION,
+         String.format("Display list of all regular files in <dir> separated by <sep>. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s",
+           FileSortType.getFileSortOptions()))
       {
          public String action()
          {
-            return getUserHome();
+            return getFileList(getRequiredArgument(0),
+              new File(fromTeXPath(getRequiredArgument(1))),
+                  getFileSortSpec(getOptionalArgument(0)),
+                  FileListType.FILE_LIST_REGULAR_FILES_ONLY);
+         }
+
+         protected void writeAction(Appendable out) throws IOException
+         {
+            writeFileList(out, getRequiredArgument(0),
+              new File(fromTeXPath(getRequiredArgument(1))),
+                  getFileSortSpec(getOptionalArgument(0)),
+                  FileListType.FILE_LIST_REGULAR_FILES_ONLY);
          }
       },
-      new QueryAction("tmpdir", "t", QueryActionType.FILE_ACTION,
-         "Display temporary directory")
+      new QueryAction("filterlist-regular", "fr", 1, 3, "<sep> <regex> <dir> [<sort>]",
+         QueryActionType.FILE_ACTION, 
+         String.format("Display list of regular files in <dir> that fully match <regex> separated by <sep>. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s", 
+           FileSortType.getFileSortOptions()))
       {
          public String action()
          {
-            return getTmpDir();
+            return getFilterFileList(
+                  getRequiredArgument(0), 
+                  getRequiredArgument(1), 
+                  new File(fromTeXPath(getRequiredArgument(2))),
+                  getFileSortSpec(getOptionalArgument(0)),
+                  FileListType.FILE_LIST_REGULAR_FILES_ONLY);
+         }
+
+         protected void writeAction(Appendable out) throws IOException
+         {
+            writeFilterFileList(out,
+                  getRequiredArgument(0), 
+                  getRequiredArgument(1), 
+                  new File(fromTeXPath(getRequiredArgument(2))),
+                  getFileSortSpec(getOptionalArgument(0)),
+                  FileListType.FILE_LIST_REGULAR_FILES_ONLY);
          }
       },
-      new QueryAction("osname", "o", QueryActionType.GENERAL_ACTION,
-        "Display OS name")
-      {
+      new QueryAction("filterlist-glob", "fg", 1, 3, "<sep> <glob> <dir> [<sort>]",
+         QueryActionType.FILE_ACTION, 
+         String.format("Display list of files in <dir> that match the glob pattern <glob> separated by <sep>. This action is not available for texosquery-jre5. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s", 
+           FileSortType.getFileSortOptions()), 2)
+      {// new to v1.8
          public String action()
          {
-            return getOSname();
+            return getGlobFileList(
+                  getRequiredArgument(0), 
+                  getRequiredArgument(1), 
+                  new File(fromTeXPath(getRequiredArgument(2))),
+                  getFileSortSpec(getOptionalArgument(0)),
+                  FileListType.FILE_LIST_ANY);
+         }
+
+         protected void writeAction(Appendable out) throws IOException
+         {
+            writeGlobFileList(out,
+                  getRequiredArgument(0), 
+                  getRequiredArgument(1), 
+                  new File(fromTeXPath(getRequiredArgument(2))),
+                  getFileSortSpec(getOptionalArgument(0)),
+                  FileListType.FILE_LIST_ANY);
          }
       },
-      new QueryAction("osversion", "r", QueryActionType.GENERAL_ACTION, 
-        "Display OS version")
-      {
+      new QueryAction("filterlist-dir-glob", "fdg", 1, 3, "<sep> <glob> <dir> [<sort>]",
+         QueryActionType.FILE_ACTION, 
+         String.format("Display list of sub-directories in <dir> that match the glob pattern <glob> separated by <sep>. This action is not available for texosquery-jre5. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s", 
+           FileSortType.getFileSortOptions()), 2)
+      {// new to v1.8
          public String action()
          {
-            return getOSversion();
+            return getGlobFileList(
+                  getRequiredArgument(0), 
+                  getRequiredArgument(1), 
+                  new File(fromTeXPath(getRequiredArgument(2))),
+                  getFileSortSpec(getOptionalArgument(0)),
+                  FileListType.FILE_LIST_DIRECTORIES_ONLY);
          }
-      },
-      new QueryAction("osarch", "a", QueryActionType.GENERAL_ACTION, 
-        "Display OS architecture")
-      {
-         public String action()
+
+         protected void writeAction(Appendable out) throws IOException
          {
-            return getOSarch();
+            writeGlobFileList(out,
+                  getRequiredArgument(0), 
+                  getRequiredArgument(1), 
+                  new File(fromTeXPath(getRequiredArgument(2))),
+                  getFileSortSpec(getOptionalArgument(0)),
+                  FileListType.FILE_LIST_DIRECTORIES_ONLY);
          }
       },
-      new QueryAction("pdfnow", "n", QueryActionType.GENERAL_ACTION, 
-        "Display current date-time in PDF format")
-      {
+      new QueryAction("filterlist-regular-glob", "frg", 1, 3, "<sep> <glob> <dir> [<sort>]",
+         QueryActionType.FILE_ACTION, 
+         String.format("Display list of regular files in <dir> that match the glob pattern <glob> separated by <sep>. This action is not available for texosquery-jre5. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s", 
+           FileSortType.getFileSortOptions()), 2)
+      {// new to v1.8
          public String action()
          {
-            return pdfnow();
+            return getGlobFileList(
+                  getRequiredArgument(0), 
+                  getRequiredArgument(1), 
+                  new File(fromTeXPath(getRequiredArgument(2))),
+                  getFileSortSpec(getOptionalArgument(0)),
+                  FileListType.FILE_LIST_REGULAR_FILES_ONLY);
+         }
+
+         protected void writeAction(Appendable out) throws IOException
+         {
+            writeGlobFileList(out,
+                  getRequiredArgument(0), 
+                  getRequiredArgument(1), 
+                  new File(fromTeXPath(getRequiredArgument(2))),
+                  getFileSortSpec(getOptionalArgument(0)),
+                  FileListType.FILE_LIST_REGULAR_FILES_ONLY);
          }
       },
-      new QueryAction("locale", "L", QueryActionType.LOCALE_ACTION,
-         "Display POSIX locale information")
-      {
+      new QueryAction("filterlist-multi", "fm", 2, 3, "<sep> <regex> <dirs> [<sort>] [<mode>]",
+         QueryActionType.FILE_ACTION, 
+         String.format("Display list of files in each of the comma-separated directories <dirs> that fully match <regex> separated by <sep>. If <mode> is omitted or 'merge', the names are prefixed with their directory and returned as a single list, otherwise <mode> must be 'group' and each directory's list is grouped. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s", 
+           FileSortType.getFileSortOptions()), 2)
+      {// new to v1.8
          public String action()
          {
-            return getLocale(Locale.getDefault());
+            String mode = getOptionalArgument(1);
+            boolean merge;
+
+            if (mode == null || mode.equals("merge"))
+            {
+               merge = true;
+            }
+            else if (mode.equals("group"))
+            {
+               merge = false;
+            }
+            else
+            {
+               throw new IllegalArgumentException(
+                 "Invalid listing mode: "+mode);
+            }
+
+            return getMultiFilterFileList(
+                  getRequiredArgument(0), 
+                  getRequiredArgument(1), 
+                  getRequiredArgument(2).split(","),
+                  getFileSortSpec(getOptionalArgument(0)),
+                  merge);
          }
       },
-      new QueryAction("locale-lcs", "l", QueryActionType.LOCALE_ACTION,
-         "Display POSIX style locale information with lower case codeset")
+      new QueryAction("walk", "w", 1, 3, "<sep> <regex> <dir> [<sort>]",
+         QueryActionType.FILE_ACTION, 
+          String.format("Display list of regular non-hidden files in <dir> (descending sub-directories) that fully match <regex> separated by <sep>. The starting directory <dir> may not be outside the current working directory. This action is not available for texosquery-jre5. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s", 
+           FileSortType.getFileSortOptions()), 2)
       {
          public String action()
          {
-            return getLocale(Locale.getDefault(), true);
+            return walk(
+                  getRequiredArgument(0), 
+                  getRequiredArgument(1), 
+                  new File(fromTeXPath(getRequiredArgument(2))),
+                  getFileSortSpec(getOptionalArgument(0)));
          }
-      },
-      new QueryAction("codeset", "cs", QueryActionType.GENERAL_ACTION, 
-         "Display the codeset", 2)
-      {// new to v1.6
-         public String action()
+
+         protected void writeAction(Appendable out) throws IOException
          {
-            return escapeFileName(getCodeSet(false));
+            writeWalk(out,
+                  getRequiredArgument(0), 
+                  getRequiredArgument(1), 
+                  new File(fromTeXPath(getRequiredArgument(2))),
+                  getFileSortSpec(getOptionalArgument(0)));
          }
       },
-      new QueryAction("codeset-lcs", "C", QueryActionType.GENERAL_ACTION, 
-         "Lower case codeset with hyphens stripped", 2)
-      {
+      new QueryAction("walk-glob", "wg", 1, 3, "<sep> <glob> <dir> [<sort>]",
+         QueryActionType.FILE_ACTION, 
+          String.format("As walk but the file basenames must match the glob pattern <glob> instead of a regular expression. This action is not available for texosquery-jre5. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s", 
+           FileSortType.getFileSortOptions()), 2)
+      {// new to v1.8
          public String action()
          {
-            return escapeFileName(getCodeSet(true));
+            return walkGlob(
+                  getRequiredArgument(0), 
+                  getRequiredArgument(1), 
+                  new File(fromTeXPath(getRequiredArgument(2))),
+                  getFileSortSpec(getOptionalArgument(0)));
          }
-      },
-      new QueryAction("bcp47", "b", QueryActionType.LOCALE_ACTION,
-         "Display locale as BCP47 tag", 2)
-      {
-         public String action()
+
+         protected void writeAction(Appendable out) throws IOException
          {
-            return escapeFileName(getLanguageTag(null));
+            writeWalkGlob(out,
+                  getRequiredArgument(0), 
+                  getRequiredArgument(1), 
+                  new File(fromTeXPath(getRequiredArgument(2))),
+                  getFileSortSpec(getOptionalArgument(0)));
          }
       },
-      new QueryAction("numeric", "N", 1, 0, "[locale]",
-          QueryActionType.LOCALE_ACTION,
-          "Display locale numeric information", 2)
-      {
+      new QueryAction("walk-long", "wl", 1, 2, "<regex> <dir> [<sort>]",
+         QueryActionType.FILE_ACTION, 
+          String.format("As walk but in long format (as list-long), where the name of each file is its path relative to <dir>. This action is not available for texosquery-jre5. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s", 
+           FileSortType.getFileSortOptions()), 2)
+      {// new to v1.8
          public String action()
          {
-            return getNumericalInfo(getOptionalArgument(0));
+            return walkLong(
+                  getRequiredArgument(0), 
+                  new File(fromTeXPath(getRequiredArgument(1))),
+                  getFileSortSpec(getOptionalArgument(0)));
          }
-      },
-      new QueryAction("locale-data", "D", 1, 0, "[locale]",
-         QueryActionType.LOCALE_ACTION,
-         "Display all available locale information", 2)
-      {
-         public String action()
+
+         protected void writeAction(Appendable out) throws IOException
          {
-            return getLocaleData(getOptionalArgument(0));
+            writeWalkLong(out,
+                  getRequiredArgument(0), 
+                  new File(fromTeXPath(getRequiredArgument(1))),
+                  getFileSortSpec(getOptionalArgument(0)));
          }
       },
-      new QueryAction("date-time", "M", 
-         QueryActionType.GENERAL_ACTION,
-         "Display all the current date-time data", 2)
-      {
+      new QueryAction("walk-tree", "wt", 1, 2, "<regex> <dir> [<sort>]",
+         QueryActionType.FILE_ACTION, 
+          String.format("Display the directory structure of a walk as nested groups in the form {<files>}{<sub-directories>}, where <files> contains a group for each regular non-hidden file that fully matches <regex> and <sub-directories> contains {{<name>}{<files>}{<sub-directories>}} for each sub-directory. The same sub-directories are descended as for walk with the starting directory <dir>. The files and sub-directories in each directory are ordered according to <sort>. This action is not available for texosquery-jre5. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s", 
+           FileSortType.getFileSortOptions()), 2)
+      {// new to v1.8
          public String action()
          {
-            return getDateTimeData();
+            return walkTree(
+                  getRequiredArgument(0), 
+                  new File(fromTeXPath(getRequiredArgument(1))),
+                  getFileSortSpec(getOptionalArgument(0)));
          }
-      },
-      new QueryAction("time-zones", "Z", 1, 0, "[locale]",
-         QueryActionType.LOCALE_ACTION,
-         "Display all available time zone information", 2)
-      {
-         public String action()
+
+         protected void writeAction(Appendable out) throws IOException
          {
-            return getTimeZones(getOptionalArgument(0));
+            writeWalkTree(out,
+                  getRequiredArgument(0), 
+                  new File(fromTeXPath(getRequiredArgument(1))),
+                  getFileSortSpec(getOptionalArgument(0)));
          }
       },
-      new QueryAction("pdfdate", "d", 0, 1, "<file>",
+      new QueryAction("walk-glob-tree", "wgt", 1, 2, "<glob> <dir> [<sort>]",
          QueryActionType.FILE_ACTION, 
-         "Display date stamp of <file> in PDF format")
-      {
+          String.format("As walk-tree but the file basenames must match the glob pattern <glob> instead of a regular expression. This action is not available for texosquery-jre5. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s", 
+           FileSortType.getFileSortOptions()), 2)
+      {// new to v1.8
          public String action()
          {
-            return pdfDate(fileFromTeXPath(getRequiredArgument(0)));
+            return walkGlobTree(
+                  getRequiredArgument(0), 
+                  new File(fromTeXPath(getRequiredArgument(1))),
+                  getFileSortSpec(getOptionalArgument(0)));
          }
-      },
-      new QueryAction("filesize", "s", 0, 1, "<file>",
-         QueryActionType.FILE_ACTION,
-         "Display size of <file> in bytes")
-      {
-         public String action()
+
+         protected void writeAction(Appendable out) throws IOException
          {
-            return getFileLength(fileFromTeXPath(getRequiredArgument(0)));
+            writeWalkGlobTree(out,
+                  getRequiredArgument(0), 
+                  new File(fromTeXPath(getRequiredArgument(1))),
+                  getFileSortSpec(getOptionalArgument(0)));
          }
       },
-      new QueryAction("list", "i", 1, 2, "<sep> <dir> [<sort>]",
-         QueryActionType.FILE_ACTION,
-         String.format("Display list of all files in <dir> separated by <sep>. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s",
-           FileSortType.getFileSortOptions()))
-      {
+      new QueryAction("walk-path", "wp", 1, 3, "<sep> <regex> <dir> [<sort>]",
+         QueryActionType.FILE_ACTION, 
+          String.format("As walk but the path of each file relative to <dir> (using / as the directory divider) must fully match <regex>. Sub-directories that can't contain a match aren't descended. This action is not available for texosquery-jre5. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s", 
+           FileSortType.getFileSortOptions()), 2)
+      {// new to v1.8
          public String action()
          {
-            return getFileList(getRequiredArgument(0),
-              new File(fromTeXPath(getRequiredArgument(1))),
-                  FileSortType.getFileSortType(getOptionalArgument(0)),
-                  FileListType.FILE_LIST_ANY);
+            return walkPath(
+                  getRequiredArgument(0), 
+                  getRequiredArgument(1), 
+                  new File(fromTeXPath(getRequiredArgument(2))),
+                  getFileSortSpec(getOptionalArgument(0)));
+         }
+
+         protected void writeAction(Appendable out) throws IOException
+         {
+            writeWalkPath(out,
+                  getRequiredArgument(0), 
+                  getRequiredArgument(1), 
+                  new File(fromTeXPath(getRequiredArgument(2))),
+                  getFileSortSpec(getOptionalArgument(0)));
          }
       },
-      new QueryAction("filterlist", "f", 1, 3, "<sep> <regex> <dir> [<sort>]",
+      new QueryAction("walk-path-glob", "wpg", 1, 3, "<sep> <glob> <dir> [<sort>]",
          QueryActionType.FILE_ACTION, 
-         String.format("Display list of files in <dir> that fully match <regex> separated by <sep>. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s", 
-           FileSortType.getFileSortOptions()))
-      {
+          String.format("As walk-path but with the glob pattern <glob> instead of a regular expression. A path element that's just ** matches any number of sub-directories. This action is not available for texosquery-jre5. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s", 
+           FileSortType.getFileSortOptions()), 2)
+      {// new to v1.8
          public String action()
          {
-            return getFilterFileList(
+            return walkPathGlob(
                   getRequiredArgument(0), 
                   getRequiredArgument(1), 
                   new File(fromTeXPath(getRequiredArgument(2))),
-                  FileSortType.getFileSortType(getOptionalArgument(0)),
-                  FileListType.FILE_LIST_ANY);
+                  getFileSortSpec(getOptionalArgument(0)));
          }
-      },
-      new QueryAction("list-dir", "id", 1, 2, "<sep> <dir> [<sort>]",
-         QueryActionType.FILE_ACTION,
-         String.format("Display list of all sub-directories in <dir> separated by <sep>. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s",
-           FileSortType.getFileSortOptions()))
-      {
-         public String action()
+
+         protected void writeAction(Appendable out) throws IOException
          {
-            return getFileList(getRequiredArgument(0),
-              new File(fromTeXPath(getRequiredArgument(1))),
-                  FileSortType.getFileSortType(getOptionalArgument(0)),
-                  FileListType.FILE_LIST_DIRECTORIES_ONLY);
+            writeWalkPathGlob(out,
+                  getRequiredArgument(0), 
+                  getRequiredArgument(1), 
+                  new File(fromTeXPath(getRequiredArgument(2))),
+                  getFileSortSpec(getOptionalArgument(0)));
          }
       },
-      new QueryAction("filterlist-dir", "fd", 1, 3, "<sep> <regex> <dir> [<sort>]",
+      new QueryAction("walk-stats", "ws", 1, 2, "<regex> <dir> [<mode>]",
          QueryActionType.FILE_ACTION, 
-         String.format("Display list of sub-directories in <dir> that fully match <regex> separated by <sep>. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s", 
-           FileSortType.getFileSortOptions()))
-      {
+          "Display statistics for the files that would be listed by walk with the regular expression <regex> and starting directory <dir> in the form {<count>}{<bytes>}{<newest>}{<oldest>} where <newest> and <oldest> are the newest and oldest modification dates in PDF format. If <mode> is \"ext\", this is followed by a group containing {{<ext>}{<count>}{<bytes>}} for each file extension. If <mode> is omitted or \"none\", the extension totals are omitted. This action is not available for texosquery-jre5.", 2)
+      {// new to v1.8
          public String action()
          {
-            return getFilterFileList(
+            return walkStatistics(
                   getRequiredArgument(0), 
-                  getRequiredArgument(1), 
-                  new File(fromTeXPath(getRequiredArgument(2))),
-                  FileSortType.getFileSortType(getOptionalArgument(0)),
-                  FileListType.FILE_LIST_DIRECTORIES_ONLY);
+                  new File(fromTeXPath(getRequiredArgument(1))),
+                  isStatisticsHistogram(getOptionalArgument(0)));
          }
       },
-      new QueryAction("list-regular", "ir", 1, 2, "<sep> <dir> [<sort>]",
-         QueryActionType.FILE_ACTION,
-         String.format("Display list of all regular files in <dir> separated by <sep>. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s",
-           FileSortType.getFileSortOptions()))
-      {
+      new QueryAction("walk-glob-stats", "wgs", 1, 2, "<glob> <dir> [<mode>]",
+         QueryActionType.FILE_ACTION, 
+          "As walk-stats but the file basenames must match the glob pattern <glob> instead of a regular expression. This action is not available for texosquery-jre5.", 2)
+      {// new to v1.8
          public String action()
          {
-            return getFileList(getRequiredArgument(0),
-              new File(fromTeXPath(getRequiredArgument(1))),
-                  FileSortType.getFileSortType(getOptionalArgument(0)),
-                  FileListType.FILE_LIST_REGULAR_FILES_ONLY);
+            return walkGlobStatistics(
+                  getRequiredArgument(0), 
+                  new File(fromTeXPath(getRequiredArgument(1))),
+                  isStatisticsHistogram(getOptionalArgument(0)));
          }
       },
-      new QueryAction("filterlist-regular", "fr", 1, 3, "<sep> <regex> <dir> [<sort>]",
+      new QueryAction("walk-digest", "wd", 1, 2, "<regex> <dir> [<mode>]",
          QueryActionType.FILE_ACTION, 
-         String.format("Display list of regular files in <dir> that fully match <regex> separated by <sep>. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s", 
-           FileSortType.getFileSortOptions()))
-      {
+          "Display a single MD5 digest for the files that would be listed by walk with the regular expression <regex> and starting directory <dir>. If <mode> is omitted or \"meta\", each file contributes its relative path, size and modification date. If <mode> is \"content\", each file contributes its relative path and the digest of its contents, and the result is followed by \\ftrn if any file can't be read. This action is not available for texosquery-jre5.", 2)
+      {// new to v1.8
          public String action()
          {
-            return getFilterFileList(
+            return walkDigest(
                   getRequiredArgument(0), 
-                  getRequiredArgument(1), 
-                  new File(fromTeXPath(getRequiredArgument(2))),
-                  FileSortType.getFileSortType(getOptionalArgument(0)),
-                  FileListType.FILE_LIST_REGULAR_FILES_ONLY);
+                  new File(fromTeXPath(getRequiredArgument(1))),
+                  isDigestContentMode(getOptionalArgument(0)));
          }
       },
-      new QueryAction("walk", "w", 1, 3, "<sep> <regex> <dir> [<sort>]",
+      new QueryAction("walk-glob-digest", "wgd", 1, 2, "<glob> <dir> [<mode>]",
          QueryActionType.FILE_ACTION, 
-          String.format("Display list of regular non-hidden files in <dir> (descending sub-directories) that fully match <regex> separated by <sep>. The starting directory <dir> may not be outside the current working directory. This action is not available for texosquery-jre5. If <sort> is omitted, the default order is used otherwise <sort> may be one of the following: %s", 
-           FileSortType.getFileSortOptions()), 2)
-      {
+          "As walk-digest but the file basenames must match the glob pattern <glob> instead of a regular expression. This action is not available for texosquery-jre5.", 2)
+      {// new to v1.8
          public String action()
          {
-            return walk(
+            return walkGlobDigest(
                   getRequiredArgument(0), 
-                  getRequiredArgument(1), 
-                  new File(fromTeXPath(getRequiredArgument(2))),
-                  FileSortType.getFileSortType(getOptionalArgument(0)));
+                  new File(fromTeXPath(getRequiredArgument(1))),
+                  isDigestContentMode(getOptionalArgument(0)));
          }
       },
       new QueryAction("uri", "u", 0, 1, "<file>",
@@ -4688,6 +8225,88 @@ public class TeXOSQuery implements Serializable
     */ 
    private int compatible = DEFAULT_COMPATIBLE;
 
+   /**
+    * Maximum number of threads (0 indicates the number of available
+    * processors).
+    */ 
+   private int maxThreads = 0;
+
+   /**
+    * Maximum walk depth (0 indicates no limit).
+    */ 
+   private int walkMaxDepth = 0;
+
+   /**
+    * Glob patterns identifying sub-directories that walks should
+    * skip.
+    */ 
+   private Vector<String> walkExcludeDirs = new Vector<String>();
+
+   /**
+    * Determines whether or not walks use a persistent index.
+    */ 
+   private boolean walkIndex = false;
+
+   /**
+    * Determines whether or not file digests use a persistent cache.
+    */ 
+   private boolean digestCache = false;
+
+   /**
+    * Modification time and size limits for listings and walks.
+    */ 
+   private FileAttributeFilter attributeFilter = new FileAttributeFilter();
+
+   /**
+    * Time limits in milliseconds for all the actions and for each
+    * action (0 indicates no limit).
+    */ 
+   private long deadlineMillis = 0L, actionDeadlineMillis = 0L;
+
+   /**
+    * Time budget for the current action (null if no limit). Each
+    * action is performed by a copy of this object made when the
+    * action was parsed, so the deadline is shared by all copies.
+    */ 
+   private static volatile FileDeadline deadline = null;
+
+   /**
+    * Set if the current action stopped early for a reason other
+    * than the deadline. This is shared by all copies in the same
+    * way as the deadline.
+    */ 
+   private static volatile boolean truncated = false;
+
+   /**
+    * Marker appended to an action's result if the action was
+    * stopped early because its time budget ran out or because
+    * it couldn't continue.
+    */ 
+   public static final String TRUNCATED_MARKER="\\ftrn ";
+
+   /**
+    * File in the starting directory of a walk that lists
+    * additional directory patterns to skip.
+    */ 
+   public static final String WALK_IGNORE_FILE=".texosqueryignore";
+
+   // Minimum number of files before the attributes are fetched
+   // concurrently when sorting, the number of files fetched by
+   // each task and the maximum number of threads. (Fetching the
+   // attributes is limited by the file system latency rather than
+   // the number of processors.)
+
+   private static final int PREFETCH_THRESHOLD=512;
+   private static final int PREFETCH_BLOCK_SIZE=256;
+   private static final int PREFETCH_MAX_THREADS=8;
+
+   // Minimum number of files before the file-stats action fetches
+   // the attributes concurrently and the number of files fetched
+   // at a time by each task.
+
+   private static final int FILE_STATS_THRESHOLD=16;
+   private static final int FILE_STATS_BLOCK_SIZE=16;
+
    // TeX can only go up to 2147483647, so set the maximum number
    // of digits provided for the number formatter. 
 
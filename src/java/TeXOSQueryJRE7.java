@@ -18,6 +18,9 @@ import java.util.Calendar;
 import java.io.Serializable;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 
 /**
  * Main class. Supports Java 7 onwards.
@@ -65,35 +68,353 @@ public class TeXOSQueryJRE7 extends TeXOSQuery
 
    /**
     * Recursive file listing. This method must have the CWD or a
-    * descendent as the starting directory. It will return list of
+    * descendent as the starting directory. It will write the list of
     * files relative to the starting directory where the basename
-    * matches the supplied regular expression. Hidden files/directories 
+    * is accepted by the supplied matcher. Hidden files/directories 
     * and symbolic links are skipped regardless of the openin_any setting.
     * Files without read access are also omitted from the list.
     *
-    * @param separator separator to use in returned list
-    * @param regex regular expression used to match file basenames
+    * @param out the output
+    * @param separator separator to use in the list
+    * @param matcher used to match file basenames
     * @param directory starting directory (must be cwd or a
     * descendent of cwd)
-    * @return list of relative paths
+    * @param sortType how to order the list
+    * @throws IOException if the output can't be written
     */
    @Override
-   public String walk(String separator,
-            String regex, File directory, 
-            FileSortType sortType)
+   public void writeWalk(Appendable out, String separator,
+            FileNameMatcher matcher, File directory, 
+            FileSortSpec sortType)
+     throws IOException
    {
       try
       {
-         return FileWalkVisitor.walk(this, separator,
-           regex, directory, sortType);
+         FileWalkVisitor.walk(this, out, separator,
+           matcher, directory, sortType);
       }
       catch (Exception e)
       {
          debug(String.format("Can't walk directory: %s",
            directory.toString()), e);
       }
+   }
+
+   /**
+    * Recursive file listing where each file's path relative to
+    * the starting directory is accepted by the supplied matcher.
+    * Otherwise as writeWalk(Appendable,String,FileNameMatcher,File,FileSortSpec).
+    *
+    * @param out the output
+    * @param separator separator to use in the list
+    * @param matcher used to match relative paths
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param sortType how to order the list
+    * @throws IOException if the output can't be written
+    * @since 1.8
+    */
+   @Override
+   public void writeWalk(Appendable out, String separator,
+            FilePathMatcher matcher, File directory, 
+            FileSortSpec sortType)
+     throws IOException
+   {
+      try
+      {
+         FileWalkVisitor.walk(this, out, separator,
+           matcher, directory, sortType);
+      }
+      catch (Exception e)
+      {
+         debug(String.format("Can't walk directory: %s",
+           directory.toString()), e);
+      }
+   }
+
+   /**
+    * Writes a long format list of the files in a recursive walk.
+    * The same files are included as for the recursive file
+    * listing.
+    *
+    * @param out the output
+    * @param matcher used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param sortType how to order the list
+    * @throws IOException if the output can't be written
+    * @since 1.8
+    */
+   @Override
+   public void writeWalkLong(Appendable out, FileNameMatcher matcher,
+            File directory, FileSortSpec sortType)
+     throws IOException
+   {
+      try
+      {
+         FileWalkVisitor.walkLong(this, out, matcher, directory, sortType);
+      }
+      catch (Exception e)
+      {
+         debug(String.format("Can't walk directory: %s",
+           directory.toString()), e);
+      }
+   }
+
+   /**
+    * Writes the directory structure of a recursive walk as nested
+    * groups. The same files and sub-directories are included as
+    * for the recursive file listing.
+    *
+    * @param out the output
+    * @param matcher used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param sortType how to order the files and sub-directories
+    * in each directory
+    * @throws IOException if the output can't be written
+    * @since 1.8
+    */
+   @Override
+   public void writeWalkTree(Appendable out, FileNameMatcher matcher,
+            File directory, FileSortSpec sortType)
+     throws IOException
+   {
+      try
+      {
+         FileWalkVisitor.writeTree(this, out, matcher, directory, sortType);
+      }
+      catch (Exception e)
+      {
+         debug(String.format("Can't walk directory: %s",
+           directory.toString()), e);
+      }
+   }
+
+   /**
+    * Writes aggregate statistics for the files in a recursive walk.
+    * The same files are included as for the recursive file
+    * listing, but they aren't listed.
+    *
+    * @param out the output
+    * @param matcher used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param histogram true if the totals for each file extension
+    * should also be included
+    * @throws IOException if the output can't be written
+    * @since 1.8
+    */
+   @Override
+   public void writeWalkStatistics(Appendable out, 
+            FileNameMatcher matcher, File directory, boolean histogram)
+     throws IOException
+   {
+      try
+      {
+         FileWalkVisitor.walkStatistics(this, out, matcher, directory,
+           histogram);
+      }
+      catch (Exception e)
+      {
+         debug(String.format("Can't walk directory: %s",
+           directory.toString()), e);
+      }
+   }
+
+   /**
+    * Writes a single digest for the files in a recursive walk.
+    * The same files are included as for the recursive file
+    * listing, but they aren't listed.
+    *
+    * @param out the output
+    * @param matcher used to match file basenames
+    * @param directory starting directory (must be cwd or a
+    * descendent of cwd)
+    * @param content true if the file contents should be read
+    * rather than just their sizes and modification dates
+    * @throws IOException if the output can't be written
+    * @since 1.8
+    */
+   @Override
+   public void writeWalkDigest(Appendable out, 
+            FileNameMatcher matcher, File directory, boolean content)
+     throws IOException
+   {
+      try
+      {
+         FileWalkVisitor.walkDigest(this, out, matcher, directory,
+           content);
+      }
+      catch (Exception e)
+      {
+         debug(String.format("Can't walk directory: %s",
+           directory.toString()), e);
+      }
+   }
+
+   /**
+    * Loads the persistent digest cache.
+    * @since 1.8
+    */ 
+   @Override
+   protected FileDigestCache loadDigestCache()
+   {
+      return FileDigestCache.load(this);
+   }
+
+   /**
+    * Determines whether the given directory entry is the walk index
+    * or the digest cache. The name is tested first, so the
+    * directory only needs to be checked for a matching name.
+    * @since 1.8
+    */ 
+   @Override
+   protected boolean isInternalFile(File directory, String name)
+   {
+      if (!(isWalkIndexEnabled() && FileWalkIndex.isIndexFile(name))
+       && !(isDigestCacheEnabled() && FileDigestCache.isCacheFile(name)))
+      {
+         return false;
+      }
+
+      return FileWalkIndex.isIndexDirectory(this, directory);
+   }
+
+   /**
+    * Fetches the modification date and size of a block of files in
+    * the sort columns. Both attributes are obtained with a single
+    * call for each file.
+    * @since 1.8
+    */ 
+   @Override
+   protected void fetchSortAttributes(FileSortColumns columns, 
+      File directory, int start, int end)
+   {
+      for (int i = start; i < end; i++)
+      {
+         if (isDeadlineExpired())
+         {
+            break;
+         }
+
+         long lastModified = 0L;
+         long size = 0L;
+
+         try
+         {
+            // directory may be null if the names include the path
+
+            Path path = new File(directory, columns.getName(i)).toPath();
+
+            BasicFileAttributes attrs = Files.readAttributes(path,
+              BasicFileAttributes.class);
+
+            lastModified = attrs.lastModifiedTime().toMillis();
+            size = attrs.size();
+         }
+         catch (Exception e)
+         {// IO error or security manager has prohibited access
+         }
+
+         columns.setAttributes(i, lastModified, size);
+      }
+   }
+
+   /**
+    * Writes the names of the files in the given directory that
+    * match the filter, reading the directory lazily.
+    * @since 1.8
+    */ 
+   @Override
+   protected void writeDirectoryList(Appendable out, String separator,
+            FileNameMatcher matcher, File directory, FileListType listType)
+     throws IOException
+   {
+      FileListWriter.write(this, out, separator, matcher, directory,
+        listType);
+   }
+
+   /**
+    * Reads the attributes of a directory entry with a single call
+    * and adds it to the long format list if it's within the limits.
+    * @since 1.8
+    */ 
+   @Override
+   protected void addLongListEntry(FileLongList list, File file,
+            String name)
+   {
+      BasicFileAttributes attrs;
+
+      try
+      {
+         attrs = Files.readAttributes(file.toPath(),
+           BasicFileAttributes.class);
+      }
+      catch (Exception e)
+      {
+         debug(String.format("Unable to read attributes of: %s", file), e);
+         return;
+      }
+
+      char type = (attrs.isDirectory() ? FileLongList.TYPE_DIRECTORY
+        : (attrs.isRegularFile() ? FileLongList.TYPE_FILE 
+                                 : FileLongList.TYPE_OTHER));
+
+      addLongListEntry(list, name, attrs.lastModifiedTime().toMillis(),
+        attrs.isDirectory() ? 0L : attrs.size(), type);
+   }
+
+   /**
+    * Checks a directory entry's modification time and size
+    * against the limits, reading both with a single call.
+    * @since 1.8
+    */ 
+   @Override
+   protected boolean acceptListAttributes(File file, 
+            FileAttributeFilter filter)
+   {
+      BasicFileAttributes attrs;
+
+      try
+      {
+         attrs = Files.readAttributes(file.toPath(),
+           BasicFileAttributes.class);
+      }
+      catch (Exception e)
+      {
+         debug(String.format("Unable to read attributes of: %s", file), e);
+         return false;
+      }
+
+      return filter.accept(attrs.lastModifiedTime().toMillis(),
+        attrs.size(), attrs.isDirectory());
+   }
+
+   /**
+    * Creates a matcher for the given glob pattern.
+    * @param glob the glob pattern
+    * @return the matcher or null if the pattern is invalid
+    */
+   @Override
+   protected FileNameMatcher createGlobMatcher(String glob)
+   {
+      if (glob == null || "".equals(glob))
+      {
+         debug("Null or empty glob pattern");
+         return null;
+      }
+
+      try
+      {
+         return new FileGlobMatcher(glob);
+      }
+      catch (Exception e)
+      {
+         debug(String.format("Invalid glob pattern: %s", glob), e);
+      }
 
-      return "";
+      return null;
    }
 
     /**